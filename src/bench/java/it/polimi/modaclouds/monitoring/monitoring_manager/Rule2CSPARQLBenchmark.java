@@ -0,0 +1,123 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.csparqool.MalformedQueryException;
+import it.polimi.csparqool._body;
+import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the rule compilation path as the number of rules grows. Run
+ * with the gc profiler (the default in the benchmarks profile) to get the
+ * allocation rate as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Rule2CSPARQLBenchmark {
+
+	private static final String KB_URL = "http://localhost:3030/modaclouds/kb";
+
+	@Param({ "1", "100", "1000" })
+	public int rules;
+
+	private List<MonitoringRule> population;
+	private List<MonitoringRule> aggregatedRules;
+	private List<MonitoringRule> notAggregatedRules;
+	private String[] notAggregatedVariables;
+	private QueryCache queryCache;
+
+	@Setup
+	public void setup() throws Exception {
+		population = RulePopulation.generate(rules);
+		aggregatedRules = new ArrayList<MonitoringRule>();
+		notAggregatedRules = new ArrayList<MonitoringRule>();
+		for (MonitoringRule rule : population) {
+			if (Util.isAggregatedMetric(rule))
+				aggregatedRules.add(rule);
+			else
+				notAggregatedRules.add(rule);
+		}
+		notAggregatedVariables = new String[] { QueryVars.RESOURCE_ID,
+				QueryVars.OUTPUT, QueryVars.INPUT_TIMESTAMP };
+		queryCache = new QueryCache(rules);
+		for (MonitoringRule rule : population) {
+			queryCache.put(QueryCache.getKey(rule, rule.getId()),
+					compile(rule));
+		}
+	}
+
+	@Benchmark
+	public void createQueryFromRule(Blackhole bh)
+			throws MalformedQueryException, RuleInstallationException {
+		for (MonitoringRule rule : population) {
+			bh.consume(compile(rule));
+		}
+	}
+
+	@Benchmark
+	public void cachedCompilation(Blackhole bh) {
+		for (MonitoringRule rule : population) {
+			bh.consume(queryCache.get(QueryCache.getKey(rule, rule.getId())));
+		}
+	}
+
+	@Benchmark
+	public void getAggregateFunctionArgs(Blackhole bh) {
+		for (MonitoringRule rule : aggregatedRules) {
+			bh.consume(Util.getAggregateFunctionArgs(rule));
+		}
+	}
+
+	@Benchmark
+	public void addNotAggregatedMetricSelect(Blackhole bh)
+			throws MalformedQueryException, RuleInstallationException {
+		for (MonitoringRule rule : notAggregatedRules) {
+			_body body = new _body();
+			CSPARQLEngineManager.addNotAggregatedMetricSelect(body,
+					notAggregatedVariables, rule);
+			bh.consume(body);
+		}
+	}
+
+	private String compile(MonitoringRule rule)
+			throws MalformedQueryException, RuleInstallationException {
+		return CSPARQLEngineManager.createQueryFromRule(rule, rule.getId(),
+				KB_URL).getCSPARQL();
+	}
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.qos_models.monitoring_ontology.MOVocabulary;
+import it.polimi.modaclouds.qos_models.schema.Action;
+import it.polimi.modaclouds.qos_models.schema.Actions;
+import it.polimi.modaclouds.qos_models.schema.CollectedMetric;
+import it.polimi.modaclouds.qos_models.schema.Condition;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTarget;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTargets;
+import it.polimi.modaclouds.qos_models.schema.MonitoringMetricAggregation;
+import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
+import it.polimi.modaclouds.qos_models.schema.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates rules covering every branch of the rule-to-C-SPARQL compiler:
+ * VM, InternalComponent and Method targets, no grouping, grouping by the
+ * target class and by CloudProvider, aggregated and not aggregated metrics,
+ * with and without condition.
+ */
+class RulePopulation {
+
+	private static final String[] TARGET_CLASSES = new String[] {
+			MOVocabulary.VM, MOVocabulary.InternalComponent,
+			MOVocabulary.Method };
+
+	private static final String[] AGGREGATE_FUNCTIONS = new String[] {
+			"Average", "Sum", "Max", "Min", "Count" };
+
+	private static final String[] WINDOWS = new String[] { "60", "300",
+			"900" };
+
+	static List<MonitoringRule> generate(int size) {
+		List<MonitoringRule> rules = new ArrayList<MonitoringRule>(size);
+		int i = 0;
+		while (rules.size() < size) {
+			String targetClass = TARGET_CLASSES[i % TARGET_CLASSES.length];
+			boolean withCondition = (i / TARGET_CLASSES.length) % 2 == 0;
+			int shape = (i / (TARGET_CLASSES.length * 2)) % 4;
+			String aggregateFunction = AGGREGATE_FUNCTIONS[i
+					% AGGREGATE_FUNCTIONS.length];
+			String window = WINDOWS[i % WINDOWS.length];
+			MonitoringRule rule;
+			switch (shape) {
+			case 0:
+				rule = createRule("rule" + i, targetClass, null, null, window,
+						withCondition);
+				break;
+			case 1:
+				rule = createRule("rule" + i, targetClass, aggregateFunction,
+						null, window, withCondition);
+				break;
+			case 2:
+				rule = createRule("rule" + i, targetClass, aggregateFunction,
+						targetClass, window, withCondition);
+				break;
+			default:
+				rule = createRule("rule" + i, targetClass, aggregateFunction,
+						MOVocabulary.CloudProvider, window, withCondition);
+				break;
+			}
+			rules.add(rule);
+			i++;
+		}
+		return rules;
+	}
+
+	static MonitoringRule createRule(String id, String targetClass,
+			String aggregateFunction, String groupingClass, String window,
+			boolean withCondition) {
+		MonitoringRule rule = new MonitoringRule();
+		rule.setId(id);
+		rule.setTimeStep("60");
+		rule.setTimeWindow(window);
+
+		MonitoredTarget target = new MonitoredTarget();
+		target.setClazz(targetClass);
+		target.setType(targetClass + "Type");
+		MonitoredTargets targets = new MonitoredTargets();
+		targets.getMonitoredTargets().add(target);
+		rule.setMonitoredTargets(targets);
+
+		CollectedMetric collectedMetric = new CollectedMetric();
+		collectedMetric.setMetricName("ResponseTime");
+		rule.setCollectedMetric(collectedMetric);
+
+		if (aggregateFunction != null) {
+			MonitoringMetricAggregation aggregation = new MonitoringMetricAggregation();
+			aggregation.setAggregateFunction(aggregateFunction);
+			aggregation.setGroupingClass(groupingClass);
+			rule.setMetricAggregation(aggregation);
+		}
+
+		if (withCondition) {
+			Condition condition = new Condition();
+			condition.setValue("METRIC > 10");
+			rule.setCondition(condition);
+		}
+
+		Actions actions = new Actions();
+		Action action = new Action();
+		action.setName("OutputMetric");
+		action.getParameters().add(
+				createParameter("metric", "output" + id));
+		action.getParameters().add(
+				createParameter("resourceId", aggregateFunction == null
+						|| groupingClass != null ? "ID" : "all"));
+		action.getParameters().add(createParameter("value", "METRIC"));
+		actions.getActions().add(action);
+		rule.setActions(actions);
+		return rule;
+	}
+
+	private static Parameter createParameter(String name, String value) {
+		Parameter parameter = new Parameter();
+		parameter.setName(name);
+		parameter.setValue(value);
+		return parameter;
+	}
+
+}
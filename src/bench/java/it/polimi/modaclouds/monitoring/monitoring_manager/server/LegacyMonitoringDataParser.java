@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * The parser ActionsExecutorServer used before the streaming one, kept as a
+ * baseline for {@link MonitoringDataParserBenchmark}.
+ */
+class LegacyMonitoringDataParser {
+
+	static List<MonitoringDatum> jsonToMonitoringDatum(String json)
+			throws IOException {
+		JsonReader reader = new JsonReader(new StringReader(json));
+		Type type = new TypeToken<Map<String, Map<String, List<Map<String, String>>>>>() {
+		}.getType();
+		Map<String, Map<String, List<Map<String, String>>>> jsonMonitoringData = new Gson()
+				.fromJson(reader, type);
+		List<MonitoringDatum> monitoringData = new ArrayList<MonitoringDatum>();
+		if (jsonMonitoringData.isEmpty()) {
+			return monitoringData;
+		}
+		for (Map<String, List<Map<String, String>>> jsonMonitoringDatum : jsonMonitoringData
+				.values()) {
+			MonitoringDatum datum = new MonitoringDatum();
+			datum.metric = nullable(
+					jsonMonitoringDatum.get(DDAOntology.metric.toString()))
+					.get(0).get("value");
+			datum.timestamp = nullable(
+					jsonMonitoringDatum.get(DDAOntology.timestamp.toString()))
+					.get(0).get("value");
+			datum.value = nullable(
+					jsonMonitoringDatum.get(DDAOntology.value.toString())).get(
+					0).get("value");
+			datum.resourceId = nullable(
+					jsonMonitoringDatum.get(DDAOntology.resourceId.toString()))
+					.get(0).get("value");
+			monitoringData.add(datum);
+		}
+		return monitoringData;
+	}
+
+	private static List<Map<String, String>> nullable(
+			List<Map<String, String>> list) {
+		if (list != null)
+			return list;
+		else {
+			List<Map<String, String>> emptyValueList = new ArrayList<Map<String, String>>();
+			Map<String, String> emptyValueMap = new HashMap<String, String>();
+			emptyValueMap.put("value", "");
+			emptyValueList.add(emptyValueMap);
+			return emptyValueList;
+		}
+	}
+
+	static class MonitoringDatum {
+
+		String resourceId;
+		String metric;
+		String timestamp;
+		String value;
+
+	}
+
+}
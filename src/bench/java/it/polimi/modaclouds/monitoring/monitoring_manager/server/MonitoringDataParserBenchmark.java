@@ -0,0 +1,108 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringDataParser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of the monitoring data the DDA sends to the actions executor, with
+ * MonitoringDatumRT.json-like payloads of growing size. Run with the gc
+ * profiler (the default in the benchmarks profile) to compare the
+ * allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitoringDataParserBenchmark {
+
+	@Param({ "1", "10", "100", "1000", "10000" })
+	public int datums;
+
+	private String json;
+	private MonitoringDataParser parser;
+
+	@Setup
+	public void setup() {
+		json = createPayload(datums);
+		parser = new MonitoringDataParser();
+	}
+
+	@Benchmark
+	public void legacyParser(Blackhole bh) throws IOException {
+		bh.consume(LegacyMonitoringDataParser.jsonToMonitoringDatum(json));
+	}
+
+	@Benchmark
+	public void streamingParser(Blackhole bh) throws IOException {
+		bh.consume(parser.parse(new StringReader(json)));
+	}
+
+	static String createPayload(int datums) {
+		StringBuilder sb = new StringBuilder("{ ");
+		for (int i = 0; i < datums; i++) {
+			if (i > 0)
+				sb.append(" , ");
+			sb.append("\"_:2e3b9373:1481c487766:-").append(i).append("\" : { ");
+			appendLiteral(sb, DDAOntology.metric.getURI(), "responsetime",
+					null);
+			sb.append(" , ");
+			appendLiteral(sb, DDAOntology.value.getURI(),
+					Integer.toString(1000 + i),
+					"http://www.w3.org/2001/XMLSchema#double");
+			sb.append(" , ");
+			appendLiteral(sb, DDAOntology.timestamp.getURI(),
+					Long.toString(1409223851698L + i),
+					"http://www.w3.org/2001/XMLSchema#integer");
+			sb.append(" , ");
+			appendLiteral(sb, DDAOntology.resourceId.getURI(), "register"
+					+ (i % 200), "http://www.w3.org/2001/XMLSchema#string");
+			sb.append(" }");
+		}
+		return sb.append(" }").toString();
+	}
+
+	private static void appendLiteral(StringBuilder sb, String property,
+			String value, String datatype) {
+		sb.append('"').append(property).append("\" : [ { \"type\" : \"literal\" , \"value\" : \"")
+				.append(value).append('"');
+		if (datatype != null)
+			sb.append(" , \"datatype\" : \"").append(datatype).append('"');
+		sb.append(" } ]");
+	}
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.qos_models.monitoring_rules.AbstractAction;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executes actions asynchronously on a fixed number of single-thread lanes.
+ * All the actions of a rule are executed by the same lane, so they are
+ * executed in the order they were submitted, while slow actions of a rule
+ * do not hold back rules on other lanes. Each lane has a bounded queue,
+ * actions submitted to a full lane are rejected.
+ */
+public class ActionExecutor {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ActionExecutor.class);
+
+	private final ThreadPoolExecutor[] lanes;
+	private final int queueCapacity;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong executed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong totalExecutionNanos = new AtomicLong();
+	private final AtomicLong maxExecutionNanos = new AtomicLong();
+
+	public ActionExecutor(int lanes, int queueCapacity) {
+		this.lanes = new ThreadPoolExecutor[Math.max(1, lanes)];
+		this.queueCapacity = Math.max(1, queueCapacity);
+		for (int i = 0; i < this.lanes.length; i++) {
+			this.lanes[i] = new ThreadPoolExecutor(1, 1, 0L,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+							this.queueCapacity), new ThreadFactoryBuilder()
+							.setNameFormat("action-lane-" + i).setDaemon(true)
+							.build());
+		}
+	}
+
+	/**
+	 * @return false if the lane of the rule is full and the action was
+	 *         rejected
+	 */
+	public boolean submit(String ruleId, final AbstractAction action,
+			final String resourceId, final String value,
+			final String timestamp) {
+		return submit(ruleId, action.getName(), resourceId, new Runnable() {
+			@Override
+			public void run() {
+				action.execute(resourceId, value, timestamp);
+			}
+		});
+	}
+
+	boolean submit(final String ruleId, final String actionName,
+			final String resourceId, final Runnable task) {
+		final long submissionTime = System.nanoTime();
+		try {
+			getLane(ruleId).execute(new Runnable() {
+				@Override
+				public void run() {
+					long start = System.nanoTime();
+					record(totalWaitNanos, maxWaitNanos, start
+							- submissionTime);
+					try {
+						task.run();
+						executed.incrementAndGet();
+					} catch (Exception e) {
+						failed.incrementAndGet();
+						logger.error(
+								"Error while executing action {} of rule {} on resource {}",
+								actionName, ruleId, resourceId, e);
+					} finally {
+						record(totalExecutionNanos, maxExecutionNanos,
+								System.nanoTime() - start);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			logger.warn(
+					"Action {} of rule {} on resource {} rejected, the queue is full",
+					actionName, ruleId, resourceId);
+			return false;
+		}
+		submitted.incrementAndGet();
+		return true;
+	}
+
+	private ThreadPoolExecutor getLane(String ruleId) {
+		return lanes[(ruleId.hashCode() & Integer.MAX_VALUE) % lanes.length];
+	}
+
+	private static void record(AtomicLong total, AtomicLong max, long nanos) {
+		total.addAndGet(nanos);
+		long currentMax = max.get();
+		while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+			currentMax = max.get();
+		}
+	}
+
+	public int getQueueDepth() {
+		int depth = 0;
+		for (ThreadPoolExecutor lane : lanes) {
+			depth += lane.getQueue().size();
+		}
+		return depth;
+	}
+
+	public Stats getStats() {
+		Stats stats = new Stats();
+		stats.lanes = lanes.length;
+		stats.laneCapacity = queueCapacity;
+		stats.queueDepth = getQueueDepth();
+		stats.laneQueueDepths = new int[lanes.length];
+		for (int i = 0; i < lanes.length; i++) {
+			stats.laneQueueDepths[i] = lanes[i].getQueue().size();
+		}
+		stats.submitted = submitted.get();
+		stats.rejected = rejected.get();
+		stats.executed = executed.get();
+		stats.failed = failed.get();
+		long completed = stats.executed + stats.failed;
+		stats.avgWaitMillis = completed > 0 ? toMillis(totalWaitNanos.get())
+				/ completed : 0;
+		stats.maxWaitMillis = toMillis(maxWaitNanos.get());
+		stats.avgExecutionMillis = completed > 0 ? toMillis(totalExecutionNanos
+				.get()) / completed : 0;
+		stats.maxExecutionMillis = toMillis(maxExecutionNanos.get());
+		return stats;
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	public void shutdown() {
+		for (ThreadPoolExecutor lane : lanes) {
+			lane.shutdown();
+		}
+	}
+
+	/**
+	 * Snapshot of the executor metrics.
+	 */
+	public static class Stats {
+
+		private int lanes;
+		private int laneCapacity;
+		private int queueDepth;
+		private int[] laneQueueDepths;
+		private long submitted;
+		private long rejected;
+		private long executed;
+		private long failed;
+		private double avgWaitMillis;
+		private double maxWaitMillis;
+		private double avgExecutionMillis;
+		private double maxExecutionMillis;
+
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		public long getSubmitted() {
+			return submitted;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getExecuted() {
+			return executed;
+		}
+
+		public long getFailed() {
+			return failed;
+		}
+
+		public double getAvgWaitMillis() {
+			return avgWaitMillis;
+		}
+
+		public double getMaxWaitMillis() {
+			return maxWaitMillis;
+		}
+
+		public double getAvgExecutionMillis() {
+			return avgExecutionMillis;
+		}
+
+		public double getMaxExecutionMillis() {
+			return maxExecutionMillis;
+		}
+
+	}
+
+}
@@ -18,6 +18,7 @@ package it.polimi.modaclouds.monitoring.monitoring_manager;
 
 import it.polimi.csparqool.CSquery;
 import it.polimi.csparqool.Function;
+import it.polimi.csparqool.FunctionArgs;
 import it.polimi.csparqool.MalformedQueryException;
 import it.polimi.csparqool._body;
 import it.polimi.csparqool._graph;
@@ -29,22 +30,34 @@ import it.polimi.deib.csparql_rest_api.exception.QueryErrorException;
 import it.polimi.deib.csparql_rest_api.exception.ServerErrorException;
 import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
 import it.polimi.modaclouds.monitoring.kb.api.FusekiKBAPI;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ObserverRegistry.MetricObservers;
 import it.polimi.modaclouds.monitoring.monitoring_manager.configuration.ManagerConfig;
 import it.polimi.modaclouds.qos_models.monitoring_ontology.MO;
 import it.polimi.modaclouds.qos_models.monitoring_ontology.MOVocabulary;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
 import it.polimi.modaclouds.qos_models.monitoring_rules.AbstractAction;
 import it.polimi.modaclouds.qos_models.monitoring_rules.actions.OutputMetric;
 import it.polimi.modaclouds.qos_models.schema.Action;
+import it.polimi.modaclouds.qos_models.schema.Actions;
 import it.polimi.modaclouds.qos_models.schema.MonitoredTarget;
+import it.polimi.modaclouds.qos_models.schema.MonitoringMetricAggregation;
 import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
+import it.polimi.modaclouds.qos_models.schema.Parameter;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.NotImplementedException;
 import org.slf4j.Logger;
@@ -61,34 +74,111 @@ import com.hp.hpl.jena.vocabulary.XSD;
 
 public class CSPARQLEngineManager {
 
+	private static final String SHARED_QUERY_KEY_ID = "sharedQueryKey";
+	private static final String PANE_QUERY_KEY_PREFIX = "pane|";
+	private static final String PANE_METRIC_PLACEHOLDER = "pane";
+	private static final String RAW_QUERY_KEY_PREFIX = "raw|";
+	private static final int RAW_DATA_BATCH_SECONDS = 5;
+	/**
+	 * Query of the ids reserved by installations still registering their
+	 * query.
+	 */
+	private static final String RESERVED_QUERY = "";
+
 	private Logger logger = LoggerFactory.getLogger(CSPARQLEngineManager.class
 			.getName());
 	private URL ddaURL;
 	private RSP_services_csparql_API csparqlAPI;
 
-	private Map<String, String> queriesById;
-	private Map<String, String> streamsByRuleId;
+	private ConcurrentMap<String, String> queriesById;
+	private StreamRegistry streamRegistry;
+	private QueryRegistry queryRegistry;
 	private Map<String, String> queryIdByRuleId;
 	private Map<String, String> queryIdByMetric;
-	private Map<String, Set<Observer>> observersByMetric;
+	private ObserverRegistry observerRegistry;
 	private Map<String, AbstractAction> actionImplByRuleId;
 	private String kbURL;
 	private String actionsExecutorUrl;
 	private Map<String, MonitoringRule> rulesById;
+	private QueryCache queryCache;
+	private int paneSize;
+	private String paneResultsUrl;
+	private PaneMerger paneMerger;
+	private Set<String> localMetrics;
+	private ObserverNotifier observerNotifier;
+	private ObserverBatcher observerBatcher;
+	private String observerProxyUrl;
+	private FastPathEngine fastPathEngine;
+	private String fastPathUrl;
+	private ModelMirror modelMirror;
 
-	public CSPARQLEngineManager(ManagerConfig config, FusekiKBAPI kb)
+	public CSPARQLEngineManager(ManagerConfig config, ModelMirror modelMirror)
 			throws Exception {
+		this(config, modelMirror, null);
+	}
+
+	/**
+	 * @param csparqlAPI
+	 *            the client of the DDA, null to connect to the DDA of the
+	 *            configuration
+	 */
+	CSPARQLEngineManager(ManagerConfig config, ModelMirror modelMirror,
+			RSP_services_csparql_API csparqlAPI) throws Exception {
 		this.kbURL = config.getKbUrl();
+		this.modelMirror = modelMirror;
 		this.actionsExecutorUrl = config.getActionsExecutorUrl();
 		ddaURL = createURL(config.getDdaIP(), config.getDdaPort());
-		streamsByRuleId = new ConcurrentHashMap<String, String>();
+		streamRegistry = new StreamRegistry();
+		queryRegistry = new QueryRegistry();
 		queriesById = new ConcurrentHashMap<String, String>();
 		queryIdByRuleId = new ConcurrentHashMap<String, String>();
 		queryIdByMetric = new ConcurrentHashMap<String, String>();
-		observersByMetric = new ConcurrentHashMap<String, Set<Observer>>();
-		csparqlAPI = new RSP_services_csparql_API(ddaURL.toString());
+		observerRegistry = new ObserverRegistry();
+		this.csparqlAPI = csparqlAPI != null ? csparqlAPI
+				: new RSP_services_csparql_API(ddaURL.toString());
 		rulesById = new ConcurrentHashMap<String, MonitoringRule>();
 		actionImplByRuleId = new ConcurrentHashMap<String, AbstractAction>();
+		queryCache = new QueryCache();
+		paneSize = config.getPaneSize();
+		paneResultsUrl = config.getPaneResultsUrl();
+		localMetrics = Collections
+				.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		observerNotifier = new ObserverNotifier(config.getObserverThreads());
+		if (config.getOutboxDir() != null)
+			observerNotifier.enableOutbox(new File(config.getOutboxDir()),
+					config.getOutboxSize() * 1024L * 1024L,
+					config.getOutboxRetention() * 1000L);
+		observerNotifier.enableEviction(config.getObserverMaxFailures(),
+				new ObserverNotifier.EvictionListener() {
+					@Override
+					public void evict(Observer observer) {
+						evictObserver(observer);
+					}
+				});
+		observerBatcher = new ObserverBatcher(observerNotifier);
+		observerProxyUrl = config.getObserverProxyUrl();
+		MonitoringDataListener localMetricsNotifier = new MonitoringDataListener() {
+			@Override
+			public void onMonitoringData(String metric,
+					List<MonitoringDatum> data) {
+				ObserverFilterIndex index = getFilterIndex(metric);
+				observerNotifier.notify(index.getUnfilteredObservers(), data);
+				if (index.requiresData())
+					notifyFilteredObservers(index, data);
+			}
+		};
+		paneMerger = new PaneMerger(localMetricsNotifier);
+		if (config.isFastPath()) {
+			fastPathUrl = config.getFastPathUrl();
+			fastPathEngine = new FastPathEngine(localMetricsNotifier,
+					new FastPathEngine.ResourceResolver() {
+						@Override
+						public Resource getResource(String resourceId) {
+							return CSPARQLEngineManager.this.modelMirror
+									.get(resourceId);
+						}
+					});
+		}
 
 		logger.info("Clearing the DDA");
 		clearAll();
@@ -113,11 +203,20 @@ public class CSPARQLEngineManager {
 	public void installRule(MonitoringRule rule)
 			throws RuleInstallationException, ObserverErrorException {
 		try {
-			String queryId = getNewQueryId(rule, null);
-			CSquery query = createQueryFromRule(rule, queryId, kbURL);
-			String csparqlQuery = query.getCSPARQL();
+			rulesById.put(rule.getId(), rule);
 			registerInputStream(rule);
-			registerQuery(queryId, csparqlQuery, rule);
+			if (fastPathEngine != null && FastPathEngine.isEligible(rule)) {
+				registerRawDataQuery(rule);
+				fastPathEngine.install(rule);
+				addLocalMetrics(rule);
+				return;
+			}
+			if (isPaneEligible(rule)) {
+				registerPaneQuery(rule);
+				addLocalMetrics(rule);
+				return;
+			}
+			String queryId = registerSharedQuery(rule);
 			addObservableMetrics(rule, queryId);
 
 			// TODO temp implementation for actions
@@ -131,8 +230,6 @@ public class CSPARQLEngineManager {
 				csparqlAPI.addObserver(queryUri, actionsExecutorUrl);
 				actionImplByRuleId.put(rule.getId(), actionImpl);
 			}
-
-			rulesById.put(rule.getId(), rule);
 		} catch (QueryErrorException | MalformedQueryException e) {
 			throw new RuleInstallationException("Internal error", e);
 		} catch (ServerErrorException e) {
@@ -141,6 +238,305 @@ public class CSPARQLEngineManager {
 		}
 	}
 
+	private String compileQuery(MonitoringRule rule, String queryId)
+			throws MalformedQueryException, RuleInstallationException {
+		String key = QueryCache.getKey(rule, queryId);
+		String csparqlQuery = queryCache.get(key);
+		if (csparqlQuery != null) {
+			logger.debug("Compiled query for rule {} found in cache",
+					rule.getId());
+			return csparqlQuery;
+		}
+		csparqlQuery = createQueryFromRule(rule, queryId, kbURL).getCSPARQL();
+		queryCache.put(key, csparqlQuery);
+		return csparqlQuery;
+	}
+
+	private String compilePaneQuery(MonitoringRule paneRule, String queryId)
+			throws MalformedQueryException, RuleInstallationException {
+		String key = PANE_QUERY_KEY_PREFIX
+				+ QueryCache.getKey(paneRule, queryId);
+		String csparqlQuery = queryCache.get(key);
+		if (csparqlQuery != null)
+			return csparqlQuery;
+		csparqlQuery = createPaneQuery(paneRule, queryId, kbURL).getCSPARQL();
+		queryCache.put(key, csparqlQuery);
+		return csparqlQuery;
+	}
+
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Registers the query of the rule on the DDA, unless a query compiling to
+	 * the same C-SPARQL is already registered, in which case the rule is
+	 * attached to it.
+	 * 
+	 * @return the id of the DDA query the rule is attached to
+	 */
+	private String registerSharedQuery(MonitoringRule rule)
+			throws MalformedQueryException, RuleInstallationException,
+			ServerErrorException, QueryErrorException {
+		String sharedQueryKey = compileQuery(rule, SHARED_QUERY_KEY_ID);
+		QueryRegistry.SharedQuery sharedQuery = queryRegistry.acquire(
+				sharedQueryKey, rule.getId());
+		synchronized (sharedQuery) {
+			if (sharedQuery.isRegistered()) {
+				logger.info(
+						"Rule {} compiles to the same query of rule(s) {}, query {} will be shared",
+						rule.getId(), queryRegistry.getRuleIds(rule.getId()),
+						sharedQuery.getQueryId());
+				queryIdByRuleId.put(rule.getId(), sharedQuery.getQueryId());
+				return sharedQuery.getQueryId();
+			}
+			String queryId = getNewQueryId(rule, null);
+			try {
+				String csparqlQuery = compileQuery(rule, queryId);
+				registerQuery(queryId, csparqlQuery, rule);
+			} finally {
+				releaseQueryId(queryId);
+			}
+			sharedQuery.setQueryId(queryId);
+			return queryId;
+		}
+	}
+
+	/**
+	 * Rules whose windows and steps are multiples of the pane size can be
+	 * computed by merging the partial aggregates of a tumbling window of one
+	 * pane, so that the DDA scans each datum once no matter how many windows
+	 * overlap it. Rules with window and step equal to the pane size would
+	 * not gain anything and are left to the DDA.
+	 */
+	private boolean isPaneEligible(MonitoringRule rule) {
+		if (paneSize <= 0 || !Util.isAggregatedMetric(rule)
+				|| rule.getCondition() != null)
+			return false;
+		MonitoringMetricAggregation aggregation = rule.getMetricAggregation();
+		if (!PaneMerger.isMergeable(aggregation.getAggregateFunction())
+				|| (aggregation.getParameters() != null && !aggregation
+						.getParameters().isEmpty()))
+			return false;
+		if (rule.getActions() == null
+				|| rule.getActions().getActions().size() != 1)
+			return false;
+		Action action = rule.getActions().getActions().get(0);
+		if (!action.getName().equals(OutputMetric.class.getSimpleName())
+				|| !"METRIC".equals(Util.getParameterValue(
+						OutputMetric.value, action)))
+			return false;
+		int window;
+		int step;
+		try {
+			window = Integer.parseInt(rule.getTimeWindow());
+			step = Integer.parseInt(rule.getTimeStep());
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return window > 0 && step > 0 && window % paneSize == 0
+				&& step % paneSize == 0
+				&& (window != paneSize || step != paneSize);
+	}
+
+	/**
+	 * Attaches the rule to the pane query of its stream, targets and
+	 * grouping, registering it on the DDA if no other rule is using it. The
+	 * id of the pane query is also the metric of the panes it outputs.
+	 */
+	private void registerPaneQuery(MonitoringRule rule)
+			throws MalformedQueryException, RuleInstallationException,
+			ServerErrorException, QueryErrorException,
+			ObserverErrorException {
+		String sharedQueryKey = compilePaneQuery(
+				createPaneRule(rule, PANE_METRIC_PLACEHOLDER),
+				SHARED_QUERY_KEY_ID);
+		QueryRegistry.SharedQuery sharedQuery = queryRegistry.acquire(
+				sharedQueryKey, rule.getId());
+		synchronized (sharedQuery) {
+			if (sharedQuery.isRegistered()) {
+				logger.info(
+						"Rule {} will be computed from the panes of query {}",
+						rule.getId(), sharedQuery.getQueryId());
+				queryIdByRuleId.put(rule.getId(), sharedQuery.getQueryId());
+			} else {
+				String queryId = getNewQueryId(
+						createPaneRule(rule, PANE_METRIC_PLACEHOLDER), null);
+				try {
+					String csparqlQuery = compilePaneQuery(
+							createPaneRule(rule, queryId), queryId);
+					registerQuery(queryId, csparqlQuery, rule);
+				} finally {
+					releaseQueryId(queryId);
+				}
+				sharedQuery.setQueryId(queryId);
+				csparqlAPI.addObserver(getQueryUriFromQueryId(queryId),
+						paneResultsUrl);
+				logger.info(
+						"Rule {} will be computed from the panes of new query {}",
+						rule.getId(), queryId);
+			}
+			paneMerger.subscribe(sharedQuery.getQueryId(), paneSize * 1000L,
+					rule.getId(), Util.getParameterValue(OutputMetric.metric,
+							rule.getActions().getActions().get(0)),
+					Util.getAggregateFunction(rule),
+					Integer.parseInt(rule.getTimeWindow()) / paneSize,
+					Integer.parseInt(rule.getTimeStep()) / paneSize);
+		}
+	}
+
+	/**
+	 * @return a copy of the rule computing sum, count, max and min of one
+	 *         pane, outputting them on the given metric
+	 */
+	private MonitoringRule createPaneRule(MonitoringRule rule,
+			String paneMetric) {
+		MonitoringRule paneRule = new MonitoringRule();
+		paneRule.setId("pane_" + rule.getId());
+		paneRule.setMonitoredTargets(rule.getMonitoredTargets());
+		paneRule.setCollectedMetric(rule.getCollectedMetric());
+		paneRule.setTimeWindow(Integer.toString(paneSize));
+		paneRule.setTimeStep(Integer.toString(paneSize));
+
+		MonitoringMetricAggregation aggregation = new MonitoringMetricAggregation();
+		aggregation.setAggregateFunction(PaneMerger.SUM);
+		aggregation.setGroupingClass(Util.getGroupingClass(rule));
+		paneRule.setMetricAggregation(aggregation);
+
+		Action action = new Action();
+		action.setName(OutputMetric.class.getSimpleName());
+		action.getParameters().add(
+				createParameter(OutputMetric.metric, paneMetric));
+		action.getParameters().add(
+				createParameter(OutputMetric.resourceId, Util
+						.getParameterValue(OutputMetric.resourceId, rule
+								.getActions().getActions().get(0))));
+		action.getParameters().add(
+				createParameter(OutputMetric.value, "METRIC"));
+		Actions actions = new Actions();
+		actions.getActions().add(action);
+		paneRule.setActions(actions);
+		return paneRule;
+	}
+
+	private static Parameter createParameter(String name, String value) {
+		Parameter parameter = new Parameter();
+		parameter.setName(name);
+		parameter.setValue(value);
+		return parameter;
+	}
+
+	/**
+	 * Attaches the rule to the query forwarding, as they are, the data of its
+	 * input stream to the fast path engine, registering it on the DDA if no
+	 * other rule is using it.
+	 */
+	private void registerRawDataQuery(MonitoringRule rule)
+			throws MalformedQueryException, ServerErrorException,
+			QueryErrorException, ObserverErrorException {
+		String streamName = getSourceStreamName(rule);
+		String metric = rule.getCollectedMetric().getMetricName()
+				.toLowerCase();
+		String sharedQueryKey = RAW_QUERY_KEY_PREFIX
+				+ createRawDataQuery(streamName, metric, SHARED_QUERY_KEY_ID)
+						.getCSPARQL();
+		QueryRegistry.SharedQuery sharedQuery = queryRegistry.acquire(
+				sharedQueryKey, rule.getId());
+		synchronized (sharedQuery) {
+			if (sharedQuery.isRegistered()) {
+				queryIdByRuleId.put(rule.getId(), sharedQuery.getQueryId());
+				return;
+			}
+			String queryId = getNewQueryId(rule, "_raw");
+			try {
+				registerQuery(queryId,
+						createRawDataQuery(streamName, metric, queryId)
+								.getCSPARQL(), rule);
+			} finally {
+				releaseQueryId(queryId);
+			}
+			sharedQuery.setQueryId(queryId);
+			csparqlAPI.addObserver(getQueryUriFromQueryId(queryId),
+					fastPathUrl);
+		}
+	}
+
+	/**
+	 * @return a query outputting each datum of the stream once, with no
+	 *         reasoning nor join with the model
+	 */
+	static CSquery createRawDataQuery(String streamName, String metric,
+			String queryId) throws MalformedQueryException {
+		CSquery query = CSquery.createDefaultQuery(queryId);
+		addPrefixes(query);
+		query.construct(graph
+				.add(CSquery.BLANK_NODE, DDAOntology.metric, metric)
+				.add(DDAOntology.resourceId, QueryVars.RESOURCE_ID)
+				.add(DDAOntology.value, QueryVars.INPUT)
+				.add(DDAOntology.timestamp, QueryVars.INPUT_TIMESTAMP));
+		_body body = new _body();
+		body.select(QueryVars.RESOURCE_ID)
+				.select(QueryVars.INPUT)
+				.selectFunction(QueryVars.INPUT_TIMESTAMP, Function.TIMESTAMP,
+						QueryVars.DATUM,
+						DDAOntology.shortForm(DDAOntology.resourceId),
+						QueryVars.RESOURCE_ID)
+				.where(new _graph().add(QueryVars.DATUM,
+						DDAOntology.resourceId, QueryVars.RESOURCE_ID).add(
+						DDAOntology.value, QueryVars.INPUT));
+		query.fromStream(streamName, RAW_DATA_BATCH_SECONDS + "s",
+				RAW_DATA_BATCH_SECONDS + "s").where(body);
+		return query;
+	}
+
+	public void addRawData(String metric, List<MonitoringDatum> data) {
+		if (fastPathEngine != null)
+			fastPathEngine.addData(metric, data);
+	}
+
+	public void addPanes(String paneMetric, List<PaneMerger.Pane> panes) {
+		paneMerger.addPanes(paneMetric, panes, System.currentTimeMillis());
+	}
+
+	private void unregisterSharedQuery(MonitoringRule rule) throws Exception {
+		String ruleId = rule.getId();
+		QueryRegistry.SharedQuery sharedQuery = queryRegistry.release(ruleId);
+		queryIdByRuleId.remove(ruleId);
+		if (sharedQuery == null)
+			return;
+		synchronized (sharedQuery) {
+			if (!queryRegistry.isUnused(sharedQuery)) {
+				logger.debug(
+						"Query {} is still used by other rules, it will not be unregistered",
+						sharedQuery.getQueryId());
+				return;
+			}
+			deleteObservableMetrics(rule);
+			Exception failure = null;
+			try {
+				detachObservers(rule);
+			} catch (Exception e) {
+				failure = e;
+			}
+			if (sharedQuery.isRegistered()) {
+				// forgotten even if the DDA does not have it anymore, e.g. after
+				// a restart, so that it is registered again on reinstall
+				String queryId = sharedQuery.getQueryId();
+				queriesById.remove(queryId);
+				sharedQuery.setQueryId(null);
+				try {
+					csparqlAPI.unregisterQuery(getQueryUriFromQueryId(queryId));
+				} catch (Exception e) {
+					if (failure == null)
+						failure = e;
+				}
+			}
+			queryRegistry.removeIfUnused(sharedQuery);
+			if (failure != null)
+				throw failure;
+		}
+	}
+
 	private void unregisterAllStreams() throws Exception {
 		JsonParser parser = new JsonParser();
 		JsonArray jsonStreamsInfoArray = parser.parse(
@@ -207,39 +603,242 @@ public class CSPARQLEngineManager {
 		return requiredVars;
 	}
 
-	private void addObservableMetrics(MonitoringRule rule, String queryId) {
+	private void addObservableMetrics(MonitoringRule rule, String queryId)
+			throws ServerErrorException, ObserverErrorException {
 		for (Action action : rule.getActions().getActions()) {
 			if (action.getName().equals(OutputMetric.class.getSimpleName())) {
 				String metric = Util.getParameterValue(OutputMetric.metric,
 						action).toLowerCase();
 				queryIdByMetric.put(metric, queryId);
-				observersByMetric.put(metric, new HashSet<Observer>());
+				attachObservers(metric, queryId);
 			}
 		}
 	}
 
+	private void addLocalMetrics(MonitoringRule rule)
+			throws ServerErrorException, ObserverErrorException {
+		String metric = Util.getParameterValue(OutputMetric.metric,
+				rule.getActions().getActions().get(0)).toLowerCase();
+		localMetrics.add(metric);
+		attachObservers(metric, null);
+	}
+
+	/**
+	 * Makes the metric observable. Observers the metric kept while it was not
+	 * computed, e.g. while its rule was being reinstalled or after a DDA
+	 * restart, are attached to the new query as a whole with a single
+	 * observer proxy, no matter how many they are.
+	 * 
+	 * @param queryId
+	 *            the DDA query computing the metric, null if the metric is
+	 *            computed by the manager
+	 */
+	private void attachObservers(String metric, String queryId)
+			throws ServerErrorException, ObserverErrorException {
+		while (true) {
+			MetricObservers metricObservers = observerRegistry
+					.addMetric(metric);
+			synchronized (metricObservers) {
+				if (!observerRegistry.attach(metricObservers))
+					continue;
+				if (queryId != null
+						&& metricObservers.getProxyObserverUri() == null
+						&& !observerRegistry.isEmpty(metricObservers)) {
+					metricObservers.setProxyObserverUri(csparqlAPI
+							.addObserver(getQueryUriFromQueryId(queryId),
+									getObserverProxyUrl(metric)));
+					logger.info(
+							"Observer proxy registered on the DDA for metric {}, {} observer(s) attached",
+							metric, observerRegistry.getObservers(metric)
+									.size());
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Makes the metric not observable, keeping its observers until the
+	 * metric is computed again.
+	 */
+	private void detachObservers(String metric) throws ServerErrorException,
+			ObserverErrorException {
+		MetricObservers metricObservers = observerRegistry.getMetric(metric);
+		if (metricObservers == null)
+			return;
+		synchronized (metricObservers) {
+			observerRegistry.detach(metricObservers);
+			removeProxyObserver(metricObservers);
+		}
+	}
+
+	private void deleteLocalMetrics(MonitoringRule rule)
+			throws ServerErrorException, ObserverErrorException {
+		String metric = Util.getParameterValue(OutputMetric.metric,
+				rule.getActions().getActions().get(0)).toLowerCase();
+		localMetrics.remove(metric);
+		detachObservers(rule);
+	}
+
 	public Observer addObserver(String metricname, String callbackUrl)
 			throws MetricDoesNotExistException, ServerErrorException,
 			ObserverErrorException, InternalErrorException, MalformedURLException {
+		return addObserver(metricname, callbackUrl, null, null, null);
+	}
+
+	/**
+	 * Observers are kept by the manager, which fans out the results of each
+	 * metric itself. Only one internal observer per metric, pointing to the
+	 * private observer proxy, is registered on the DDA, no matter how many
+	 * observers the metric has. Metrics computed by the manager do not need
+	 * any DDA observer.
+	 * 
+	 * @param filter
+	 *            restricts the data delivered to the observer, null to deliver
+	 *            all data
+	 * @param batching
+	 *            batches the data delivered to the observer, null to deliver
+	 *            data as soon as they are available
+	 * @param format
+	 *            the payload format of the observer, null for RDF/JSON
+	 */
+	public Observer addObserver(String metricname, String callbackUrl,
+			ObserverFilter filter, ObserverBatching batching, String format)
+			throws MetricDoesNotExistException, ServerErrorException,
+			ObserverErrorException, InternalErrorException,
+			MalformedURLException {
+		metricname = metricname.toLowerCase();
+		if (format != null && !PayloadEncoder.isSupported(format))
+			throw new IllegalArgumentException("Unknown payload format "
+					+ format);
+		if (filter != null && !filter.isInitialized())
+			filter.init();
+		Observer observer = new Observer(UUID.randomUUID().toString(),
+				new URL(callbackUrl).toString(), null, filter, batching, format);
+		return registerObserver(metricname, observer);
+	}
+
+	/**
+	 * Adds an observer whose data are written to a bounded stream, as
+	 * server-sent events, rather than posted to a callback url.
+	 */
+	public Observer openStream(String metricname, int bufferSize)
+			throws MetricDoesNotExistException, ServerErrorException,
+			ObserverErrorException {
 		metricname = metricname.toLowerCase();
-		String queryUri = getQueryUriFromMetric(metricname);
-		String returnedObserverUri = csparqlAPI.addObserver(queryUri,
-				new URL(callbackUrl).toString());
-		String observerId = returnedObserverUri.substring(returnedObserverUri
-				.lastIndexOf("/") + 1);
-		Set<Observer> observers = observersByMetric.get(metricname);
-		if (observers == null) {
-			observers = new HashSet<Observer>();
-			observersByMetric.put(metricname, observers);
-		}
-		Observer observer = new Observer(observerId, callbackUrl, queryUri);
-		observers.add(observer);
+		Observer observer = new Observer(UUID.randomUUID().toString(), null,
+				null, null, null, PayloadEncoder.EVENT_STREAM);
+		observer.setStream(new MetricStream(bufferSize));
+		return registerObserver(metricname, observer);
+	}
+
+	/**
+	 * @return the given observer, or the observer registered already on the
+	 *         metric with the same callback url and options
+	 */
+	private Observer registerObserver(String metricname, Observer observer)
+			throws MetricDoesNotExistException, ServerErrorException,
+			ObserverErrorException {
+		MetricObservers metricObservers = observerRegistry
+				.getMetric(metricname);
+		if (metricObservers == null)
+			throw new MetricDoesNotExistException(metricname);
+		synchronized (metricObservers) {
+			if (!observerRegistry.isObservable(metricObservers))
+				throw new MetricDoesNotExistException(metricname);
+			Observer duplicate = observerRegistry.findDuplicate(metricname,
+					observer);
+			if (duplicate != null) {
+				logger.info(
+						"Observer {} of metric {} has the same callback url and options, reusing it",
+						duplicate.getId(), metricname);
+				return duplicate;
+			}
+			if (!localMetrics.contains(metricname)
+					&& metricObservers.getProxyObserverUri() == null) {
+				metricObservers.setProxyObserverUri(csparqlAPI.addObserver(
+						getQueryUriFromMetric(metricname),
+						getObserverProxyUrl(metricname)));
+				logger.info("Observer proxy registered on the DDA for metric {}",
+						metricname);
+			}
+			observerRegistry.add(metricObservers, observer);
+		}
 		return observer;
 	}
 
+	private ObserverFilterIndex getFilterIndex(String metricname) {
+		return observerRegistry.getFilterIndex(metricname.toLowerCase());
+	}
+
+	/**
+	 * Serializes once the data accepted by each group of observers sharing
+	 * the same filter and sends them to the observers of the group, or adds
+	 * them to the batches of observers with batched delivery.
+	 */
+	private void notifyFilteredObservers(ObserverFilterIndex index,
+			List<MonitoringDatum> data) {
+		for (Map.Entry<ObserverFilterIndex.FilterGroup, List<MonitoringDatum>> entry : index
+				.match(data).entrySet()) {
+			List<Observer> immediate = new ArrayList<Observer>();
+			for (Observer observer : entry.getKey().getObservers()) {
+				if (observer.isBatched())
+					observerBatcher.add(observer, entry.getValue());
+				else
+					immediate.add(observer);
+			}
+			observerNotifier.notify(immediate, entry.getValue());
+		}
+	}
+
+	private String getObserverProxyUrl(String metricname) {
+		return observerProxyUrl + "/" + metricname;
+	}
+
+	/**
+	 * Removes the internal observer of the metric from the DDA, if any.
+	 */
+	private void removeProxyObserver(MetricObservers metricObservers)
+			throws ServerErrorException, ObserverErrorException {
+		String proxyObserverUri = metricObservers.getProxyObserverUri();
+		if (proxyObserverUri != null) {
+			metricObservers.setProxyObserverUri(null);
+			csparqlAPI.deleteObserver(proxyObserverUri);
+			logger.info("Observer proxy removed from the DDA for metric {}",
+					metricObservers.getMetric());
+		}
+	}
+
+	/**
+	 * Stops any pending delivery to a removed observer.
+	 */
+	private void releaseObserver(Observer observer, String reason) {
+		// marks the observer as removed before its batch is dropped, so that a
+		// concurrent delivery cannot create a new one
+		observerNotifier.remove(observer);
+		if (observer.isBatched())
+			observerBatcher.remove(observer);
+		if (observer.getStream() != null)
+			observer.getStream().close(reason);
+	}
+
+	/**
+	 * Delivers the results the DDA sent to the observer proxy of the metric to
+	 * all of its observers. Results are forwarded as they are to observers
+	 * without filters, they are parsed only if some observer has a filter.
+	 */
+	public void forwardToObservers(String metricname, String json)
+			throws IOException {
+		ObserverFilterIndex index = getFilterIndex(metricname);
+		observerNotifier.notify(index.getUnfilteredObservers(), json);
+		if (index.requiresData())
+			notifyFilteredObservers(index, new MonitoringDataParser()
+					.parse(new StringReader(json)));
+	}
+
 	public Set<Observer> getObservers(String metricname)
 			throws MetricDoesNotExistException {
-		Set<Observer> observers = observersByMetric.get(metricname
+		Set<Observer> observers = observerRegistry.getObservers(metricname
 				.toLowerCase());
 		if (observers == null)
 			throw new MetricDoesNotExistException(metricname);
@@ -259,23 +858,55 @@ public class CSPARQLEngineManager {
 		return ddaURL.toString() + "/queries/" + queryId;
 	}
 
-	public void removeObserver(String metricName, String observerId)
+	/**
+	 * @return false if the metric has no observer with the given id
+	 */
+	public boolean removeObserver(String metricName, String observerId)
 			throws MetricDoesNotExistException, ServerErrorException,
 			ObserverErrorException {
 		metricName = metricName.toLowerCase();
-		Set<Observer> observers = observersByMetric.get(metricName);
-		if (observers == null)
+		MetricObservers metricObservers = observerRegistry
+				.getMetric(metricName);
+		if (metricObservers == null)
 			throw new MetricDoesNotExistException(metricName);
-		Observer removed = null;
-		for (Observer observer : observers) {
-			if (observer.getId().equals(observerId)) {
-				csparqlAPI.deleteObserver(observer.getUri());
-				removed = observer;
-				break;
+		synchronized (metricObservers) {
+			Observer removed = observerRegistry.remove(metricName, observerId);
+			if (removed != null) {
+				releaseObserver(removed, "observer removed");
+				if (observerRegistry.isEmpty(metricObservers))
+					removeProxyObserver(metricObservers);
 			}
+			return removed != null;
 		}
-		if (removed != null) {
-			observers.remove(removed);
+	}
+
+	/**
+	 * @return the metric the observer was removed from, null if there is no
+	 *         observer with the given id
+	 */
+	public String removeObserver(String observerId)
+			throws ServerErrorException, ObserverErrorException {
+		String metric = observerRegistry.getMetricName(observerId);
+		if (metric == null)
+			return null;
+		try {
+			return removeObserver(metric, observerId) ? metric : null;
+		} catch (MetricDoesNotExistException e) {
+			// removed concurrently
+			return null;
+		}
+	}
+
+	public Set<Observer> getObserversByCallbackUrl(String callbackUrl) {
+		return observerRegistry.getObserversByCallbackUrl(callbackUrl);
+	}
+
+	private void evictObserver(Observer observer) {
+		try {
+			removeObserver(observer.getId());
+		} catch (Exception e) {
+			logger.error("Error while evicting observer {}",
+					observer.getId(), e);
 		}
 	}
 
@@ -289,7 +920,7 @@ public class CSPARQLEngineManager {
 	}
 
 	// TODO porcata temporanea
-	private static void addNotAggregatedMetricSelect(_body queryBody,
+	static void addNotAggregatedMetricSelect(_body queryBody,
 			String[] variables, MonitoringRule rule)
 			throws MalformedQueryException, RuleInstallationException {
 		String aggregateFunction = Util.getAggregateFunction(rule);
@@ -419,6 +1050,73 @@ public class CSPARQLEngineManager {
 		return query;
 	}
 
+	/**
+	 * Same as {@link #createQueryFromRule(MonitoringRule, String, String)}
+	 * for an aggregated rule, with count, max and min of the input selected
+	 * and output along with the aggregate of the rule.
+	 */
+	static CSquery createPaneQuery(MonitoringRule paneRule, String queryId,
+			String kbURL) throws MalformedQueryException,
+			RuleInstallationException {
+		CSquery query = CSquery.createDefaultQuery(queryId);
+		addPrefixes(query);
+
+		Action action = paneRule.getActions().getActions().get(0);
+		String outputResourceIdVariable = Util
+				.getOutputResourceIdVariable(paneRule);
+		String[] outputRequiredVars;
+		if (outputResourceIdVariable != null) {
+			outputRequiredVars = new String[] { outputResourceIdVariable,
+					QueryVars.OUTPUT, QueryVars.TIMESTAMP };
+		} else {
+			outputRequiredVars = new String[] { QueryVars.OUTPUT,
+					QueryVars.TIMESTAMP };
+		}
+		query.construct(graph
+				.add(CSquery.BLANK_NODE, DDAOntology.metric,
+						Util.getParameterValue(OutputMetric.metric, action))
+				.add(DDAOntology.resourceId,
+						(outputResourceIdVariable != null ? outputResourceIdVariable
+								: Util.getParameterValue(
+										OutputMetric.resourceId, action)))
+				.add(DDAOntology.value, QueryVars.OUTPUT)
+				.add(PaneMerger.paneCount, QueryVars.PANE_COUNT)
+				.add(PaneMerger.paneMax, QueryVars.PANE_MAX)
+				.add(PaneMerger.paneMin, QueryVars.PANE_MIN)
+				.add(DDAOntology.timestamp, QueryVars.TIMESTAMP));
+
+		_body mainQueryBody = new _body();
+		addSelect(mainQueryBody, outputRequiredVars, paneRule);
+		mainQueryBody
+				.selectFunction(QueryVars.PANE_COUNT, PaneMerger.COUNT,
+						getInputArgs(PaneMerger.COUNT))
+				.selectFunction(QueryVars.PANE_MAX, PaneMerger.MAX,
+						getInputArgs(PaneMerger.MAX))
+				.selectFunction(QueryVars.PANE_MIN, PaneMerger.MIN,
+						getInputArgs(PaneMerger.MIN));
+		if (Util.isGroupedMetric(paneRule))
+			mainQueryBody.groupby(Util.getGroupingClassIdVariable(paneRule));
+		_body innerQueryBody = new _body();
+		addSelect(innerQueryBody,
+				getInnerQueryRequiredVars(outputRequiredVars), paneRule);
+		mainQueryBody.where(innerQueryBody.where(createGraphPattern(paneRule)));
+
+		query.fromStream(getSourceStreamName(paneRule),
+				paneRule.getTimeWindow() + "s", paneRule.getTimeStep() + "s")
+				.from(FusekiKBAPI.getGraphURL(kbURL,
+						MonitoringManager.MODEL_GRAPH_NAME))
+				.where(mainQueryBody);
+		return query;
+	}
+
+	private static String[] getInputArgs(String aggregateFunction) {
+		String[] args = new String[FunctionArgs
+				.getNumberOfArgs(aggregateFunction)];
+		args[FunctionArgs.getArgIdx(aggregateFunction,
+				FunctionArgs.INPUT_VARIABLE)] = QueryVars.INPUT;
+		return args;
+	}
+
 	private static _graph createGraphPattern(MonitoringRule rule)
 			throws RuleInstallationException {
 		_graph graphPattern = new _graph();
@@ -531,7 +1229,6 @@ public class CSPARQLEngineManager {
 				String metric = Util.getParameterValue(OutputMetric.metric,
 						action).toLowerCase();
 				queryIdByMetric.remove(metric);
-				observersByMetric.remove(metric);
 			}
 		}
 	}
@@ -556,22 +1253,38 @@ public class CSPARQLEngineManager {
 		return innerQueryRequiredVars;
 	}
 
-	private String getNewQueryId(MonitoringRule rule, String suffix) {
+	/**
+	 * Reserves an id no other query has, so that rules installed in parallel
+	 * never register their queries with the same id. The id must be released
+	 * with {@link #releaseQueryId(String)} once the query is registered or
+	 * could not be.
+	 */
+	String getNewQueryId(MonitoringRule rule, String suffix) {
 		if (suffix == null)
 			suffix = "";
 		String queryName = CSquery.escapeName(rule.getId()) + suffix;
-		while (queriesById.containsKey(queryName)) {
+		while (queriesById.putIfAbsent(queryName, RESERVED_QUERY) != null) {
 			queryName = CSquery.generateRandomName() + suffix;
 		}
 		return queryName;
 	}
 
+	/**
+	 * Frees the id if its query was not registered, does nothing otherwise.
+	 */
+	private void releaseQueryId(String queryId) {
+		queriesById.remove(queryId, RESERVED_QUERY);
+	}
+
 	public Set<String> getObservableMetrics() {
-		return queryIdByMetric.keySet();
+		Set<String> metrics = new HashSet<String>(queryIdByMetric.keySet());
+		metrics.addAll(localMetrics);
+		return metrics;
 	}
 
 	public String getQuery(String queryId) {
-		return queriesById.get(queryId);
+		String query = queriesById.get(queryId);
+		return RESERVED_QUERY.equals(query) ? null : query;
 	}
 
 	private static String getSourceStreamName(MonitoringRule rule) {
@@ -616,30 +1329,57 @@ public class CSPARQLEngineManager {
 			throws RuleInstallationException {
 		String streamName = getSourceStreamName(rule);
 		logger.debug("Registering stream {}", streamName);
-		if (!streamsByRuleId.containsValue(streamName)) {
-			String response;
-			boolean registered = false;
-			try {
-				response = csparqlAPI.registerStream(streamName);
-				logger.debug("Server response: {}", response);
-				registered = true;
-			} catch (Exception e) {
-				if (isStreamInstalled(streamName)) {
+		StreamRegistry.Stream stream = streamRegistry.acquire(streamName,
+				rule.getId());
+		synchronized (stream) {
+			if (!stream.isRegistered()) {
+				String response;
+				boolean registered = false;
+				try {
+					response = csparqlAPI.registerStream(streamName);
+					logger.debug("Server response: {}", response);
 					registered = true;
-					logger.debug("Stream {} already registered", streamName);
+				} catch (Exception e) {
+					if (isStreamInstalled(streamName)) {
+						registered = true;
+						logger.debug("Stream {} already registered",
+								streamName);
+					}
 				}
+				if (!registered) {
+					streamRegistry.release(rule.getId());
+					streamRegistry.removeIfUnused(stream);
+					throw new RuleInstallationException(
+							"Could not register stream " + streamName);
+				}
+				stream.setRegistered(true);
+			} else {
+				logger.debug("Stream {} already registered", streamName);
 			}
-			if (!registered) {
-				throw new RuleInstallationException(
-						"Could not register stream " + streamName);
-			}
-		} else {
-			logger.debug("Stream {} already registered", streamName);
 		}
-		streamsByRuleId.put(rule.getId(), streamName);
 		return streamName;
 	}
 
+	private void unregisterStreamIfUnused(StreamRegistry.Stream stream)
+			throws Exception {
+		synchronized (stream) {
+			if (!streamRegistry.isUnused(stream))
+				return;
+			try {
+				if (stream.isRegistered()) {
+					logger.debug(
+							"Stream {} not used anymore, unregistering it",
+							stream.getIri());
+					csparqlAPI.unregisterStream(stream.getIri());
+				}
+			} finally {
+				// forgotten even if the DDA does not have it anymore
+				stream.setRegistered(false);
+				streamRegistry.removeIfUnused(stream);
+			}
+		}
+	}
+
 	private boolean isStreamInstalled(String streamName) {
 		String streamInfo = null;
 		try {
@@ -650,28 +1390,26 @@ public class CSPARQLEngineManager {
 		return streamInfo.contains("\"status\":\"RUNNING\"");
 	}
 
-	private void removeObservers(MonitoringRule rule)
+	private void detachObservers(MonitoringRule rule)
 			throws ServerErrorException, ObserverErrorException {
 		for (Action action : rule.getActions().getActions()) {
 			if (action.getName().equals(OutputMetric.class.getSimpleName())) {
-				String metric = Util.getParameterValue(OutputMetric.metric,
-						action).toLowerCase();
-				Set<Observer> observers = observersByMetric.get(metric);
-				if (observers != null) {
-					for (Observer observer : observers) {
-						csparqlAPI.deleteObserver(observer.getUri());
-					}
-					observers.clear();
-				}
+				detachObservers(Util.getParameterValue(OutputMetric.metric,
+						action).toLowerCase());
 			}
 		}
 	}
 
-	private boolean streamIsNotUsed(String stream) {
-		return !streamsByRuleId.values().contains(stream);
-	}
-
-	public void uninstallRule(String ruleId) {
+	/**
+	 * Removes the rule, cleaning up its local state even if it cannot be
+	 * removed from the DDA.
+	 * 
+	 * @throws FailedToUninstallRuleException
+	 *             if the queries, observers or stream of the rule could not be
+	 *             removed from the DDA
+	 */
+	public void uninstallRule(String ruleId)
+			throws FailedToUninstallRuleException {
 		MonitoringRule rule = rulesById.get(ruleId);
 		if (rule == null) {
 			logger.error(
@@ -679,28 +1417,45 @@ public class CSPARQLEngineManager {
 					ruleId);
 			return;
 		}
+		// the local state of the rule is cleaned up even if the DDA calls
+		// fail, e.g. because the DDA was restarted and lost its queries
+		Exception failure = null;
 		try {
-			String queryId = queryIdByRuleId.get(ruleId);
-			deleteObservableMetrics(rule);
-			removeObservers(rule);
-			csparqlAPI.unregisterQuery(getQueryUriFromQueryId(queryId));
-			queriesById.remove(queryId);
-			queryIdByRuleId.remove(ruleId);
-			actionImplByRuleId.remove(ruleId);
-
-			String sourceStream = streamsByRuleId.remove(ruleId);
-			if (streamIsNotUsed(sourceStream)) {
-				try {
-					csparqlAPI.unregisterStream(sourceStream);
-				} catch (Exception e) {
-					streamsByRuleId.put(ruleId, sourceStream);
-					throw e;
-				}
+			if (paneMerger.isSubscribed(ruleId)) {
+				paneMerger.unsubscribe(ruleId);
+				deleteLocalMetrics(rule);
+			} else if (fastPathEngine != null
+					&& fastPathEngine.isInstalled(ruleId)) {
+				fastPathEngine.uninstall(ruleId);
+				deleteLocalMetrics(rule);
 			}
-			rulesById.remove(ruleId);
 		} catch (Exception e) {
-			logger.error("Error while uninstalling rule {}", ruleId, e);
+			failure = e;
+		}
+		try {
+			unregisterSharedQuery(rule);
+		} catch (Exception e) {
+			if (failure == null)
+				failure = e;
 		}
+		actionImplByRuleId.remove(ruleId);
+		StreamRegistry.Stream sourceStream = streamRegistry.release(ruleId);
+		try {
+			if (sourceStream != null)
+				unregisterStreamIfUnused(sourceStream);
+		} catch (Exception e) {
+			if (failure == null)
+				failure = e;
+		}
+		rulesById.remove(ruleId);
+		if (failure != null) {
+			logger.error("Error while uninstalling rule {}", ruleId, failure);
+			throw new FailedToUninstallRuleException(failure);
+		}
+	}
+
+	public StreamRegistry getStreamRegistry() {
+		return streamRegistry;
 	}
 
 	public AbstractAction getActionImplByRuleId(String ruleId) {
@@ -28,9 +28,9 @@ import it.polimi.modaclouds.qos_models.schema.MonitoredTarget;
 import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
 import it.polimi.modaclouds.qos_models.util.Config;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,10 +44,10 @@ public class DCFactoriesManager {
 
 	public DCFactoriesManager(FusekiKBAPI knowledgeBase) {
 		this.knowledgeBase = knowledgeBase;
-		dcConfigByRuleId = new HashMap<String, DCConfig>();
+		dcConfigByRuleId = new ConcurrentHashMap<String, DCConfig>();
 	}
 
-	public synchronized void uninstallRule(String ruleId) {
+	public void uninstallRule(String ruleId) {
 		logger.debug(
 				"Removing data collectors configurations related to rule {} from KB",
 				ruleId);
@@ -56,6 +56,7 @@ public class DCFactoriesManager {
 			if (dcConfig != null) {
 				knowledgeBase.deleteEntitiesByPropertyValue(dcConfig.getId(),
 						DCFields.id, DCVocabulary.DATA_COLLECTORS_GRAPH_NAME);
+				dcConfigByRuleId.remove(ruleId);
 			} else {
 				logger.warn("No dc configuration found for rule {}", ruleId);
 			}
@@ -67,7 +68,7 @@ public class DCFactoriesManager {
 
 	}
 
-	public synchronized void installRule(MonitoringRule rule)
+	public void installRule(MonitoringRule rule)
 			throws RuleInstallationException {
 		logger.debug("Adding data collectors related to rule {} to KB",
 				rule.getId());
@@ -27,6 +27,19 @@ public class Env {
 	public static final String MODACLOUDS_MONITORING_MONITORING_METRICS_FILE = "MODACLOUDS_MONITORING_MONITORING_METRICS_FILE";
 	public static final String MODACLOUDS_MONITORING_MANAGER_PRIVATE_PORT = "MODACLOUDS_MONITORING_MANAGER_PRIVATE_PORT";
 	public static final String MODACLOUDS_MONITORING_MANAGER_PRIVATE_IP = "MODACLOUDS_MONITORING_MANAGER_PRIVATE_IP";
+	public static final String MODACLOUDS_MONITORING_MANAGER_INSTALL_THREADS = "MODACLOUDS_MONITORING_MANAGER_INSTALL_THREADS";
+	public static final String MODACLOUDS_MONITORING_MANAGER_PANE_SIZE = "MODACLOUDS_MONITORING_MANAGER_PANE_SIZE";
+	public static final String MODACLOUDS_MONITORING_MANAGER_FAST_PATH = "MODACLOUDS_MONITORING_MANAGER_FAST_PATH";
+	public static final String MODACLOUDS_MONITORING_MANAGER_ACTION_THREADS = "MODACLOUDS_MONITORING_MANAGER_ACTION_THREADS";
+	public static final String MODACLOUDS_MONITORING_MANAGER_ACTION_QUEUE_SIZE = "MODACLOUDS_MONITORING_MANAGER_ACTION_QUEUE_SIZE";
+	public static final String MODACLOUDS_MONITORING_MANAGER_OBSERVER_THREADS = "MODACLOUDS_MONITORING_MANAGER_OBSERVER_THREADS";
+	public static final String MODACLOUDS_MONITORING_MANAGER_OBSERVER_MAX_FAILURES = "MODACLOUDS_MONITORING_MANAGER_OBSERVER_MAX_FAILURES";
+	public static final String MODACLOUDS_MONITORING_MANAGER_MAX_STREAMS = "MODACLOUDS_MONITORING_MANAGER_MAX_STREAMS";
+	public static final String MODACLOUDS_MONITORING_MANAGER_STREAM_BUFFER_SIZE = "MODACLOUDS_MONITORING_MANAGER_STREAM_BUFFER_SIZE";
+	public static final String MODACLOUDS_MONITORING_MANAGER_OUTBOX_DIR = "MODACLOUDS_MONITORING_MANAGER_OUTBOX_DIR";
+	public static final String MODACLOUDS_MONITORING_MANAGER_OUTBOX_SIZE = "MODACLOUDS_MONITORING_MANAGER_OUTBOX_SIZE";
+	public static final String MODACLOUDS_MONITORING_MANAGER_OUTBOX_RETENTION = "MODACLOUDS_MONITORING_MANAGER_OUTBOX_RETENTION";
+	public static final String MODACLOUDS_MONITORING_MANAGER_MODEL_CHUNK_SIZE = "MODACLOUDS_MONITORING_MANAGER_MODEL_CHUNK_SIZE";
 
 	
 }
@@ -0,0 +1,350 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+import it.polimi.modaclouds.qos_models.monitoring_rules.actions.OutputMetric;
+import it.polimi.modaclouds.qos_models.schema.Action;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTarget;
+import it.polimi.modaclouds.qos_models.schema.MonitoringMetricAggregation;
+import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Computes simple aggregated rules inside the manager: an Average, Sum,
+ * Count, Max or Min of one metric, grouped by the target class, without
+ * condition and output by an OutputMetric action. Values are kept in
+ * primitive ring buffers per resource and rule, and aggregated at every
+ * step of the rule over the values received within its window.
+ */
+public class FastPathEngine {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(FastPathEngine.class);
+
+	public interface ResourceResolver {
+		/**
+		 * @return the resource with the given id, null if it is unknown
+		 */
+		Resource getResource(String resourceId);
+	}
+
+	private final MonitoringDataListener listener;
+	private final ResourceResolver resolver;
+	private final ScheduledExecutorService scheduler;
+	private final Map<String, FastRule> rulesById = new ConcurrentHashMap<String, FastRule>();
+	private final Map<String, List<FastRule>> rulesByMetric = new ConcurrentHashMap<String, List<FastRule>>();
+
+	public FastPathEngine(MonitoringDataListener listener,
+			ResourceResolver resolver) {
+		this.listener = listener;
+		this.resolver = resolver;
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("fast-path-%d").setDaemon(true).build());
+	}
+
+	public static boolean isEligible(MonitoringRule rule) {
+		if (!Util.isAggregatedMetric(rule) || rule.getCondition() != null)
+			return false;
+		MonitoringMetricAggregation aggregation = rule.getMetricAggregation();
+		if (!PaneMerger.isMergeable(aggregation.getAggregateFunction())
+				|| (aggregation.getParameters() != null && !aggregation
+						.getParameters().isEmpty()))
+			return false;
+		String targetClass;
+		try {
+			targetClass = Util.getTargetClass(rule);
+		} catch (RuleInstallationException e) {
+			return false;
+		}
+		if (targetClass == null
+				|| !targetClass.equals(aggregation.getGroupingClass()))
+			return false;
+		if (rule.getActions() == null
+				|| rule.getActions().getActions().size() != 1)
+			return false;
+		Action action = rule.getActions().getActions().get(0);
+		if (!action.getName().equals(OutputMetric.class.getSimpleName())
+				|| !"ID".equals(Util.getParameterValue(
+						OutputMetric.resourceId, action))
+				|| !"METRIC".equals(Util.getParameterValue(
+						OutputMetric.value, action)))
+			return false;
+		try {
+			return Integer.parseInt(rule.getTimeWindow()) > 0
+					&& Integer.parseInt(rule.getTimeStep()) > 0;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	public void install(MonitoringRule rule) throws RuleInstallationException {
+		final FastRule fastRule = new FastRule(rule);
+		rulesById.put(fastRule.id, fastRule);
+		List<FastRule> rules = getRules(fastRule.inputMetric);
+		rules.add(fastRule);
+		fastRule.emission = scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					emit(fastRule, System.currentTimeMillis());
+				} catch (Exception e) {
+					logger.error("Error while computing rule {}",
+							fastRule.id, e);
+				}
+			}
+		}, fastRule.stepMillis, fastRule.stepMillis, TimeUnit.MILLISECONDS);
+		logger.info("Rule {} will be computed by the fast path engine",
+				fastRule.id);
+	}
+
+	private synchronized List<FastRule> getRules(String inputMetric) {
+		List<FastRule> rules = rulesByMetric.get(inputMetric);
+		if (rules == null) {
+			rules = new CopyOnWriteArrayList<FastRule>();
+			rulesByMetric.put(inputMetric, rules);
+		}
+		return rules;
+	}
+
+	public void uninstall(String ruleId) {
+		FastRule fastRule = rulesById.remove(ruleId);
+		if (fastRule == null)
+			return;
+		if (fastRule.emission != null)
+			fastRule.emission.cancel(false);
+		List<FastRule> rules = rulesByMetric.get(fastRule.inputMetric);
+		if (rules != null)
+			rules.remove(fastRule);
+	}
+
+	public boolean isInstalled(String ruleId) {
+		return rulesById.containsKey(ruleId);
+	}
+
+	public void addData(String inputMetric, List<MonitoringDatum> data) {
+		addData(inputMetric, data, System.currentTimeMillis());
+	}
+
+	void addData(String inputMetric, List<MonitoringDatum> data,
+			long receivedMillis) {
+		List<FastRule> rules = rulesByMetric.get(inputMetric.toLowerCase());
+		if (rules == null || rules.isEmpty())
+			return;
+		for (MonitoringDatum datum : data) {
+			Resource resource = resolver.getResource(datum.getResourceId());
+			if (resource == null)
+				continue;
+			for (FastRule rule : rules) {
+				if (rule.matches(resource))
+					rule.add(datum, receivedMillis);
+			}
+		}
+	}
+
+	void emit(String ruleId, long now) {
+		FastRule fastRule = rulesById.get(ruleId);
+		if (fastRule != null)
+			emit(fastRule, now);
+	}
+
+	private void emit(FastRule fastRule, long now) {
+		List<MonitoringDatum> data = fastRule.aggregate(now);
+		if (!data.isEmpty())
+			listener.onMonitoringData(fastRule.outputMetric, data);
+	}
+
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	private static class FastRule {
+
+		private final String id;
+		private final String inputMetric;
+		private final String targetClass;
+		private final Set<String> targetTypes = new HashSet<String>();
+		private final String aggregateFunction;
+		private final String outputMetric;
+		private final long windowMillis;
+		private final long stepMillis;
+		private final Map<String, RingBuffer> buffersByResourceId = new HashMap<String, RingBuffer>();
+		private ScheduledFuture<?> emission;
+
+		private FastRule(MonitoringRule rule) throws RuleInstallationException {
+			id = rule.getId();
+			inputMetric = rule.getCollectedMetric().getMetricName()
+					.toLowerCase();
+			targetClass = Util.getTargetClass(rule);
+			for (MonitoredTarget target : Util.getMonitoredTargets(rule)) {
+				if (!Strings.isNullOrEmpty(target.getType()))
+					targetTypes.add(target.getType());
+			}
+			aggregateFunction = Util.getAggregateFunction(rule);
+			outputMetric = Util.getParameterValue(OutputMetric.metric, rule
+					.getActions().getActions().get(0));
+			windowMillis = Long.parseLong(rule.getTimeWindow()) * 1000;
+			stepMillis = Long.parseLong(rule.getTimeStep()) * 1000;
+		}
+
+		private boolean matches(Resource resource) {
+			return resource.getClass().getSimpleName().equals(targetClass)
+					&& (targetTypes.isEmpty() || targetTypes.contains(resource
+							.getType()));
+		}
+
+		private synchronized void add(MonitoringDatum datum,
+				long receivedMillis) {
+			RingBuffer buffer = buffersByResourceId.get(datum
+					.getResourceId());
+			if (buffer == null) {
+				buffer = new RingBuffer();
+				buffersByResourceId.put(datum.getResourceId(), buffer);
+			}
+			buffer.add(datum.getValue(), datum.getTimestamp(),
+					receivedMillis);
+		}
+
+		private synchronized List<MonitoringDatum> aggregate(long now) {
+			List<MonitoringDatum> data = new ArrayList<MonitoringDatum>();
+			Iterator<Map.Entry<String, RingBuffer>> it = buffersByResourceId
+					.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<String, RingBuffer> entry = it.next();
+				RingBuffer buffer = entry.getValue();
+				buffer.evictReceivedBefore(now - windowMillis);
+				if (buffer.size() == 0) {
+					it.remove();
+					continue;
+				}
+				data.add(new MonitoringDatum(outputMetric, entry.getKey(),
+						buffer.aggregate(aggregateFunction), buffer
+								.maxTimestamp()));
+			}
+			return data;
+		}
+
+	}
+
+	/**
+	 * Values of one resource for one rule, in the order they were received.
+	 */
+	static class RingBuffer {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		private double[] values = new double[INITIAL_CAPACITY];
+		private long[] timestamps = new long[INITIAL_CAPACITY];
+		private long[] receivedTimes = new long[INITIAL_CAPACITY];
+		private int head;
+		private int size;
+
+		void add(double value, long timestamp, long receivedMillis) {
+			if (size == values.length)
+				grow();
+			int tail = (head + size) % values.length;
+			values[tail] = value;
+			timestamps[tail] = timestamp;
+			receivedTimes[tail] = receivedMillis;
+			size++;
+		}
+
+		void evictReceivedBefore(long millis) {
+			while (size > 0 && receivedTimes[head] <= millis) {
+				head = (head + 1) % values.length;
+				size--;
+			}
+		}
+
+		int size() {
+			return size;
+		}
+
+		double aggregate(String aggregateFunction) {
+			double sum = 0;
+			double max = Double.NEGATIVE_INFINITY;
+			double min = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < size; i++) {
+				double value = values[(head + i) % values.length];
+				sum += value;
+				max = Math.max(max, value);
+				min = Math.min(min, value);
+			}
+			switch (aggregateFunction) {
+			case PaneMerger.AVERAGE:
+				return sum / size;
+			case PaneMerger.SUM:
+				return sum;
+			case PaneMerger.COUNT:
+				return size;
+			case PaneMerger.MAX:
+				return max;
+			case PaneMerger.MIN:
+				return min;
+			default:
+				throw new IllegalArgumentException("Aggregate function "
+						+ aggregateFunction + " is not supported");
+			}
+		}
+
+		long maxTimestamp() {
+			long max = 0;
+			for (int i = 0; i < size; i++) {
+				max = Math.max(max, timestamps[(head + i) % values.length]);
+			}
+			return max;
+		}
+
+		private void grow() {
+			int capacity = values.length * 2;
+			double[] newValues = new double[capacity];
+			long[] newTimestamps = new long[capacity];
+			long[] newReceivedTimes = new long[capacity];
+			for (int i = 0; i < size; i++) {
+				int j = (head + i) % values.length;
+				newValues[i] = values[j];
+				newTimestamps[i] = timestamps[j];
+				newReceivedTimes[i] = receivedTimes[j];
+			}
+			values = newValues;
+			timestamps = newTimestamps;
+			receivedTimes = newReceivedTimes;
+			head = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded buffer of the payloads waiting to be written to a streaming client.
+ * A client that does not keep up and lets the buffer fill is disconnected,
+ * instead of slowing down the delivery to other observers.
+ */
+public class MetricStream {
+
+	public static final String SLOW_CONSUMER = "slow consumer";
+
+	private static final byte[] CLOSED = new byte[0];
+
+	private final BlockingQueue<byte[]> buffer;
+	private volatile String closeReason;
+
+	public MetricStream(int capacity) {
+		buffer = new ArrayBlockingQueue<byte[]>(Math.max(1, capacity));
+	}
+
+	/**
+	 * Adds the payload to the buffer, closing the stream if the buffer is
+	 * full.
+	 * 
+	 * @return false if the stream is closed
+	 */
+	public boolean offer(byte[] payload) {
+		if (closeReason != null)
+			return false;
+		if (!buffer.offer(payload)) {
+			close(SLOW_CONSUMER);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the next payload, null if none arrived within the timeout or if
+	 *         the stream is closed
+	 */
+	public byte[] poll(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		if (closeReason != null)
+			return null;
+		byte[] payload = buffer.poll(timeout, unit);
+		return payload == CLOSED ? null : payload;
+	}
+
+	/**
+	 * Discards the buffered payloads and wakes up the writer of the stream.
+	 */
+	public void close(String reason) {
+		if (closeReason != null)
+			return;
+		closeReason = reason;
+		buffer.clear();
+		buffer.offer(CLOSED);
+	}
+
+	public boolean isClosed() {
+		return closeReason != null;
+	}
+
+	public String getCloseReason() {
+		return closeReason;
+	}
+
+	public int getBufferedPayloads() {
+		return buffer.size();
+	}
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The resources to add, replace and delete to turn a model into another one.
+ */
+public class ModelDiff {
+
+	private final List<Resource> added = new ArrayList<Resource>();
+	private final List<Resource> updated = new ArrayList<Resource>();
+	private final List<String> deleted = new ArrayList<String>();
+	private int unchanged;
+
+	void add(Resource resource) {
+		added.add(resource);
+	}
+
+	void update(Resource resource) {
+		updated.add(resource);
+	}
+
+	void delete(String id) {
+		deleted.add(id);
+	}
+
+	void unchanged() {
+		unchanged++;
+	}
+
+	public List<Resource> getAdded() {
+		return added;
+	}
+
+	public List<Resource> getUpdated() {
+		return updated;
+	}
+
+	public List<String> getDeleted() {
+		return deleted;
+	}
+
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return added.size() + " added, " + updated.size() + " updated, "
+				+ deleted.size() + " deleted, " + unchanged + " unchanged";
+	}
+
+}
@@ -0,0 +1,386 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Component;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.ExternalComponent;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Local copy of the model in the KB, kept up to date by writing through every
+ * change applied to the KB, so that the model can be read and the changes
+ * brought by a new model can be computed without querying the KB. Resources
+ * are indexed by id and by the values of the properties that can be used to
+ * filter them, and compared by a canonical fingerprint of their class and
+ * json representation, where the order of collections is not relevant.
+ * <p>
+ * Writers are serialized on the mirror, while readers never block: they see
+ * every resource of a completed write, but may see a write in progress
+ * partially applied.
+ */
+public class ModelMirror {
+
+	/**
+	 * The simple name of the ontology class of resources, e.g. "VM".
+	 */
+	public static final String CLASS = "class";
+	public static final String TYPE = "type";
+	public static final String CLOUD_PROVIDER = "cloudProvider";
+	public static final String REQUIRED_COMPONENT = "requiredComponent";
+
+	/**
+	 * Indexed properties, from the one expected to be the most selective.
+	 */
+	private static final String[] INDEXED_PROPERTIES = new String[] {
+			REQUIRED_COMPONENT, CLOUD_PROVIDER, TYPE, CLASS };
+
+	private final Map<String, Resource> resourcesById = new ConcurrentHashMap<String, Resource>();
+	private final NavigableSet<String> ids = new ConcurrentSkipListSet<String>();
+	private final Map<String, Map<String, NavigableSet<String>>> indexes = new LinkedHashMap<String, Map<String, NavigableSet<String>>>();
+	private final Map<String, String> fingerprintsById = new HashMap<String, String>();
+	private final Gson gson = new Gson();
+
+	public ModelMirror() {
+		for (String property : INDEXED_PROPERTIES) {
+			indexes.put(property,
+					new ConcurrentHashMap<String, NavigableSet<String>>());
+		}
+	}
+
+	/**
+	 * @return the changes turning the mirrored model into the given one
+	 */
+	public synchronized ModelDiff diff(Collection<Resource> model) {
+		ModelDiff diff = diffResources(model);
+		Set<String> ids = new HashSet<String>();
+		for (Resource resource : model) {
+			ids.add(resource.getId());
+		}
+		for (String id : getIdsNotIn(ids)) {
+			diff.delete(id);
+		}
+		return diff;
+	}
+
+	/**
+	 * @return the resources to add or replace to bring the given ones in the
+	 *         mirrored model, without deleting any resource
+	 */
+	public synchronized ModelDiff diffResources(
+			Collection<? extends Resource> resources) {
+		ModelDiff diff = new ModelDiff();
+		for (Resource resource : resources) {
+			String fingerprint = fingerprintsById.get(resource.getId());
+			if (fingerprint == null)
+				diff.add(resource);
+			else if (!fingerprint.equals(fingerprint(resource)))
+				diff.update(resource);
+			else
+				diff.unchanged();
+		}
+		return diff;
+	}
+
+	/**
+	 * @return the ids of the mirrored resources that are not in the given set
+	 */
+	public synchronized List<String> getIdsNotIn(Set<String> ids) {
+		List<String> missing = new ArrayList<String>();
+		for (String id : resourcesById.keySet()) {
+			if (!ids.contains(id))
+				missing.add(id);
+		}
+		return missing;
+	}
+
+	public synchronized void apply(ModelDiff diff) {
+		putAll(diff.getAdded());
+		putAll(diff.getUpdated());
+		for (String id : diff.getDeleted()) {
+			remove(id);
+		}
+	}
+
+	public synchronized void putAll(Collection<? extends Resource> resources) {
+		for (Resource resource : resources) {
+			// replace before unindexing, so that readers never miss it
+			Resource previous = resourcesById.put(resource.getId(), resource);
+			ids.add(resource.getId());
+			fingerprintsById.put(resource.getId(), fingerprint(resource));
+			for (String property : INDEXED_PROPERTIES) {
+				Set<String> values = getValues(property, resource);
+				if (previous != null) {
+					for (String value : getValues(property, previous)) {
+						if (!values.contains(value))
+							unindex(property, value, resource.getId());
+					}
+				}
+				for (String value : values) {
+					index(property, value, resource.getId());
+				}
+			}
+		}
+	}
+
+	public synchronized void remove(String id) {
+		Resource resource = resourcesById.remove(id);
+		ids.remove(id);
+		fingerprintsById.remove(id);
+		if (resource != null) {
+			for (String property : INDEXED_PROPERTIES) {
+				for (String value : getValues(property, resource)) {
+					unindex(property, value, id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the mirrored model, e.g. with the one read from the KB at
+	 * startup or after a failed write left them out of sync.
+	 */
+	public synchronized void reset(Collection<? extends Resource> resources) {
+		resourcesById.clear();
+		ids.clear();
+		fingerprintsById.clear();
+		for (Map<String, NavigableSet<String>> index : indexes.values()) {
+			index.clear();
+		}
+		putAll(resources);
+	}
+
+	/**
+	 * @return the resource with the given id, null if there is none
+	 */
+	public Resource get(String id) {
+		return resourcesById.get(id);
+	}
+
+	public List<Resource> getAll() {
+		return new ArrayList<Resource>(resourcesById.values());
+	}
+
+	public List<Resource> getByType(String type) {
+		return find(Collections.singletonMap(TYPE, type), null,
+				Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param className
+	 *            the simple name of the ontology class, e.g. "VM"
+	 */
+	public List<Resource> getByClass(String className) {
+		return find(Collections.singletonMap(CLASS, className), null,
+				Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Looks up the resources matching all the given filters in id order, by
+	 * scanning the index of the most selective filter and checking the others
+	 * against their indexes.
+	 * 
+	 * @param filters
+	 *            the value each indexed property must have, e.g. "VM" for
+	 *            {@link #CLASS}. Resources match a {@link #REQUIRED_COMPONENT}
+	 *            filter if the component is one of those they require
+	 * @param after
+	 *            only resources with an id following this one are returned,
+	 *            null to start from the first resource
+	 * @param limit
+	 *            the maximum number of resources to return
+	 * @throws IllegalArgumentException
+	 *             if a filter is not on an indexed property
+	 */
+	public List<Resource> find(Map<String, String> filters, String after,
+			int limit) {
+		NavigableSet<String> candidates = null;
+		List<Set<String>> others = new ArrayList<Set<String>>();
+		for (String property : filters.keySet()) {
+			if (!indexes.containsKey(property))
+				throw new IllegalArgumentException("Property " + property
+						+ " is not indexed");
+		}
+		for (String property : INDEXED_PROPERTIES) {
+			if (!filters.containsKey(property))
+				continue;
+			NavigableSet<String> matching = indexes.get(property).get(
+					filters.get(property));
+			if (matching == null)
+				return new ArrayList<Resource>();
+			if (candidates == null)
+				candidates = matching;
+			else
+				others.add(matching);
+		}
+		if (candidates == null)
+			candidates = ids;
+		if (after != null)
+			candidates = candidates.tailSet(after, false);
+
+		List<Resource> resources = new ArrayList<Resource>();
+		for (String id : candidates) {
+			if (resources.size() >= limit)
+				break;
+			boolean matches = true;
+			for (Set<String> other : others) {
+				if (!other.contains(id)) {
+					matches = false;
+					break;
+				}
+			}
+			Resource resource = matches ? resourcesById.get(id) : null;
+			if (resource != null)
+				resources.add(resource);
+		}
+		return resources;
+	}
+
+	/**
+	 * @return a live view of the resources of the given class, which does not
+	 *         copy the model and reflects the writes applied while iterating
+	 */
+	public Iterable<Resource> iterateByClass(String className) {
+		Set<String> classIds = indexes.get(CLASS).get(className);
+		if (classIds == null)
+			return Collections.emptyList();
+		return Iterables.filter(
+				Iterables.transform(classIds, new Function<String, Resource>() {
+					@Override
+					public Resource apply(String id) {
+						return resourcesById.get(id);
+					}
+				}), Predicates.notNull());
+	}
+
+	public int size() {
+		return resourcesById.size();
+	}
+
+	static String getClassName(Resource resource) {
+		return resource.getClass().getSimpleName();
+	}
+
+	private static Set<String> getValues(String property, Resource resource) {
+		Set<String> values = new HashSet<String>();
+		switch (property) {
+		case CLASS:
+			values.add(getClassName(resource));
+			break;
+		case TYPE:
+			values.add(resource.getType());
+			break;
+		case CLOUD_PROVIDER:
+			if (resource instanceof ExternalComponent)
+				values.add(((ExternalComponent) resource).getCloudProvider());
+			break;
+		case REQUIRED_COMPONENT:
+			if (resource instanceof Component
+					&& ((Component) resource).getRequiredComponents() != null)
+				values.addAll(((Component) resource).getRequiredComponents());
+			break;
+		}
+		values.remove(null);
+		return values;
+	}
+
+	private void index(String property, String value, String id) {
+		Map<String, NavigableSet<String>> index = indexes.get(property);
+		NavigableSet<String> indexed = index.get(value);
+		if (indexed == null) {
+			indexed = new ConcurrentSkipListSet<String>();
+			index.put(value, indexed);
+		}
+		indexed.add(id);
+	}
+
+	private void unindex(String property, String value, String id) {
+		Map<String, NavigableSet<String>> index = indexes.get(property);
+		Set<String> indexed = index.get(value);
+		if (indexed == null)
+			return;
+		indexed.remove(id);
+		if (indexed.isEmpty())
+			index.remove(value);
+	}
+
+	String fingerprint(Resource resource) {
+		StringBuilder fingerprint = new StringBuilder(resource.getClass()
+				.getName());
+		appendCanonical(gson.toJsonTree(resource), fingerprint);
+		return fingerprint.toString();
+	}
+
+	private static void appendCanonical(JsonElement element,
+			StringBuilder builder) {
+		if (element.isJsonObject()) {
+			Map<String, JsonElement> members = new TreeMap<String, JsonElement>();
+			for (Entry<String, JsonElement> member : ((JsonObject) element)
+					.entrySet()) {
+				members.put(member.getKey(), member.getValue());
+			}
+			builder.append('{');
+			for (Entry<String, JsonElement> member : members.entrySet()) {
+				builder.append(new JsonPrimitive(member.getKey()).toString())
+						.append(':');
+				appendCanonical(member.getValue(), builder);
+				builder.append(',');
+			}
+			builder.append('}');
+		} else if (element.isJsonArray()) {
+			// collections of resources are sets, their order is not relevant
+			List<String> items = new ArrayList<String>();
+			for (JsonElement item : (JsonArray) element) {
+				StringBuilder itemBuilder = new StringBuilder();
+				appendCanonical(item, itemBuilder);
+				items.add(itemBuilder.toString());
+			}
+			Collections.sort(items);
+			builder.append('[');
+			for (String item : items) {
+				builder.append(item).append(',');
+			}
+			builder.append(']');
+		} else {
+			builder.append(element.toString());
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+/**
+ * Progress of a model upload written to the KB chunk by chunk.
+ */
+public class ModelUpload {
+
+	private int chunks;
+	private int added;
+	private int updated;
+	private int deleted;
+	private int unchanged;
+
+	void record(ModelDiff diff) {
+		chunks++;
+		added += diff.getAdded().size();
+		updated += diff.getUpdated().size();
+		deleted += diff.getDeleted().size();
+		unchanged += diff.getUnchanged();
+	}
+
+	public int getChunks() {
+		return chunks;
+	}
+
+	public int getAdded() {
+		return added;
+	}
+
+	public int getUpdated() {
+		return updated;
+	}
+
+	public int getDeleted() {
+		return deleted;
+	}
+
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	/**
+	 * @return the number of resources of the uploaded model processed so far
+	 */
+	public int getResources() {
+		return added + updated + unchanged;
+	}
+
+	@Override
+	public String toString() {
+		return getResources() + " resources in " + chunks + " chunks: "
+				+ added + " added, " + updated + " updated, " + deleted
+				+ " deleted, " + unchanged + " unchanged";
+	}
+
+}
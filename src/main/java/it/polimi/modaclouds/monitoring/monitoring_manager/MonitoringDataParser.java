@@ -0,0 +1,143 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Token-streaming parser of the RDF/JSON monitoring data sent by the DDA to
+ * its observers. Only metric, resource id, value and timestamp are
+ * extracted, directly into {@link MonitoringDatum} objects that are reused
+ * by subsequent parses, so a parser must not be shared among threads and
+ * the returned data is only valid until the next parse.
+ * <p>
+ * A missing value is parsed as {@link Double#NaN}, a missing timestamp as
+ * 0.
+ */
+public class MonitoringDataParser {
+
+	private static final String METRIC = DDAOntology.metric.getURI();
+	private static final String RESOURCE_ID = DDAOntology.resourceId
+			.getURI();
+	private static final String VALUE = DDAOntology.value.getURI();
+	private static final String TIMESTAMP = DDAOntology.timestamp.getURI();
+
+	private final List<MonitoringDatum> pool = new ArrayList<MonitoringDatum>();
+	private final List<MonitoringDatum> data = new ArrayList<MonitoringDatum>();
+
+	public List<MonitoringDatum> parse(Reader in) throws IOException {
+		data.clear();
+		JsonReader reader = new JsonReader(in);
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				reader.nextName();
+				MonitoringDatum datum = nextDatum();
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String property = reader.nextName();
+					String value = readFirstValue(reader);
+					if (value == null)
+						continue;
+					if (property.equals(METRIC)) {
+						datum.setMetric(value);
+					} else if (property.equals(RESOURCE_ID)) {
+						datum.setResourceId(value);
+					} else if (property.equals(VALUE)) {
+						datum.setValue(parseDouble(value));
+					} else if (property.equals(TIMESTAMP)) {
+						datum.setTimestamp(parseLong(value));
+					}
+				}
+				reader.endObject();
+			}
+			reader.endObject();
+		} catch (IllegalStateException e) {
+			throw new IOException("Malformed monitoring data: "
+					+ e.getMessage(), e);
+		} finally {
+			reader.close();
+		}
+		return data;
+	}
+
+	private MonitoringDatum nextDatum() {
+		MonitoringDatum datum;
+		if (data.size() < pool.size()) {
+			datum = pool.get(data.size());
+		} else {
+			datum = new MonitoringDatum();
+			pool.add(datum);
+		}
+		datum.setMetric(null);
+		datum.setResourceId(null);
+		datum.setValue(Double.NaN);
+		datum.setTimestamp(0);
+		data.add(datum);
+		return datum;
+	}
+
+	/**
+	 * Reads the array of objects of an RDF/JSON property, returning the
+	 * "value" of the first one and skipping everything else.
+	 */
+	public static String readFirstValue(JsonReader reader)
+			throws IOException {
+		String value = null;
+		boolean first = true;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (first && name.equals("value")) {
+					value = reader.nextString();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			first = false;
+		}
+		reader.endArray();
+		return value;
+	}
+
+	private static double parseDouble(String value) throws IOException {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IOException("Value " + value + " is not a number");
+		}
+	}
+
+	private static long parseLong(String value) throws IOException {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IOException("Timestamp " + value + " is not a number");
+		}
+	}
+
+}
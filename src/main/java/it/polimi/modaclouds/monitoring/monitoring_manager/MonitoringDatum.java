@@ -0,0 +1,79 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+/**
+ * A monitoring datum computed by the manager itself rather than by the DDA.
+ */
+public class MonitoringDatum {
+
+	private String metric;
+	private String resourceId;
+	private double value;
+	private long timestamp;
+
+	public MonitoringDatum() {
+	}
+
+	public MonitoringDatum(String metric, String resourceId, double value,
+			long timestamp) {
+		this.metric = metric;
+		this.resourceId = resourceId;
+		this.value = value;
+		this.timestamp = timestamp;
+	}
+
+	public String getMetric() {
+		return metric;
+	}
+
+	public void setMetric(String metric) {
+		this.metric = metric;
+	}
+
+	public String getResourceId() {
+		return resourceId;
+	}
+
+	public void setResourceId(String resourceId) {
+		this.resourceId = resourceId;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	public void setValue(double value) {
+		this.value = value;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return "MonitoringDatum [metric=" + metric + ", resourceId="
+				+ resourceId + ", value=" + value + ", timestamp=" + timestamp
+				+ "]";
+	}
+
+}
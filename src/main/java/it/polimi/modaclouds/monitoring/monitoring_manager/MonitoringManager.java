@@ -33,17 +33,29 @@ import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
 import it.polimi.modaclouds.qos_models.schema.MonitoringRules;
 import it.polimi.modaclouds.qos_models.util.Config;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class MonitoringManager {
 
 	static final String MODEL_GRAPH_NAME = "model";
@@ -55,8 +67,15 @@ public class MonitoringManager {
 	private Map<String, MonitoringRule> installedRules;
 
 	private Validator validator;
+	private ExecutorService installExecutor;
+	private ActionExecutor actionExecutor;
+	private int maxStreams;
+	private int streamBufferSize;
+	private int modelChunkSize;
+	private AtomicInteger openStreams;
 
 	FusekiKBAPI knowledgeBase;
+	private ModelMirror modelMirror;
 
 	public MonitoringManager(ManagerConfig config) throws Exception {
 		Config.setDefaultConfiguration(null, config.getMonitoringMetrics());
@@ -72,12 +91,25 @@ public class MonitoringManager {
 		validator = new Validator();
 		knowledgeBase = new FusekiKBAPI(config.getKbUrl());
 		installedRules = new ConcurrentHashMap<String, MonitoringRule>();
-		csparqlEngineManager = new CSPARQLEngineManager(config, knowledgeBase);
+		modelMirror = new ModelMirror();
+		csparqlEngineManager = new CSPARQLEngineManager(config, modelMirror);
 		dcFactoriesManager = new DCFactoriesManager(knowledgeBase);
+		installExecutor = Executors.newFixedThreadPool(
+				Math.max(1, config.getInstallThreads()),
+				new ThreadFactoryBuilder().setNameFormat("rule-installer-%d")
+						.setDaemon(true).build());
+		actionExecutor = new ActionExecutor(config.getActionThreads(),
+				config.getActionQueueSize());
+		maxStreams = config.getMaxStreams();
+		streamBufferSize = config.getStreamBufferSize();
+		modelChunkSize = Math.max(1, config.getModelChunkSize());
+		openStreams = new AtomicInteger();
 		logger.info("Clearing KB");
 		knowledgeBase.clearAll();
 		logger.info("Uploading ontology to KB");
 		knowledgeBase.uploadOntology(MO.model, MODEL_GRAPH_NAME);
+		logger.info("Loading the model from the KB");
+		loadModelMirror();
 	}
 
 	public synchronized void installRules(MonitoringRules rules)
@@ -85,20 +117,89 @@ public class MonitoringManager {
 		logger.info("{} rule(s) to install", rules.getMonitoringRules().size());
 		logger.info("Validating rules");
 		validate(rules);
-		String installedRules = "";
-		try {
-			for (MonitoringRule rule : rules.getMonitoringRules()) {
-				installRule(rule);
-				installedRules += " " + rule.getId();
+
+		Map<String, Future<?>> installations = new LinkedHashMap<String, Future<?>>();
+		for (final MonitoringRule rule : rules.getMonitoringRules()) {
+			installations.put(rule.getId(),
+					installExecutor.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws RuleInstallationException {
+							installRule(rule);
+							return null;
+						}
+					}));
+		}
+
+		List<String> installedRules = new ArrayList<String>();
+		String problems = "";
+		for (Entry<String, Future<?>> installation : installations.entrySet()) {
+			try {
+				installation.getValue().get();
+				installedRules.add(installation.getKey());
+			} catch (ExecutionException e) {
+				problems += " [Rule " + installation.getKey() + ": "
+						+ e.getCause().getMessage() + "]";
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				problems += " [Rule " + installation.getKey()
+						+ ": installation interrupted]";
 			}
-		} catch (RuleInstallationException e) {
+		}
+
+		QueryCache queryCache = csparqlEngineManager.getQueryCache();
+		logger.debug("Query cache: {} hits, {} misses", queryCache.getHits(),
+				queryCache.getMisses());
+
+		if (!problems.isEmpty()) {
+			List<String> notRolledBack = rollback(installedRules);
 			throw new RuleInstallationException(
-					"Error while installing rules, only the following rules were successfully installed:"
-							+ installedRules + ". Problems: " + e.getMessage(),
-					e);
+					"Error while installing rules, successfully installed rules were rolled back"
+							+ (notRolledBack.isEmpty() ? ""
+									: " except for the following ones:"
+											+ joinIds(notRolledBack))
+							+ ". Problems:" + problems);
 		}
 	}
 
+	private List<String> rollback(List<String> ruleIds) {
+		Map<String, Future<?>> uninstallations = new LinkedHashMap<String, Future<?>>();
+		for (final String ruleId : ruleIds) {
+			logger.info("Rolling back installation of rule {}", ruleId);
+			uninstallations.put(ruleId,
+					installExecutor.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws RuleDoesNotExistException,
+								FailedToUninstallRuleException {
+							uninstallRule(ruleId);
+							return null;
+						}
+					}));
+		}
+		List<String> notRolledBack = new ArrayList<String>();
+		for (Entry<String, Future<?>> uninstallation : uninstallations
+				.entrySet()) {
+			try {
+				uninstallation.getValue().get();
+			} catch (ExecutionException e) {
+				logger.error("Error while rolling back rule {}",
+						uninstallation.getKey(), e.getCause());
+				notRolledBack.add(uninstallation.getKey());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				notRolledBack.add(uninstallation.getKey());
+			}
+		}
+		return notRolledBack;
+	}
+
+	private static String joinIds(List<String> ids) {
+		String joined = "";
+		for (String id : ids) {
+			joined += " " + id;
+		}
+		return joined;
+	}
+
 	private void validate(MonitoringRules rules)
 			throws RuleInstallationException {
 		Set<Problem> problems = new HashSet<Problem>();
@@ -129,14 +230,13 @@ public class MonitoringManager {
 		}
 	}
 
-	public synchronized void uninstallRule(String id)
-			throws RuleDoesNotExistException {
+	public void uninstallRule(String id) throws RuleDoesNotExistException,
+			FailedToUninstallRuleException {
 		logger.info("Uninstalling rule {}", id);
-		MonitoringRule rule = installedRules.get(id);
+		MonitoringRule rule = installedRules.remove(id);
 		if (rule != null) {
 			dcFactoriesManager.uninstallRule(id);
 			csparqlEngineManager.uninstallRule(id);
-			installedRules.remove(id);
 		} else {
 			throw new RuleDoesNotExistException();
 		}
@@ -165,17 +265,30 @@ public class MonitoringManager {
 			logger.error("Error while installing rule {}, rolling back...",
 					rule.getId(), e);
 			dcFactoriesManager.uninstallRule(rule.getId());
-			csparqlEngineManager.uninstallRule(rule.getId());
+			undoInstallation(rule.getId());
 			throw e;
 		} catch (Exception e) {
 			logger.error("Error while installing rule {}, rolling back...",
 					rule.getId(), e);
 			dcFactoriesManager.uninstallRule(rule.getId());
-			csparqlEngineManager.uninstallRule(rule.getId());
+			undoInstallation(rule.getId());
 			throw new RuleInstallationException(e);
 		}
 	}
 
+	private void undoInstallation(String ruleId) {
+		try {
+			csparqlEngineManager.uninstallRule(ruleId);
+		} catch (FailedToUninstallRuleException e) {
+			logger.error("Rule {} could not be removed from the DDA", ruleId,
+					e.getCause());
+		}
+	}
+
+	public StreamRegistry getStreamRegistry() {
+		return csparqlEngineManager.getStreamRegistry();
+	}
+
 	public Set<String> getMetrics() {
 		return csparqlEngineManager.getObservableMetrics();
 	}
@@ -189,13 +302,89 @@ public class MonitoringManager {
 	public Observer addObserver(String metricname, String callbackUrl)
 			throws MetricDoesNotExistException, ServerErrorException,
 			ObserverErrorException, InternalErrorException, MalformedURLException {
+		return addObserver(metricname, callbackUrl, null, null, null);
+	}
+
+	public Observer addObserver(String metricname, String callbackUrl,
+			ObserverFilter filter, ObserverBatching batching, String format)
+			throws MetricDoesNotExistException, ServerErrorException,
+			ObserverErrorException, InternalErrorException,
+			MalformedURLException {
 		logger.info("Adding observer with callbackURL {} to metric {}",
 				callbackUrl, metricname);
 		Observer observer = csparqlEngineManager.addObserver(metricname,
-				callbackUrl);
+				callbackUrl, filter, batching, format);
 		return observer;
 	}
 
+	/**
+	 * Registers the observers grouped by metric, metrics in parallel on the
+	 * installer threads. Only the first observer of a metric may need a call
+	 * to the DDA, so registering many observers costs about one DDA round
+	 * trip per metric. The outcome of each registration is set on it, a
+	 * failed registration does not affect the others.
+	 */
+	public void addObservers(List<ObserverRegistration> registrations) {
+		logger.info("Adding {} observer(s)", registrations.size());
+		Map<String, List<ObserverRegistration>> registrationsByMetric = new LinkedHashMap<String, List<ObserverRegistration>>();
+		for (ObserverRegistration registration : registrations) {
+			if (registration.getStatus() != null)
+				continue;
+			String metric = registration.getMetric().toLowerCase();
+			List<ObserverRegistration> metricRegistrations = registrationsByMetric
+					.get(metric);
+			if (metricRegistrations == null) {
+				metricRegistrations = new ArrayList<ObserverRegistration>();
+				registrationsByMetric.put(metric, metricRegistrations);
+			}
+			metricRegistrations.add(registration);
+		}
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final List<ObserverRegistration> metricRegistrations : registrationsByMetric
+				.values()) {
+			futures.add(installExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (ObserverRegistration registration : metricRegistrations) {
+						addObserver(registration);
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				logger.error("Error while adding observers", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		for (ObserverRegistration registration : registrations) {
+			if (registration.getStatus() == null)
+				registration.fail(ObserverRegistration.FAILED,
+						"Registration interrupted");
+		}
+	}
+
+	private void addObserver(ObserverRegistration registration) {
+		try {
+			registration.succeed(csparqlEngineManager.addObserver(
+					registration.getMetric(), registration.getCallbackUrl(),
+					registration.getFilter(), registration.getBatching(),
+					registration.getFormat()));
+		} catch (MetricDoesNotExistException e) {
+			registration.fail(ObserverRegistration.NOT_FOUND, e.getMessage());
+		} catch (MalformedURLException | IllegalArgumentException e) {
+			registration.fail(ObserverRegistration.INVALID, e.getMessage());
+		} catch (Exception e) {
+			logger.error("Error while adding observer {} to metric {}",
+					registration.getCallbackUrl(), registration.getMetric(), e);
+			registration.fail(ObserverRegistration.FAILED, e.getMessage());
+		}
+	}
+
 	public Set<Observer> getObservers(String metricname)
 			throws ServerErrorException, ObserverErrorException,
 			MetricDoesNotExistException {
@@ -210,43 +399,251 @@ public class MonitoringManager {
 		csparqlEngineManager.removeObserver(metricName, observerId);
 	}
 
+	/**
+	 * @return the metric the observer was removed from, null if there is no
+	 *         observer with the given id
+	 */
+	public String removeObserver(String observerId)
+			throws ServerErrorException, ObserverErrorException {
+		logger.info("Removing observer {}", observerId);
+		return csparqlEngineManager.removeObserver(observerId);
+	}
+
+	public Set<Observer> getObserversByCallbackUrl(String callbackUrl) {
+		return csparqlEngineManager.getObserversByCallbackUrl(callbackUrl);
+	}
+
+	/**
+	 * @return the observer writing the results of the metric to its stream,
+	 *         null if the maximum number of streams is open already
+	 */
+	public Observer openStream(String metricname)
+			throws MetricDoesNotExistException, ServerErrorException,
+			ObserverErrorException {
+		if (openStreams.incrementAndGet() > maxStreams) {
+			openStreams.decrementAndGet();
+			logger.warn("Cannot stream metric {}, {} streams open already",
+					metricname, maxStreams);
+			return null;
+		}
+		boolean opened = false;
+		try {
+			Observer observer = csparqlEngineManager.openStream(metricname,
+					streamBufferSize);
+			logger.info("Stream {} opened on metric {}", observer.getId(),
+					metricname);
+			opened = true;
+			return observer;
+		} finally {
+			if (!opened)
+				openStreams.decrementAndGet();
+		}
+	}
+
+	public void closeStream(String metricname, Observer observer) {
+		openStreams.decrementAndGet();
+		logger.info("Stream {} on metric {} closed{}", observer.getId(),
+				metricname, observer.getStream().getCloseReason() != null ? ": "
+						+ observer.getStream().getCloseReason() : "");
+		try {
+			csparqlEngineManager.removeObserver(metricname, observer.getId());
+		} catch (Exception e) {
+			logger.error("Error while removing the observer of stream {}",
+					observer.getId(), e);
+		}
+	}
+
 	public void deleteInstance(String id) throws SerializationException {
 		logger.info("Deleting instance {} from the model in the KB", id);
-		knowledgeBase.deleteEntitiesByPropertyValue(id,
-				MOVocabulary.resourceIdParameterName, MODEL_GRAPH_NAME);
+		synchronized (modelMirror) {
+			knowledgeBase.deleteEntitiesByPropertyValue(id,
+					MOVocabulary.resourceIdParameterName, MODEL_GRAPH_NAME);
+			modelMirror.remove(id);
+		}
 	}
 
-	public void uploadModel(Model update) throws SerializationException,
-			DeserializationException {
-		logger.info("Clearing existing model if any");
-		knowledgeBase.clearGraph(MODEL_GRAPH_NAME);
+	/**
+	 * Replaces the model in the KB with the given resources, writing only the
+	 * resources that were added, changed or deleted with respect to the
+	 * current model. Resources are written in chunks while they are iterated,
+	 * and the resources missing from the new model are deleted only once all
+	 * the others were written, so that queries never see resources of the new
+	 * model missing while the model is being replaced.
+	 * <p>
+	 * The model is only locked while a chunk is written, never while resources
+	 * are iterated, so a slow upload does not hold up other writes to the
+	 * model. The chunks of concurrent writes may interleave, and each upload
+	 * deletes the resources that are missing from it when it completes.
+	 * 
+	 * @return the changes applied to the model
+	 */
+	public ModelUpload uploadModel(Iterator<? extends Resource> resources)
+			throws SerializationException, DeserializationException {
 		logger.info("Uploading model in the KB");
-		knowledgeBase.add(update.getResources(),
-				MOVocabulary.resourceIdParameterName, MODEL_GRAPH_NAME);
+		ModelUpload upload = new ModelUpload();
+		Set<String> ids = new HashSet<String>();
+		writeModel(resources, ids, upload);
+		synchronized (modelMirror) {
+			List<String> missing = modelMirror.getIdsNotIn(ids);
+			for (int i = 0; i < missing.size(); i += modelChunkSize) {
+				ModelDiff deletions = new ModelDiff();
+				for (String id : missing.subList(i,
+						Math.min(i + modelChunkSize, missing.size()))) {
+					deletions.delete(id);
+				}
+				writeChunk(deletions, upload);
+			}
+		}
+		logger.info("Model uploaded in the KB: {}", upload);
+		return upload;
 	}
 
-	public void updateModel(Model update) throws SerializationException,
+	public ModelUpload uploadModel(Model update) throws SerializationException,
 			DeserializationException {
+		return uploadModel(update.getResources().iterator());
+	}
+
+	/**
+	 * Adds the given resources to the model in the KB, replacing the existing
+	 * ones with the same id. Resources are written in chunks while they are
+	 * iterated.
+	 */
+	public ModelUpload updateModel(Iterator<? extends Resource> resources)
+			throws SerializationException, DeserializationException {
 		logger.info("Updating model in the KB");
-		knowledgeBase.add(update.getResources(),
-				MOVocabulary.resourceIdParameterName, MODEL_GRAPH_NAME);
+		ModelUpload upload = new ModelUpload();
+		writeModel(resources, null, upload);
+		logger.info("Model updated in the KB: {}", upload);
+		return upload;
 	}
 
-	public Resource getResource(String id) throws DeserializationException {
-		return (Resource) knowledgeBase.getEntityById(id,
-				MOVocabulary.resourceIdParameterName, MODEL_GRAPH_NAME);
+	public ModelUpload updateModel(Model update) throws SerializationException,
+			DeserializationException {
+		return updateModel(update.getResources().iterator());
+	}
+
+	private void writeModel(Iterator<? extends Resource> resources,
+			Set<String> ids, ModelUpload upload) throws SerializationException,
+			DeserializationException {
+		List<Resource> chunk = new ArrayList<Resource>(modelChunkSize);
+		// the next resources are not read until the chunk is written
+		while (resources.hasNext()) {
+			Resource resource = resources.next();
+			chunk.add(resource);
+			if (ids != null)
+				ids.add(resource.getId());
+			if (chunk.size() == modelChunkSize) {
+				writeResources(chunk, upload);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty())
+			writeResources(chunk, upload);
+	}
+
+	private void writeResources(List<Resource> chunk, ModelUpload upload)
+			throws SerializationException, DeserializationException {
+		synchronized (modelMirror) {
+			writeChunk(modelMirror.diffResources(chunk), upload);
+		}
+	}
+
+	/**
+	 * Must be called holding the lock of the model mirror.
+	 */
+	private void writeChunk(ModelDiff diff, ModelUpload upload)
+			throws SerializationException, DeserializationException {
+		if (!diff.isEmpty()) {
+			try {
+				Set<Resource> upserts = new HashSet<Resource>(diff.getAdded());
+				upserts.addAll(diff.getUpdated());
+				if (!upserts.isEmpty())
+					knowledgeBase.add(upserts,
+							MOVocabulary.resourceIdParameterName,
+							MODEL_GRAPH_NAME);
+				for (String id : diff.getDeleted()) {
+					knowledgeBase.deleteEntitiesByPropertyValue(id,
+							MOVocabulary.resourceIdParameterName,
+							MODEL_GRAPH_NAME);
+				}
+			} catch (SerializationException | DeserializationException
+					| RuntimeException e) {
+				resyncModelMirror();
+				throw e;
+			}
+			modelMirror.apply(diff);
+		}
+		upload.record(diff);
+		logger.info("Model upload in progress: {}", upload);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void loadModelMirror() throws DeserializationException {
+		modelMirror.reset((Set<Resource>) knowledgeBase
+				.getAllEntities(MODEL_GRAPH_NAME));
+	}
+
+	/**
+	 * Reloads the mirror from the KB after a write that may have been
+	 * partially applied.
+	 */
+	private void resyncModelMirror() {
+		try {
+			loadModelMirror();
+		} catch (Exception e) {
+			logger.error("Could not reload the model from the KB", e);
+		}
+	}
+
+	/**
+	 * @return the resource with the given id, null if there is none
+	 */
+	public Resource getResource(String id) {
+		return modelMirror.get(id);
+	}
+
+	public void addRawData(String metric, List<MonitoringDatum> data) {
+		csparqlEngineManager.addRawData(metric, data);
+	}
+
+	public void forwardToObservers(String metricname, String json)
+			throws IOException {
+		csparqlEngineManager.forwardToObservers(metricname, json);
+	}
+
+	public void addPanes(String paneMetric, List<PaneMerger.Pane> panes) {
+		csparqlEngineManager.addPanes(paneMetric, panes);
 	}
 
 	public AbstractAction getActionImplByRuleId(String ruleId) {
 		return csparqlEngineManager.getActionImplByRuleId(ruleId);
 	}
 
-	@SuppressWarnings("unchecked")
-	public Model getCurrentModel() throws DeserializationException {
+	public ActionExecutor getActionExecutor() {
+		return actionExecutor;
+	}
+
+	/**
+	 * @param className
+	 *            the simple name of the ontology class, e.g. "VM"
+	 * @return a live view of the resources of the given class in the model
+	 */
+	public Iterable<Resource> getResourcesByClass(String className) {
+		return modelMirror.iterateByClass(className);
+	}
+
+	/**
+	 * @return the resources matching all the given filters, in id order
+	 * @see ModelMirror#find(Map, String, int)
+	 */
+	public List<Resource> findResources(Map<String, String> filters,
+			String after, int limit) {
+		return modelMirror.find(filters, after, limit);
+	}
+
+	public Model getCurrentModel() {
 		Model model = new Model();
-		Set<Resource> resources = (Set<Resource>) knowledgeBase
-				.getAllEntities(MODEL_GRAPH_NAME);
-		model.addAll(resources);
+		model.addAll(new HashSet<Resource>(modelMirror.getAll()));
 		return model;
 	}
 
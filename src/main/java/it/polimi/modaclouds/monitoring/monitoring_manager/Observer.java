@@ -20,12 +20,43 @@ public class Observer {
 
 	private String id;
 	private String callbackUrl;
+	private ObserverFilter filter;
+	private ObserverBatching batching;
+	private String format;
+	private ObserverHealth health;
 	private transient String queryUri;
+	private transient MetricStream stream;
+	private transient volatile boolean removed;
 
 	public Observer(String id, String callbackUrl, String queryUri) {
+		this(id, callbackUrl, queryUri, null);
+	}
+
+	public Observer(String id, String callbackUrl, String queryUri,
+			ObserverFilter filter) {
+		this(id, callbackUrl, queryUri, filter, null);
+	}
+
+	public Observer(String id, String callbackUrl, String queryUri,
+			ObserverFilter filter, ObserverBatching batching) {
+		this(id, callbackUrl, queryUri, filter, batching, null);
+	}
+
+	/**
+	 * @param format
+	 *            the payload format, one of those supported by
+	 *            {@link PayloadEncoder}, null for RDF/JSON
+	 */
+	public Observer(String id, String callbackUrl, String queryUri,
+			ObserverFilter filter, ObserverBatching batching, String format) {
 		this.id = id;
 		this.callbackUrl = callbackUrl;
 		this.queryUri = queryUri;
+		this.filter = filter;
+		this.batching = batching;
+		this.format = format != null ? format : PayloadEncoder.RDF_JSON;
+		if (callbackUrl != null)
+			health = new ObserverHealth();
 	}
 
 	public String getId() {
@@ -36,6 +67,62 @@ public class Observer {
 		return callbackUrl;
 	}
 
+	/**
+	 * @return the filter applied to the data delivered to the observer, null
+	 *         if the observer receives all data
+	 */
+	public ObserverFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return the batching options of the observer, null if data are
+	 *         delivered as soon as they are available
+	 */
+	public ObserverBatching getBatching() {
+		return batching;
+	}
+
+	public boolean isBatched() {
+		return batching != null;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the delivery health of the observer, null if data are not
+	 *         posted to a callback url
+	 */
+	public ObserverHealth getHealth() {
+		return health;
+	}
+
+	/**
+	 * @return the stream the data of the observer are written to, null if
+	 *         data are posted to the callback url
+	 */
+	public MetricStream getStream() {
+		return stream;
+	}
+
+	public void setStream(MetricStream stream) {
+		this.stream = stream;
+	}
+
+	/**
+	 * @return true once the observer was removed or evicted, its data are not
+	 *         spooled anymore
+	 */
+	public boolean isRemoved() {
+		return removed;
+	}
+
+	public void markRemoved() {
+		removed = true;
+	}
+
 	public String getQueryUri() {
 		return queryUri;
 	}
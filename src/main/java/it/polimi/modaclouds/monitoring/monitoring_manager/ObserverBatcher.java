@@ -0,0 +1,189 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Buffers the data of observers with batched delivery and hands them to the
+ * {@link ObserverNotifier} as a single payload when the batch is full or its
+ * interval expires.
+ */
+public class ObserverBatcher {
+
+	private final ObserverNotifier notifier;
+	private final ScheduledExecutorService scheduler;
+	private final ConcurrentHashMap<String, Batch> batchesByObserverId = new ConcurrentHashMap<String, Batch>();
+
+	public ObserverBatcher(ObserverNotifier notifier) {
+		this.notifier = notifier;
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("observer-batcher-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * Adds a copy of the data to the batch of the observer. The data of a
+	 * removed observer are discarded.
+	 */
+	public void add(Observer observer, List<MonitoringDatum> data) {
+		if (observer.isRemoved())
+			return;
+		Batch batch = batchesByObserverId.get(observer.getId());
+		if (batch == null) {
+			batch = new Batch(observer);
+			Batch existing = batchesByObserverId.putIfAbsent(
+					observer.getId(), batch);
+			if (existing != null) {
+				batch = existing;
+			} else if (observer.isRemoved()) {
+				// removed while the batch was created, remove() may have missed
+				// it
+				batchesByObserverId.remove(observer.getId(), batch);
+				return;
+			}
+		}
+		List<List<MonitoringDatum>> ready = new ArrayList<List<MonitoringDatum>>();
+		synchronized (batch) {
+			if (batch.removed)
+				return;
+			for (MonitoringDatum datum : data) {
+				if (batch.isEmpty())
+					schedule(batch);
+				batch.add(new MonitoringDatum(datum.getMetric(), datum
+						.getResourceId(), datum.getValue(), datum
+						.getTimestamp()));
+				if (batch.size() >= observer.getBatching().getSize())
+					ready.add(batch.drain());
+			}
+		}
+		for (List<MonitoringDatum> payload : ready) {
+			notifier.notify(Collections.singletonList(observer), payload);
+		}
+	}
+
+	private void schedule(final Batch batch) {
+		final long generation = batch.generation;
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				flush(batch, generation);
+			}
+		}, batch.observer.getBatching().getInterval(), TimeUnit.MILLISECONDS);
+	}
+
+	private void flush(Batch batch, long generation) {
+		List<MonitoringDatum> payload;
+		synchronized (batch) {
+			// the batch was already delivered because it was full
+			if (batch.generation != generation || batch.isEmpty())
+				return;
+			payload = batch.drain();
+		}
+		notifier.notify(Collections.singletonList(batch.observer), payload);
+	}
+
+	/**
+	 * Delivers the pending data of the observer and forgets its batch.
+	 */
+	public void remove(Observer observer) {
+		Batch batch = batchesByObserverId.remove(observer.getId());
+		if (batch != null) {
+			long generation;
+			synchronized (batch) {
+				batch.removed = true;
+				generation = batch.generation;
+			}
+			flush(batch, generation);
+		}
+	}
+
+	public int getPendingData(String observerId) {
+		Batch batch = batchesByObserverId.get(observerId);
+		if (batch == null)
+			return 0;
+		synchronized (batch) {
+			return batch.size();
+		}
+	}
+
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	private static class Batch {
+
+		private final Observer observer;
+		private List<MonitoringDatum> data;
+		private Map<String, MonitoringDatum> latestByResource;
+		private long generation;
+		private boolean removed;
+
+		private Batch(Observer observer) {
+			this.observer = observer;
+			reset();
+		}
+
+		private void reset() {
+			if (observer.getBatching().isCoalesce())
+				latestByResource = new LinkedHashMap<String, MonitoringDatum>();
+			else
+				data = new ArrayList<MonitoringDatum>();
+		}
+
+		private void add(MonitoringDatum datum) {
+			if (latestByResource != null) {
+				// keep the position of the first datum of the resource
+				MonitoringDatum previous = latestByResource.get(datum
+						.getResourceId());
+				if (previous == null
+						|| previous.getTimestamp() <= datum.getTimestamp())
+					latestByResource.put(datum.getResourceId(), datum);
+			} else {
+				data.add(datum);
+			}
+		}
+
+		private int size() {
+			return latestByResource != null ? latestByResource.size() : data
+					.size();
+		}
+
+		private boolean isEmpty() {
+			return size() == 0;
+		}
+
+		private List<MonitoringDatum> drain() {
+			List<MonitoringDatum> drained = latestByResource != null ? new ArrayList<MonitoringDatum>(
+					latestByResource.values()) : data;
+			generation++;
+			reset();
+			return drained;
+		}
+
+	}
+
+}
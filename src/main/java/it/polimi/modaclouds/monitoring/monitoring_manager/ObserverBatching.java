@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+/**
+ * Opt-in batched delivery of an observer. Data are buffered and delivered as
+ * a single payload when the batch is full or when the oldest buffered datum
+ * has waited for the interval, whichever comes first, so the interval bounds
+ * the delivery latency. When coalescing, only the latest datum of each
+ * resource is kept in the batch.
+ */
+public class ObserverBatching {
+
+	public static final int MAX_SIZE = 10000;
+	public static final long DEFAULT_INTERVAL = 1000;
+
+	private int size;
+	private long interval;
+	private boolean coalesce;
+
+	public ObserverBatching() {
+	}
+
+	public ObserverBatching(int size, long interval, boolean coalesce) {
+		this.size = size;
+		this.interval = interval;
+		this.coalesce = coalesce;
+		init();
+	}
+
+	/**
+	 * Validates the options and fills in the defaults. Must be called on
+	 * options deserialized from json before using them.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the options are not valid
+	 */
+	public ObserverBatching init() {
+		if (size < 0 || size > MAX_SIZE)
+			throw new IllegalArgumentException(
+					"The batch size must be between 0 and " + MAX_SIZE);
+		if (interval < 0)
+			throw new IllegalArgumentException(
+					"The batch interval cannot be negative");
+		if (size == 0)
+			size = MAX_SIZE;
+		if (interval == 0)
+			interval = DEFAULT_INTERVAL;
+		return this;
+	}
+
+	/**
+	 * @return the maximum number of data delivered in a single payload
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds a datum waits before being
+	 *         delivered
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	public boolean isCoalesce() {
+		return coalesce;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = size;
+		result = 31 * result + (int) (interval ^ (interval >>> 32));
+		result = 31 * result + (coalesce ? 1 : 0);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ObserverBatching))
+			return false;
+		ObserverBatching other = (ObserverBatching) obj;
+		return size == other.size && interval == other.interval
+				&& coalesce == other.coalesce;
+	}
+
+}
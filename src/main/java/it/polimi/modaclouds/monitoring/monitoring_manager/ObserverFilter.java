@@ -0,0 +1,215 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Restricts the data delivered to an observer to the given resource ids and
+ * to values satisfying all the given conditions. Missing or empty resource ids
+ * and conditions do not restrict anything.
+ * <p>
+ * Conditions are reduced to a single interval of accepted values when the
+ * filter is initialized, filters accepting the same resources and interval
+ * are equal.
+ */
+public class ObserverFilter {
+
+	private Set<String> resourceIds;
+	private List<ValueCondition> valueConditions;
+
+	private transient double lowerBound;
+	private transient boolean lowerInclusive;
+	private transient double upperBound;
+	private transient boolean upperInclusive;
+	private transient boolean initialized;
+
+	public ObserverFilter() {
+	}
+
+	public ObserverFilter(Set<String> resourceIds,
+			List<ValueCondition> valueConditions) {
+		this.resourceIds = resourceIds;
+		this.valueConditions = valueConditions;
+		init();
+	}
+
+	/**
+	 * Validates the conditions and computes the accepted interval. Must be
+	 * called on filters deserialized from json before using them.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a condition is not valid
+	 */
+	public ObserverFilter init() {
+		if (resourceIds != null && resourceIds.isEmpty())
+			resourceIds = null;
+		if (resourceIds != null)
+			resourceIds = new HashSet<String>(resourceIds);
+		if (valueConditions != null && valueConditions.isEmpty())
+			valueConditions = null;
+		lowerBound = Double.NEGATIVE_INFINITY;
+		lowerInclusive = true;
+		upperBound = Double.POSITIVE_INFINITY;
+		upperInclusive = true;
+		if (valueConditions != null) {
+			valueConditions = new ArrayList<ValueCondition>(valueConditions);
+			for (ValueCondition condition : valueConditions) {
+				if (condition == null || condition.operator == null)
+					throw new IllegalArgumentException(
+							"Value conditions must have an operator");
+				if (condition.value == null || condition.value.isNaN())
+					throw new IllegalArgumentException(
+							"Value conditions must have a numeric value");
+				String operator = condition.operator.trim();
+				double value = condition.value;
+				if (operator.equals(">"))
+					restrictLower(value, false);
+				else if (operator.equals(">="))
+					restrictLower(value, true);
+				else if (operator.equals("<"))
+					restrictUpper(value, false);
+				else if (operator.equals("<="))
+					restrictUpper(value, true);
+				else if (operator.equals("=") || operator.equals("==")) {
+					restrictLower(value, true);
+					restrictUpper(value, true);
+				} else
+					throw new IllegalArgumentException("Unknown operator "
+							+ condition.operator
+							+ ", valid operators are >, >=, <, <= and =");
+			}
+		}
+		initialized = true;
+		return this;
+	}
+
+	private void restrictLower(double bound, boolean inclusive) {
+		if (bound > lowerBound || (bound == lowerBound && !inclusive)) {
+			lowerBound = bound;
+			lowerInclusive = inclusive;
+		}
+	}
+
+	private void restrictUpper(double bound, boolean inclusive) {
+		if (bound < upperBound || (bound == upperBound && !inclusive)) {
+			upperBound = bound;
+			upperInclusive = inclusive;
+		}
+	}
+
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	public boolean hasResourceIds() {
+		return resourceIds != null;
+	}
+
+	public boolean hasValueConditions() {
+		return valueConditions != null;
+	}
+
+	public Set<String> getResourceIds() {
+		return resourceIds;
+	}
+
+	public List<ValueCondition> getValueConditions() {
+		return valueConditions;
+	}
+
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	public boolean acceptsResource(String resourceId) {
+		return resourceIds == null || resourceIds.contains(resourceId);
+	}
+
+	public boolean acceptsValue(double value) {
+		if (Double.isNaN(value))
+			return valueConditions == null;
+		return (lowerInclusive ? value >= lowerBound : value > lowerBound)
+				&& (upperInclusive ? value <= upperBound : value < upperBound);
+	}
+
+	public boolean accepts(MonitoringDatum datum) {
+		return acceptsResource(datum.getResourceId())
+				&& acceptsValue(datum.getValue());
+	}
+
+	@Override
+	public int hashCode() {
+		int result = resourceIds == null ? 0 : resourceIds.hashCode();
+		long bits = Double.doubleToLongBits(lowerBound);
+		result = 31 * result + (int) (bits ^ (bits >>> 32));
+		bits = Double.doubleToLongBits(upperBound);
+		result = 31 * result + (int) (bits ^ (bits >>> 32));
+		result = 31 * result + (lowerInclusive ? 1 : 0);
+		result = 31 * result + (upperInclusive ? 1 : 0);
+		result = 31 * result + (valueConditions == null ? 0 : 1);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ObserverFilter))
+			return false;
+		ObserverFilter other = (ObserverFilter) obj;
+		if (resourceIds == null ? other.resourceIds != null : !resourceIds
+				.equals(other.resourceIds))
+			return false;
+		return (valueConditions == null) == (other.valueConditions == null)
+				&& lowerBound == other.lowerBound
+				&& lowerInclusive == other.lowerInclusive
+				&& upperBound == other.upperBound
+				&& upperInclusive == other.upperInclusive;
+	}
+
+	public static class ValueCondition {
+
+		private String operator;
+		private Double value;
+
+		public ValueCondition() {
+		}
+
+		public ValueCondition(String operator, double value) {
+			this.operator = operator;
+			this.value = value;
+		}
+
+		public String getOperator() {
+			return operator;
+		}
+
+		public Double getValue() {
+			return value;
+		}
+
+	}
+
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of the observers of a metric by their filters, rebuilt
+ * whenever an observer is added or removed. Observers with equal filters are
+ * grouped, so that the data they accept are selected and serialized once.
+ * Groups restricted to some resource ids are indexed by resource id, groups
+ * restricted only by value are indexed by their interval in an interval tree,
+ * so matching a datum only looks at groups that may accept it.
+ * <p>
+ * Observers with batched delivery or with a payload format other than RDF/JSON
+ * need the parsed data even when they are not filtered, they are grouped in a
+ * group accepting all data.
+ */
+public class ObserverFilterIndex {
+
+	public static final ObserverFilterIndex EMPTY = new ObserverFilterIndex(
+			Collections.<Observer> emptyList());
+
+	private final List<Observer> unfilteredObservers;
+	private final Map<String, List<FilterGroup>> groupsByResourceId;
+	private final IntervalNode valueGroups;
+	private final FilterGroup acceptAllGroup;
+
+	public ObserverFilterIndex(Collection<Observer> observers) {
+		List<Observer> unfiltered = new ArrayList<Observer>();
+		FilterGroup acceptAll = null;
+		Map<ObserverFilter, FilterGroup> groups = new LinkedHashMap<ObserverFilter, FilterGroup>();
+		for (Observer observer : observers) {
+			ObserverFilter filter = observer.getFilter();
+			if (filter == null
+					|| (!filter.hasResourceIds() && !filter
+							.hasValueConditions())) {
+				if (observer.isBatched()
+						|| !PayloadEncoder.RDF_JSON.equals(observer.getFormat())) {
+					if (acceptAll == null)
+						acceptAll = new FilterGroup(null);
+					acceptAll.observers.add(observer);
+				} else {
+					unfiltered.add(observer);
+				}
+				continue;
+			}
+			FilterGroup group = groups.get(filter);
+			if (group == null) {
+				group = new FilterGroup(filter);
+				groups.put(filter, group);
+			}
+			group.observers.add(observer);
+		}
+		unfilteredObservers = Collections.unmodifiableList(unfiltered);
+		acceptAllGroup = acceptAll;
+		groupsByResourceId = new HashMap<String, List<FilterGroup>>();
+		List<FilterGroup> valueOnly = new ArrayList<FilterGroup>();
+		for (FilterGroup group : groups.values()) {
+			if (group.filter.hasResourceIds()) {
+				for (String resourceId : group.filter.getResourceIds()) {
+					List<FilterGroup> resourceGroups = groupsByResourceId
+							.get(resourceId);
+					if (resourceGroups == null) {
+						resourceGroups = new ArrayList<FilterGroup>(1);
+						groupsByResourceId.put(resourceId, resourceGroups);
+					}
+					resourceGroups.add(group);
+				}
+			} else {
+				valueOnly.add(group);
+			}
+		}
+		valueGroups = IntervalNode.build(valueOnly);
+	}
+
+	public boolean hasFilters() {
+		return valueGroups != null || !groupsByResourceId.isEmpty();
+	}
+
+	/**
+	 * @return true if some observer needs the parsed data, because it is
+	 *         filtered, its delivery is batched or it uses a payload format
+	 *         other than RDF/JSON
+	 */
+	public boolean requiresData() {
+		return hasFilters() || acceptAllGroup != null;
+	}
+
+	/**
+	 * @return the observers receiving all data as soon as they are available
+	 */
+	public List<Observer> getUnfilteredObservers() {
+		return unfilteredObservers;
+	}
+
+	/**
+	 * @return the data accepted by each group of filtered or batched
+	 *         observers, groups not accepting any datum are omitted
+	 */
+	public Map<FilterGroup, List<MonitoringDatum>> match(
+			List<MonitoringDatum> data) {
+		Map<FilterGroup, List<MonitoringDatum>> matches = new LinkedHashMap<FilterGroup, List<MonitoringDatum>>();
+		if (acceptAllGroup != null && !data.isEmpty())
+			matches.put(acceptAllGroup, new ArrayList<MonitoringDatum>(data));
+		for (MonitoringDatum datum : data) {
+			double value = datum.getValue();
+			List<FilterGroup> resourceGroups = groupsByResourceId.get(datum
+					.getResourceId());
+			if (resourceGroups != null) {
+				for (FilterGroup group : resourceGroups) {
+					if (group.filter.acceptsValue(value))
+						add(matches, group, datum);
+				}
+			}
+			if (Double.isNaN(value))
+				continue;
+			IntervalNode node = valueGroups;
+			while (node != null) {
+				node = node.match(value, datum, matches);
+			}
+		}
+		return matches;
+	}
+
+	private static void add(Map<FilterGroup, List<MonitoringDatum>> matches,
+			FilterGroup group, MonitoringDatum datum) {
+		List<MonitoringDatum> groupData = matches.get(group);
+		if (groupData == null) {
+			groupData = new ArrayList<MonitoringDatum>();
+			matches.put(group, groupData);
+		}
+		groupData.add(datum);
+	}
+
+	/**
+	 * Node of a centered interval tree of the groups restricted only by value:
+	 * it holds the groups whose interval contains its center, sorted by lower
+	 * and by upper bound, groups entirely below or above the center are in
+	 * its subtrees.
+	 */
+	private static class IntervalNode {
+
+		private final double center;
+		private final FilterGroup[] byLowerBound;
+		private final FilterGroup[] byUpperBound;
+		private final IntervalNode below;
+		private final IntervalNode above;
+
+		private static IntervalNode build(List<FilterGroup> groups) {
+			if (groups.isEmpty())
+				return null;
+			List<Double> bounds = new ArrayList<Double>();
+			for (FilterGroup group : groups) {
+				if (!Double.isInfinite(group.filter.getLowerBound()))
+					bounds.add(group.filter.getLowerBound());
+				if (!Double.isInfinite(group.filter.getUpperBound()))
+					bounds.add(group.filter.getUpperBound());
+			}
+			Collections.sort(bounds);
+			double center = bounds.isEmpty() ? 0 : bounds
+					.get(bounds.size() / 2);
+			List<FilterGroup> containing = new ArrayList<FilterGroup>();
+			List<FilterGroup> below = new ArrayList<FilterGroup>();
+			List<FilterGroup> above = new ArrayList<FilterGroup>();
+			for (FilterGroup group : groups) {
+				if (group.filter.getUpperBound() < center)
+					below.add(group);
+				else if (group.filter.getLowerBound() > center)
+					above.add(group);
+				else
+					containing.add(group);
+			}
+			if (below.size() == groups.size() || above.size() == groups.size()) {
+				// only empty or infinite intervals, which do not split
+				return new IntervalNode(center, groups, null, null);
+			}
+			return new IntervalNode(center, containing, build(below),
+					build(above));
+		}
+
+		private IntervalNode(double center, List<FilterGroup> containing,
+				IntervalNode below, IntervalNode above) {
+			this.center = center;
+			this.below = below;
+			this.above = above;
+			byLowerBound = containing.toArray(new FilterGroup[containing
+					.size()]);
+			Arrays.sort(byLowerBound, new Comparator<FilterGroup>() {
+				@Override
+				public int compare(FilterGroup g1, FilterGroup g2) {
+					return Double.compare(g1.filter.getLowerBound(),
+							g2.filter.getLowerBound());
+				}
+			});
+			byUpperBound = containing.toArray(new FilterGroup[containing
+					.size()]);
+			Arrays.sort(byUpperBound, new Comparator<FilterGroup>() {
+				@Override
+				public int compare(FilterGroup g1, FilterGroup g2) {
+					return Double.compare(g2.filter.getUpperBound(),
+							g1.filter.getUpperBound());
+				}
+			});
+		}
+
+		/**
+		 * Adds the datum to the groups of the node accepting its value.
+		 * 
+		 * @return the subtree that may hold other groups accepting the value,
+		 *         null if there is none
+		 */
+		private IntervalNode match(double value, MonitoringDatum datum,
+				Map<FilterGroup, List<MonitoringDatum>> matches) {
+			if (value < center) {
+				// all groups of the node reach the center, those starting
+				// above the value cannot accept it
+				for (FilterGroup group : byLowerBound) {
+					if (group.filter.getLowerBound() > value)
+						break;
+					if (group.filter.acceptsValue(value))
+						add(matches, group, datum);
+				}
+				return below;
+			}
+			if (value > center) {
+				for (FilterGroup group : byUpperBound) {
+					if (group.filter.getUpperBound() < value)
+						break;
+					if (group.filter.acceptsValue(value))
+						add(matches, group, datum);
+				}
+				return above;
+			}
+			for (FilterGroup group : byLowerBound) {
+				if (group.filter.acceptsValue(value))
+					add(matches, group, datum);
+			}
+			return null;
+		}
+
+	}
+
+	public static class FilterGroup {
+
+		private final ObserverFilter filter;
+		private final List<Observer> observers = new ArrayList<Observer>();
+
+		private FilterGroup(ObserverFilter filter) {
+			this.filter = filter;
+		}
+
+		/**
+		 * @return the filter of the group, null if the group accepts all data
+		 */
+		public ObserverFilter getFilter() {
+			return filter;
+		}
+
+		public List<Observer> getObservers() {
+			return observers;
+		}
+
+	}
+
+}
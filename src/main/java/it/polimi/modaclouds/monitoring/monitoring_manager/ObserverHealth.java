@@ -0,0 +1,168 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+/**
+ * Delivery health of an observer. Each failed delivery doubles the time
+ * during which the observer is not contacted, from one second up to five
+ * minutes, so that dead callback urls do not hold delivery threads. After
+ * {@link #QUARANTINE_FAILURES} consecutive failures the observer is
+ * quarantined and only probed once per maximum backoff. A successful
+ * delivery makes it healthy again.
+ * <p>
+ * Latency and success rate are exponentially weighted moving averages, so
+ * that they reflect the recent behaviour of the observer.
+ */
+public class ObserverHealth {
+
+	public static final String HEALTHY = "healthy";
+	public static final String BACKOFF = "backoff";
+	public static final String QUARANTINED = "quarantined";
+	public static final String EVICTED = "evicted";
+
+	public static final int QUARANTINE_FAILURES = 5;
+	public static final long INITIAL_BACKOFF_MILLIS = 1000;
+	public static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+	private static final double WEIGHT = 0.2;
+
+	private String state = HEALTHY;
+	private long deliveries;
+	private long failures;
+	private long dropped;
+	private int consecutiveFailures;
+	private double successRate = 1;
+	private double latencyMillis;
+	private long retryAt;
+	private String lastError;
+
+	/**
+	 * Tells whether the observer can be contacted now. While the observer is
+	 * backing off, only one delivery is let through once the backoff expires,
+	 * as a probe.
+	 */
+	public synchronized boolean shouldAttempt(long now) {
+		if (consecutiveFailures == 0)
+			return true;
+		if (state.equals(EVICTED) || now < retryAt)
+			return false;
+		retryAt = now + getBackoff();
+		return true;
+	}
+
+	public synchronized void onSuccess(long latency) {
+		deliveries++;
+		consecutiveFailures = 0;
+		successRate = WEIGHT + (1 - WEIGHT) * successRate;
+		updateLatency(latency);
+		if (!state.equals(EVICTED))
+			state = HEALTHY;
+	}
+
+	public synchronized void onFailure(long latency, long now, String error) {
+		deliveries++;
+		failures++;
+		consecutiveFailures++;
+		successRate = (1 - WEIGHT) * successRate;
+		updateLatency(latency);
+		lastError = error;
+		retryAt = now + getBackoff();
+		if (!state.equals(EVICTED))
+			state = consecutiveFailures >= QUARANTINE_FAILURES ? QUARANTINED
+					: BACKOFF;
+	}
+
+	/**
+	 * Counts data that were not delivered because the observer was backing
+	 * off.
+	 */
+	public synchronized void onDropped() {
+		dropped++;
+	}
+
+	/**
+	 * @return false if the observer was evicted already
+	 */
+	public synchronized boolean evict() {
+		if (state.equals(EVICTED))
+			return false;
+		state = EVICTED;
+		return true;
+	}
+
+	public synchronized String getState() {
+		return state;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	public synchronized long getDeliveries() {
+		return deliveries;
+	}
+
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	public synchronized double getSuccessRate() {
+		return successRate;
+	}
+
+	public synchronized double getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	public synchronized String getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * @return a copy of the current health, consistent for reporting
+	 */
+	public synchronized ObserverHealth copy() {
+		ObserverHealth copy = new ObserverHealth();
+		copy.state = state;
+		copy.deliveries = deliveries;
+		copy.failures = failures;
+		copy.dropped = dropped;
+		copy.consecutiveFailures = consecutiveFailures;
+		copy.successRate = successRate;
+		copy.latencyMillis = latencyMillis;
+		copy.retryAt = retryAt;
+		copy.lastError = lastError;
+		return copy;
+	}
+
+	private long getBackoff() {
+		if (consecutiveFailures >= QUARANTINE_FAILURES)
+			return MAX_BACKOFF_MILLIS;
+		return Math.min(MAX_BACKOFF_MILLIS,
+				INITIAL_BACKOFF_MILLIS << Math.max(0, consecutiveFailures - 1));
+	}
+
+	private void updateLatency(long latency) {
+		latencyMillis = deliveries == 1 ? latency : WEIGHT * latency
+				+ (1 - WEIGHT) * latencyMillis;
+	}
+
+}
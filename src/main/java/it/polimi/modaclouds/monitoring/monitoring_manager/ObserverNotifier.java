@@ -0,0 +1,309 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Delivers monitoring data to the observers of the corresponding metric, in
+ * the payload format each observer chose (see {@link PayloadEncoder}). Each
+ * payload is serialized once per format and posted to all observers in
+ * parallel. Connections are
+ * kept alive between deliveries, so that observers notified at every window
+ * do not pay a new TCP connection each time.
+ * <p>
+ * The health of each observer is tracked (see {@link ObserverHealth}):
+ * observers backing off after failed deliveries are not contacted, their data
+ * are spooled if the outbox is enabled, dropped otherwise. When eviction is
+ * enabled, observers failing too many consecutive deliveries are handed to
+ * the eviction listener. The data of removed observers are never spooled.
+ */
+public class ObserverNotifier {
+
+	private static final int DEFAULT_THREADS = 4;
+	private static final int TIMEOUT_MILLIS = 5000;
+	private static final String MAX_CONNECTIONS_PROPERTY = "http.maxConnections";
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ObserverNotifier.class);
+
+	public interface EvictionListener {
+		void evict(Observer observer);
+	}
+
+	private ExecutorService executor;
+	private ObserverOutbox outbox;
+	private int maxConsecutiveFailures;
+	private EvictionListener evictionListener;
+
+	public ObserverNotifier() {
+		this(DEFAULT_THREADS);
+	}
+
+	public ObserverNotifier(int threads) {
+		threads = Math.max(1, threads);
+		// idle connections kept alive per destination, every delivery thread
+		// should be able to reuse its own
+		if (System.getProperty(MAX_CONNECTIONS_PROPERTY) == null)
+			System.setProperty(MAX_CONNECTIONS_PROPERTY,
+					Integer.toString(threads));
+		executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setNameFormat("observer-notifier-%d")
+						.setDaemon(true).build());
+	}
+
+	/**
+	 * Spools the payloads that cannot be delivered to the directory and
+	 * replays them when observers recover, instead of dropping them.
+	 */
+	public void enableOutbox(File directory, long maxBytesPerObserver,
+			long retentionMillis) throws IOException {
+		outbox = new ObserverOutbox(directory, maxBytesPerObserver,
+				retentionMillis, new ObserverOutbox.Sender() {
+					@Override
+					public void send(Observer observer, byte[] payload)
+							throws IOException {
+						if (!observer.getHealth().shouldAttempt(
+								System.currentTimeMillis()))
+							throw new IOException("Observer "
+									+ observer.getId() + " is backing off");
+						deliver(observer, payload,
+								PayloadEncoder.getContentType(observer
+										.getFormat()));
+					}
+				});
+	}
+
+	/**
+	 * Hands observers to the listener once they fail the given number of
+	 * consecutive deliveries.
+	 */
+	public void enableEviction(int maxConsecutiveFailures,
+			EvictionListener evictionListener) {
+		this.maxConsecutiveFailures = maxConsecutiveFailures;
+		this.evictionListener = evictionListener;
+	}
+
+	public ObserverOutbox getOutbox() {
+		return outbox;
+	}
+
+	/**
+	 * Discards the data still waiting to be delivered to the observer and
+	 * stops spooling its data.
+	 */
+	public void remove(Observer observer) {
+		observer.markRemoved();
+		if (outbox != null)
+			outbox.remove(observer);
+	}
+
+	/**
+	 * Serializes the data once per payload format and sends it asynchronously
+	 * to each observer.
+	 */
+	public void notify(Collection<Observer> observers,
+			List<MonitoringDatum> data) {
+		if (observers.isEmpty() || data.isEmpty())
+			return;
+		Map<String, List<Observer>> observersByFormat = new HashMap<String, List<Observer>>(
+				4);
+		for (Observer observer : observers) {
+			List<Observer> formatObservers = observersByFormat.get(observer
+					.getFormat());
+			if (formatObservers == null) {
+				formatObservers = new ArrayList<Observer>();
+				observersByFormat.put(observer.getFormat(), formatObservers);
+			}
+			formatObservers.add(observer);
+		}
+		for (Map.Entry<String, List<Observer>> entry : observersByFormat
+				.entrySet()) {
+			String format = entry.getKey();
+			byte[] payload;
+			try {
+				payload = PayloadEncoder.encode(format, data);
+			} catch (IOException e) {
+				logger.error("Could not serialize monitoring data as {}",
+						format, e);
+				continue;
+			}
+			post(entry.getValue(), payload,
+					PayloadEncoder.getContentType(format));
+		}
+	}
+
+	/**
+	 * Sends data already serialized as RDF/JSON asynchronously to each
+	 * observer.
+	 */
+	public void notify(Collection<Observer> observers, String json) {
+		if (observers.isEmpty())
+			return;
+		byte[] payload;
+		try {
+			payload = json.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new InternalErrorException(e);
+		}
+		post(observers, payload,
+				PayloadEncoder.getContentType(PayloadEncoder.RDF_JSON));
+	}
+
+	private void post(Collection<Observer> observers, final byte[] payload,
+			final String contentType) {
+		for (final Observer observer : observers) {
+			if (observer.getStream() != null) {
+				if (!observer.getStream().offer(payload))
+					logger.debug("Stream of observer {} is closed: {}",
+							observer.getId(), observer.getStream()
+									.getCloseReason());
+				continue;
+			}
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (outbox != null
+								&& outbox.spoolIfPending(observer, payload))
+							return;
+					} catch (IOException e) {
+						logger.error("Could not spool data of observer {}",
+								observer.getId(), e);
+						return;
+					}
+					if (!observer.getHealth().shouldAttempt(
+							System.currentTimeMillis())) {
+						if (outbox != null && !observer.isRemoved())
+							spool(observer, payload);
+						else
+							observer.getHealth().onDropped();
+						return;
+					}
+					try {
+						deliver(observer, payload, contentType);
+					} catch (IOException e) {
+						// deliver may have evicted the observer
+						if (outbox == null || observer.isRemoved()) {
+							logger.error("Could not notify observer {} at {}: {}",
+									observer.getId(),
+									observer.getCallbackUrl(), e.getMessage());
+							return;
+						}
+						spool(observer, payload);
+					}
+				}
+			});
+		}
+	}
+
+	private void spool(Observer observer, byte[] payload) {
+		try {
+			outbox.spool(observer, payload);
+		} catch (IOException e) {
+			logger.error("Could not spool data of observer {}",
+					observer.getId(), e);
+		}
+	}
+
+	/**
+	 * Posts the payload, recording the outcome in the health of the observer.
+	 */
+	private void deliver(Observer observer, byte[] payload,
+			String contentType) throws IOException {
+		ObserverHealth health = observer.getHealth();
+		long start = System.currentTimeMillis();
+		try {
+			post(observer.getCallbackUrl(), payload, contentType);
+		} catch (IOException e) {
+			long now = System.currentTimeMillis();
+			health.onFailure(now - start, now, e.getMessage());
+			if (evictionListener != null && maxConsecutiveFailures > 0
+					&& health.getConsecutiveFailures() >= maxConsecutiveFailures
+					&& health.evict()) {
+				logger.warn(
+						"Observer {} at {} failed {} consecutive deliveries, evicting it",
+						observer.getId(), observer.getCallbackUrl(),
+						health.getConsecutiveFailures());
+				evictionListener.evict(observer);
+			}
+			throw e;
+		}
+		health.onSuccess(System.currentTimeMillis() - start);
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+		if (outbox != null)
+			outbox.shutdown();
+	}
+
+	private static void post(String url, byte[] body, String contentType)
+			throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url)
+				.openConnection();
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", contentType);
+		OutputStream os = connection.getOutputStream();
+		try {
+			os.write(body);
+		} finally {
+			os.close();
+		}
+		int responseCode = connection.getResponseCode();
+		// the response must be fully read for the connection to be reused
+		drain(responseCode >= 400 ? connection.getErrorStream() : connection
+				.getInputStream());
+		if (responseCode >= 300)
+			throw new IOException("Observer responded with code "
+					+ responseCode);
+	}
+
+	private static void drain(InputStream is) throws IOException {
+		if (is == null)
+			return;
+		try {
+			byte[] buffer = new byte[1024];
+			while (is.read(buffer) != -1) {
+			}
+		} finally {
+			is.close();
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Spools to disk the payloads that could not be delivered to an observer and
+ * replays them in order once the observer is reachable again. Each observer
+ * has its own {@link SegmentLog}. While an observer has spooled payloads, new
+ * payloads are spooled after them rather than delivered, so the observer
+ * always receives payloads in order.
+ */
+public class ObserverOutbox {
+
+	public static final int SEGMENT_SIZE = 1024 * 1024;
+	public static final long RETRY_MILLIS = 5000;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ObserverOutbox.class);
+
+	public interface Sender {
+		void send(Observer observer, byte[] payload) throws IOException;
+	}
+
+	private final File directory;
+	private final long maxBytes;
+	private final long retentionMillis;
+	private final Sender sender;
+	private final long retryMillis;
+	private final ScheduledExecutorService scheduler;
+	private final ConcurrentHashMap<String, Spool> spools = new ConcurrentHashMap<String, Spool>();
+	/**
+	 * Distinguishes the directories of the spools of the same observer, so
+	 * that removing a spool never deletes the log of a newer one.
+	 */
+	private final AtomicLong spoolIds = new AtomicLong();
+
+	/**
+	 * Observers are not kept across restarts, so the outboxes left in the
+	 * directory by a previous run are removed.
+	 * 
+	 * @param maxBytes
+	 *            the maximum disk space used by the outbox of each observer
+	 * @param retentionMillis
+	 *            spooled payloads older than this are dropped, 0 to keep them
+	 *            until they are delivered
+	 */
+	public ObserverOutbox(File directory, long maxBytes, long retentionMillis,
+			Sender sender) throws IOException {
+		this(directory, maxBytes, retentionMillis, sender, RETRY_MILLIS);
+	}
+
+	ObserverOutbox(File directory, long maxBytes, long retentionMillis,
+			Sender sender, long retryMillis) throws IOException {
+		this.retryMillis = retryMillis;
+		this.directory = directory;
+		this.maxBytes = Math.max(maxBytes, SEGMENT_SIZE);
+		this.retentionMillis = retentionMillis;
+		this.sender = sender;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create directory " + directory);
+		File[] stale = directory.listFiles();
+		if (stale != null && stale.length > 0) {
+			logger.info("Removing {} outbox(es) left by a previous run",
+					stale.length);
+			for (File file : stale) {
+				delete(file);
+			}
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("observer-outbox-%d").setDaemon(true).build());
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Spools the payload if the observer has payloads waiting to be replayed.
+	 * Nothing is spooled for a removed observer.
+	 * 
+	 * @return true if the payload was spooled, false if it should be
+	 *         delivered
+	 */
+	public boolean spoolIfPending(Observer observer, byte[] payload)
+			throws IOException {
+		Spool spool = spools.get(observer.getId());
+		if (spool == null || observer.isRemoved())
+			return false;
+		synchronized (spool) {
+			if (spool.removed || spool.log == null || spool.log.isEmpty())
+				return false;
+			spool.log.append(payload, System.currentTimeMillis());
+			return true;
+		}
+	}
+
+	/**
+	 * Spools a payload that could not be delivered and schedules its replay.
+	 * The payload is discarded if the observer was removed.
+	 */
+	public void spool(Observer observer, byte[] payload) throws IOException {
+		if (observer.isRemoved())
+			return;
+		Spool spool = spools.get(observer.getId());
+		if (spool == null) {
+			// the log is only created by the thread winning the slot
+			spool = new Spool(observer);
+			Spool existing = spools.putIfAbsent(observer.getId(), spool);
+			if (existing != null)
+				spool = existing;
+		}
+		boolean schedule;
+		synchronized (spool) {
+			if (spool.removed)
+				return;
+			if (spool.observer.isRemoved()) {
+				// created after the observer was removed from the outbox
+				spools.remove(observer.getId(), spool);
+				spool.removed = true;
+				if (spool.log != null)
+					spool.log.delete();
+				return;
+			}
+			if (observer.isRemoved())
+				return;
+			if (spool.log == null)
+				spool.log = new SegmentLog(new File(directory,
+						observer.getId() + "." + spoolIds.incrementAndGet()),
+						SEGMENT_SIZE, maxBytes, retentionMillis);
+			spool.log.append(payload, System.currentTimeMillis());
+			schedule = !spool.draining;
+			spool.draining = true;
+		}
+		if (schedule) {
+			logger.warn(
+					"Observer {} at {} is unreachable, spooling its data until it recovers",
+					observer.getId(), observer.getCallbackUrl());
+			scheduleReplay(spool);
+		}
+	}
+
+	private void scheduleReplay(final Spool spool) {
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				replay(spool);
+			}
+		}, retryMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void replay(Spool spool) {
+		int replayed = 0;
+		while (true) {
+			SegmentLog.Record payload;
+			synchronized (spool) {
+				if (spool.removed)
+					return;
+				payload = spool.log.peek(System.currentTimeMillis());
+				if (payload == null) {
+					spool.draining = false;
+					if (replayed > 0)
+						logger.info("{} payload(s) replayed to observer {}",
+								replayed, spool.observer.getId());
+					return;
+				}
+			}
+			try {
+				sender.send(spool.observer, payload.getBytes());
+			} catch (IOException e) {
+				logger.debug("Observer {} still unreachable: {}",
+						spool.observer.getId(), e.getMessage());
+				scheduleReplay(spool);
+				return;
+			}
+			synchronized (spool) {
+				if (spool.removed)
+					return;
+				spool.log.advance(payload);
+			}
+			replayed++;
+		}
+	}
+
+	/**
+	 * Discards the spooled payloads of the observer.
+	 */
+	public void remove(Observer observer) {
+		Spool spool = spools.remove(observer.getId());
+		if (spool == null)
+			return;
+		synchronized (spool) {
+			spool.removed = true;
+			if (spool.log != null)
+				spool.log.delete();
+		}
+	}
+
+	/**
+	 * @return the disk space used by the outbox of the observer, in bytes
+	 */
+	public long getSpooledBytes(String observerId) {
+		Spool spool = spools.get(observerId);
+		if (spool == null)
+			return 0;
+		synchronized (spool) {
+			return spool.log == null || spool.log.isEmpty() ? 0 : spool.log
+					.size();
+		}
+	}
+
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	private static class Spool {
+
+		private final Observer observer;
+		/**
+		 * Created on the first payload spooled, guarded by the spool.
+		 */
+		private SegmentLog log;
+		private boolean draining;
+		private boolean removed;
+
+		private Spool(Observer observer) {
+			this.observer = observer;
+		}
+
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+/**
+ * An observer to register as part of a bulk registration, and the outcome of
+ * its registration.
+ */
+public class ObserverRegistration {
+
+	public static final String CREATED = "created";
+	public static final String INVALID = "invalid";
+	public static final String NOT_FOUND = "not found";
+	public static final String FAILED = "failed";
+
+	private final String metric;
+	private final String callbackUrl;
+	private final ObserverFilter filter;
+	private final ObserverBatching batching;
+	private final String format;
+	private String status;
+	private Observer observer;
+	private String error;
+
+	public ObserverRegistration(String metric, String callbackUrl,
+			ObserverFilter filter, ObserverBatching batching, String format) {
+		this.metric = metric;
+		this.callbackUrl = callbackUrl;
+		this.filter = filter;
+		this.batching = batching;
+		this.format = format;
+	}
+
+	/**
+	 * @return a registration that failed before reaching the manager
+	 */
+	public static ObserverRegistration invalid(String metric,
+			String callbackUrl, String error) {
+		ObserverRegistration registration = new ObserverRegistration(metric,
+				callbackUrl, null, null, null);
+		registration.fail(INVALID, error);
+		return registration;
+	}
+
+	public String getMetric() {
+		return metric;
+	}
+
+	public String getCallbackUrl() {
+		return callbackUrl;
+	}
+
+	public ObserverFilter getFilter() {
+		return filter;
+	}
+
+	public ObserverBatching getBatching() {
+		return batching;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the outcome of the registration, null if it was not attempted
+	 *         yet
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the registered observer, null if the registration failed
+	 */
+	public Observer getObserver() {
+		return observer;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	void succeed(Observer observer) {
+		this.observer = observer;
+		this.status = CREATED;
+	}
+
+	void fail(String status, String error) {
+		this.status = status;
+		this.error = error;
+	}
+
+}
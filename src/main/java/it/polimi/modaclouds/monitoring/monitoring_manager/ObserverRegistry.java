@@ -0,0 +1,291 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the observers of each metric, indexed by metric, by observer
+ * id and by callback url. Adding, removing and looking up an observer take
+ * constant time regardless of the number of observers, and registering again
+ * the same callback url with the same options on the same metric returns the
+ * observer already registered.
+ * <p>
+ * Observers are subscriptions to the metric rather than to the rule computing
+ * it: when the metric is not computed anymore its observers are only
+ * detached, and they are attached again as soon as a rule outputs the metric
+ * again. Detached metrics are forgotten once their last observer is removed.
+ * <p>
+ * The filter index of each metric is rebuilt on every change and can be read
+ * without locking. As for {@link StreamRegistry}, callers registering or
+ * unregistering the observer proxy of a metric on the DDA should synchronize
+ * on the returned {@link MetricObservers}.
+ */
+public class ObserverRegistry {
+
+	private final Map<String, MetricObservers> observersByMetric = new HashMap<String, MetricObservers>();
+	private final Map<String, MetricObservers> metricsByObserverId = new HashMap<String, MetricObservers>();
+	private final Map<String, Set<Observer>> observersByCallbackUrl = new HashMap<String, Set<Observer>>();
+	private final ConcurrentHashMap<String, ObserverFilterIndex> filterIndexByMetric = new ConcurrentHashMap<String, ObserverFilterIndex>();
+
+	/**
+	 * @return the observers of the metric, created if the metric has none. The
+	 *         metric is not observable until it is attached
+	 */
+	public synchronized MetricObservers addMetric(String metric) {
+		MetricObservers metricObservers = observersByMetric.get(metric);
+		if (metricObservers == null) {
+			metricObservers = new MetricObservers(metric);
+			observersByMetric.put(metric, metricObservers);
+		}
+		return metricObservers;
+	}
+
+	/**
+	 * @return the observers of the metric, null if the metric is not
+	 *         observable
+	 */
+	public synchronized MetricObservers getMetric(String metric) {
+		return observersByMetric.get(metric);
+	}
+
+	/**
+	 * Makes the metric observable, its observers receive data again.
+	 * 
+	 * @return false if the metric has been forgotten meanwhile, in which case
+	 *         {@link #addMetric(String)} should be called again
+	 */
+	public synchronized boolean attach(MetricObservers metricObservers) {
+		if (observersByMetric.get(metricObservers.metric) != metricObservers)
+			return false;
+		metricObservers.observable = true;
+		return true;
+	}
+
+	/**
+	 * Makes the metric not observable, keeping its observers. The metric is
+	 * forgotten if it has no observer.
+	 */
+	public synchronized void detach(MetricObservers metricObservers) {
+		metricObservers.observable = false;
+		removeIfUnused(metricObservers);
+	}
+
+	public synchronized boolean isObservable(MetricObservers metricObservers) {
+		return metricObservers.observable
+				&& observersByMetric.get(metricObservers.metric) == metricObservers;
+	}
+
+	public synchronized boolean containsMetric(String metric) {
+		return observersByMetric.containsKey(metric);
+	}
+
+	/**
+	 * @return false if the metric is not observable
+	 */
+	public synchronized boolean add(MetricObservers metricObservers,
+			Observer observer) {
+		if (!isObservable(metricObservers))
+			return false;
+		metricObservers.observersById.put(observer.getId(), observer);
+		metricsByObserverId.put(observer.getId(), metricObservers);
+		if (observer.getCallbackUrl() != null) {
+			Set<Observer> observers = observersByCallbackUrl.get(observer
+					.getCallbackUrl());
+			if (observers == null) {
+				observers = new HashSet<Observer>();
+				observersByCallbackUrl.put(observer.getCallbackUrl(),
+						observers);
+			}
+			observers.add(observer);
+		}
+		updateFilterIndex(metricObservers);
+		return true;
+	}
+
+	/**
+	 * @return the removed observer, null if the metric has no observer with
+	 *         the given id
+	 */
+	public synchronized Observer remove(String metric, String observerId) {
+		MetricObservers metricObservers = metricsByObserverId.get(observerId);
+		if (metricObservers == null || !metricObservers.metric.equals(metric))
+			return null;
+		metricsByObserverId.remove(observerId);
+		Observer observer = metricObservers.observersById.remove(observerId);
+		removeFromCallbackUrlIndex(observer);
+		updateFilterIndex(metricObservers);
+		removeIfUnused(metricObservers);
+		return observer;
+	}
+
+	/**
+	 * @return the observer of the metric with the same callback url, filter,
+	 *         batching and format, null if there is none
+	 */
+	public synchronized Observer findDuplicate(String metric, Observer observer) {
+		if (observer.getCallbackUrl() == null)
+			return null;
+		Set<Observer> observers = observersByCallbackUrl.get(observer
+				.getCallbackUrl());
+		if (observers == null)
+			return null;
+		for (Observer candidate : observers) {
+			if (metricsByObserverId.get(candidate.getId()).metric
+					.equals(metric) && sameOptions(candidate, observer))
+				return candidate;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the metric the observer is observing, null if there is no
+	 *         observer with the given id
+	 */
+	public synchronized String getMetricName(String observerId) {
+		MetricObservers metricObservers = metricsByObserverId.get(observerId);
+		return metricObservers != null ? metricObservers.metric : null;
+	}
+
+	public synchronized Observer get(String observerId) {
+		MetricObservers metricObservers = metricsByObserverId.get(observerId);
+		return metricObservers != null ? metricObservers.observersById
+				.get(observerId) : null;
+	}
+
+	/**
+	 * @return the observers of the metric, null if the metric is not
+	 *         observable
+	 */
+	public synchronized Set<Observer> getObservers(String metric) {
+		MetricObservers metricObservers = observersByMetric.get(metric);
+		if (metricObservers == null)
+			return null;
+		return new HashSet<Observer>(metricObservers.observersById.values());
+	}
+
+	public synchronized boolean isEmpty(MetricObservers metricObservers) {
+		return metricObservers.observersById.isEmpty();
+	}
+
+	public synchronized Set<Observer> getObserversByCallbackUrl(
+			String callbackUrl) {
+		Set<Observer> observers = observersByCallbackUrl.get(callbackUrl);
+		if (observers == null)
+			return Collections.emptySet();
+		return new HashSet<Observer>(observers);
+	}
+
+	public synchronized List<String> getMetrics() {
+		return new ArrayList<String>(observersByMetric.keySet());
+	}
+
+	public synchronized int size() {
+		return metricsByObserverId.size();
+	}
+
+	/**
+	 * Lock free, the index is replaced as a whole on every change.
+	 */
+	public ObserverFilterIndex getFilterIndex(String metric) {
+		ObserverFilterIndex index = filterIndexByMetric.get(metric);
+		return index != null ? index : ObserverFilterIndex.EMPTY;
+	}
+
+	private void removeIfUnused(MetricObservers metricObservers) {
+		if (!metricObservers.observable
+				&& metricObservers.observersById.isEmpty()
+				&& observersByMetric.get(metricObservers.metric) == metricObservers) {
+			observersByMetric.remove(metricObservers.metric);
+			filterIndexByMetric.remove(metricObservers.metric);
+		}
+	}
+
+	private void updateFilterIndex(MetricObservers metricObservers) {
+		filterIndexByMetric.put(metricObservers.metric,
+				new ObserverFilterIndex(metricObservers.observersById
+						.values()));
+	}
+
+	private void removeFromCallbackUrlIndex(Observer observer) {
+		if (observer.getCallbackUrl() == null)
+			return;
+		Set<Observer> observers = observersByCallbackUrl.get(observer
+				.getCallbackUrl());
+		if (observers != null) {
+			observers.remove(observer);
+			if (observers.isEmpty())
+				observersByCallbackUrl.remove(observer.getCallbackUrl());
+		}
+	}
+
+	private static boolean sameOptions(Observer observer, Observer other) {
+		return equal(normalize(observer.getFilter()),
+				normalize(other.getFilter()))
+				&& equal(observer.getBatching(), other.getBatching())
+				&& observer.getFormat().equals(other.getFormat());
+	}
+
+	private static ObserverFilter normalize(ObserverFilter filter) {
+		if (filter == null || !filter.hasResourceIds()
+				&& !filter.hasValueConditions())
+			return null;
+		return filter;
+	}
+
+	private static boolean equal(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+
+	public static class MetricObservers {
+
+		private final String metric;
+		private final Map<String, Observer> observersById = new LinkedHashMap<String, Observer>();
+		private String proxyObserverUri;
+		private boolean observable;
+
+		private MetricObservers(String metric) {
+			this.metric = metric;
+		}
+
+		public String getMetric() {
+			return metric;
+		}
+
+		/**
+		 * @return the uri of the internal observer registered on the DDA, null
+		 *         if none is registered
+		 */
+		public String getProxyObserverUri() {
+			return proxyObserverUri;
+		}
+
+		public void setProxyObserverUri(String proxyObserverUri) {
+			this.proxyObserverUri = proxyObserverUri;
+		}
+
+	}
+
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+/**
+ * Merges the partial aggregates computed by the DDA on fine-grained tumbling
+ * windows (panes) into the sliding windows of the rules sharing them. Each
+ * pane carries sum, count, max and min of the values of one group, so that
+ * Average, Sum, Count, Max and Min windows can be computed by merging the
+ * last panes without scanning the data again.
+ * <p>
+ * Panes are identified by the time they are received at, relative to the
+ * first pane of the series, so that panes for which the DDA had no data
+ * still move the windows forward.
+ */
+public class PaneMerger {
+
+	public static final String AVERAGE = "Average";
+	public static final String SUM = "Sum";
+	public static final String COUNT = "Count";
+	public static final String MAX = "Max";
+	public static final String MIN = "Min";
+
+	/**
+	 * Properties carrying the partial aggregates of a pane besides
+	 * {@link DDAOntology#value}, which carries the sum.
+	 */
+	public static final Property paneCount = ResourceFactory.createProperty(
+			DDAOntology.URI, "paneCount");
+	public static final Property paneMax = ResourceFactory.createProperty(
+			DDAOntology.URI, "paneMax");
+	public static final Property paneMin = ResourceFactory.createProperty(
+			DDAOntology.URI, "paneMin");
+
+	private final MonitoringDataListener listener;
+	private final Map<String, PaneSeries> seriesByPaneMetric = new HashMap<String, PaneSeries>();
+	private final Map<String, RuleWindow> windowsByRuleId = new HashMap<String, RuleWindow>();
+
+	public PaneMerger(MonitoringDataListener listener) {
+		this.listener = listener;
+	}
+
+	public static boolean isMergeable(String aggregateFunction) {
+		return AVERAGE.equals(aggregateFunction)
+				|| SUM.equals(aggregateFunction)
+				|| COUNT.equals(aggregateFunction)
+				|| MAX.equals(aggregateFunction)
+				|| MIN.equals(aggregateFunction);
+	}
+
+	public synchronized void subscribe(String paneMetric, long paneMillis,
+			String ruleId, String outputMetric, String aggregateFunction,
+			int windowPanes, int stepPanes) {
+		PaneSeries series = seriesByPaneMetric.get(paneMetric);
+		if (series == null) {
+			series = new PaneSeries(paneMillis);
+			seriesByPaneMetric.put(paneMetric, series);
+		}
+		RuleWindow window = new RuleWindow(paneMetric, outputMetric,
+				aggregateFunction, windowPanes, stepPanes, series.lastTick + 1);
+		series.windows.add(window);
+		series.ensureCapacity(windowPanes);
+		windowsByRuleId.put(ruleId, window);
+	}
+
+	public synchronized void unsubscribe(String ruleId) {
+		RuleWindow window = windowsByRuleId.remove(ruleId);
+		if (window == null)
+			return;
+		PaneSeries series = seriesByPaneMetric.get(window.paneMetric);
+		if (series == null)
+			return;
+		series.windows.remove(window);
+		if (series.windows.isEmpty())
+			seriesByPaneMetric.remove(window.paneMetric);
+	}
+
+	public synchronized boolean isSubscribed(String ruleId) {
+		return windowsByRuleId.containsKey(ruleId);
+	}
+
+	/**
+	 * Adds the panes computed by the DDA in one evaluation of the pane query
+	 * and notifies the listener with the windows closed by them.
+	 */
+	public void addPanes(String paneMetric, List<Pane> panes,
+			long receivedMillis) {
+		Map<String, List<MonitoringDatum>> results = new HashMap<String, List<MonitoringDatum>>();
+		synchronized (this) {
+			PaneSeries series = seriesByPaneMetric.get(paneMetric);
+			if (series == null)
+				return;
+			long tick = series.tick(receivedMillis);
+			for (Pane pane : panes) {
+				PaneHistory history = series.histories.get(pane.resourceId);
+				if (history == null) {
+					history = new PaneHistory(series.capacity);
+					series.histories.put(pane.resourceId, history);
+				}
+				history.add(tick, pane);
+			}
+			for (RuleWindow window : series.windows) {
+				if (tick < window.nextEmissionTick)
+					continue;
+				window.nextEmissionTick += window.stepPanes
+						* ((tick - window.nextEmissionTick) / window.stepPanes + 1);
+				List<MonitoringDatum> data = results.get(window.outputMetric);
+				if (data == null) {
+					data = new ArrayList<MonitoringDatum>();
+					results.put(window.outputMetric, data);
+				}
+				for (Map.Entry<String, PaneHistory> entry : series.histories
+						.entrySet()) {
+					MonitoringDatum datum = entry.getValue().merge(tick,
+							window.windowPanes, window.aggregateFunction);
+					if (datum != null) {
+						datum.setMetric(window.outputMetric);
+						datum.setResourceId(entry.getKey());
+						data.add(datum);
+					}
+				}
+			}
+			series.evictStaleHistories(tick);
+		}
+		for (Map.Entry<String, List<MonitoringDatum>> entry : results
+				.entrySet()) {
+			if (!entry.getValue().isEmpty())
+				listener.onMonitoringData(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * The partial aggregates of one group over one pane.
+	 */
+	public static class Pane {
+
+		private final String resourceId;
+		private final double sum;
+		private final long count;
+		private final double max;
+		private final double min;
+		private final long timestamp;
+
+		public Pane(String resourceId, double sum, long count, double max,
+				double min, long timestamp) {
+			this.resourceId = resourceId;
+			this.sum = sum;
+			this.count = count;
+			this.max = max;
+			this.min = min;
+			this.timestamp = timestamp;
+		}
+
+		@Override
+		public String toString() {
+			return "Pane [resourceId=" + resourceId + ", sum=" + sum
+					+ ", count=" + count + ", max=" + max + ", min=" + min
+					+ ", timestamp=" + timestamp + "]";
+		}
+
+	}
+
+	private static class RuleWindow {
+
+		private final String paneMetric;
+		private final String outputMetric;
+		private final String aggregateFunction;
+		private final int windowPanes;
+		private final int stepPanes;
+		private long nextEmissionTick;
+
+		private RuleWindow(String paneMetric, String outputMetric,
+				String aggregateFunction, int windowPanes, int stepPanes,
+				long firstTick) {
+			this.paneMetric = paneMetric;
+			this.outputMetric = outputMetric;
+			this.aggregateFunction = aggregateFunction;
+			this.windowPanes = windowPanes;
+			this.stepPanes = stepPanes;
+			this.nextEmissionTick = firstTick + stepPanes - 1;
+		}
+
+	}
+
+	private static class PaneSeries {
+
+		private final long paneMillis;
+		private final List<RuleWindow> windows = new ArrayList<RuleWindow>();
+		private final Map<String, PaneHistory> histories = new HashMap<String, PaneHistory>();
+		private int capacity = 1;
+		private long origin = -1;
+		private long lastTick = -1;
+
+		private PaneSeries(long paneMillis) {
+			this.paneMillis = paneMillis;
+		}
+
+		private long tick(long receivedMillis) {
+			if (origin < 0) {
+				origin = receivedMillis;
+				lastTick = 0;
+				return lastTick;
+			}
+			long tick = Math.round((double) (receivedMillis - origin)
+					/ paneMillis);
+			if (tick > lastTick) {
+				lastTick = tick;
+				// follows the clock of the DDA rather than ours
+				origin = receivedMillis - tick * paneMillis;
+			}
+			return lastTick;
+		}
+
+		private void ensureCapacity(int panes) {
+			if (panes <= capacity)
+				return;
+			capacity = panes;
+			for (PaneHistory history : histories.values()) {
+				history.resize(capacity);
+			}
+		}
+
+		private void evictStaleHistories(long tick) {
+			Iterator<PaneHistory> it = histories.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().lastTick <= tick - capacity)
+					it.remove();
+			}
+		}
+
+	}
+
+	/**
+	 * Ring buffer of the last panes of one group.
+	 */
+	private static class PaneHistory {
+
+		private long[] ticks;
+		private double[] sums;
+		private long[] counts;
+		private double[] maxs;
+		private double[] mins;
+		private long[] timestamps;
+		private long lastTick = -1;
+
+		private PaneHistory(int capacity) {
+			allocate(capacity);
+		}
+
+		private void allocate(int capacity) {
+			ticks = new long[capacity];
+			sums = new double[capacity];
+			counts = new long[capacity];
+			maxs = new double[capacity];
+			mins = new double[capacity];
+			timestamps = new long[capacity];
+			for (int i = 0; i < capacity; i++) {
+				ticks[i] = -1;
+			}
+		}
+
+		private void resize(int capacity) {
+			long[] oldTicks = ticks;
+			double[] oldSums = sums;
+			long[] oldCounts = counts;
+			double[] oldMaxs = maxs;
+			double[] oldMins = mins;
+			long[] oldTimestamps = timestamps;
+			allocate(capacity);
+			for (int i = 0; i < oldTicks.length; i++) {
+				if (oldTicks[i] < 0)
+					continue;
+				int slot = (int) (oldTicks[i] % capacity);
+				ticks[slot] = oldTicks[i];
+				sums[slot] = oldSums[i];
+				counts[slot] = oldCounts[i];
+				maxs[slot] = oldMaxs[i];
+				mins[slot] = oldMins[i];
+				timestamps[slot] = oldTimestamps[i];
+			}
+		}
+
+		private void add(long tick, Pane pane) {
+			int slot = (int) (tick % ticks.length);
+			if (ticks[slot] != tick) {
+				ticks[slot] = tick;
+				sums[slot] = pane.sum;
+				counts[slot] = pane.count;
+				maxs[slot] = pane.max;
+				mins[slot] = pane.min;
+				timestamps[slot] = pane.timestamp;
+			} else {
+				sums[slot] += pane.sum;
+				counts[slot] += pane.count;
+				maxs[slot] = Math.max(maxs[slot], pane.max);
+				mins[slot] = Math.min(mins[slot], pane.min);
+				timestamps[slot] = Math.max(timestamps[slot], pane.timestamp);
+			}
+			lastTick = Math.max(lastTick, tick);
+		}
+
+		/**
+		 * @return the aggregate of the panes in the window ending at the
+		 *         given tick, null if there was no data in the window
+		 */
+		private MonitoringDatum merge(long tick, int windowPanes,
+				String aggregateFunction) {
+			double sum = 0;
+			long count = 0;
+			double max = Double.NEGATIVE_INFINITY;
+			double min = Double.POSITIVE_INFINITY;
+			long timestamp = 0;
+			for (int i = 0; i < ticks.length; i++) {
+				if (ticks[i] <= tick - windowPanes || ticks[i] > tick
+						|| counts[i] == 0)
+					continue;
+				sum += sums[i];
+				count += counts[i];
+				max = Math.max(max, maxs[i]);
+				min = Math.min(min, mins[i]);
+				timestamp = Math.max(timestamp, timestamps[i]);
+			}
+			if (count == 0)
+				return null;
+			double value;
+			switch (aggregateFunction) {
+			case AVERAGE:
+				value = sum / count;
+				break;
+			case SUM:
+				value = sum;
+				break;
+			case COUNT:
+				value = count;
+				break;
+			case MAX:
+				value = max;
+				break;
+			case MIN:
+				value = min;
+				break;
+			default:
+				throw new IllegalArgumentException("Aggregate function "
+						+ aggregateFunction + " cannot be computed from panes");
+			}
+			return new MonitoringDatum(null, null, value, timestamp);
+		}
+
+	}
+
+}
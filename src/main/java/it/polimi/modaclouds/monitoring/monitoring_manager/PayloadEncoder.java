@@ -0,0 +1,234 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonWriter;
+import com.hp.hpl.jena.vocabulary.XSD;
+
+/**
+ * Encodes monitoring data in the payload formats observers can choose:
+ * <ul>
+ * <li>{@value #RDF_JSON}: the RDF/JSON format used by the DDA, the default</li>
+ * <li>{@value #NDJSON}: one json object per line with the short keys
+ * <code>r</code> (resource id), <code>m</code> (metric), <code>v</code>
+ * (value) and <code>t</code> (timestamp)</li>
+ * <li>{@value #CSV}: a <code>resourceId,metric,value,timestamp</code> header
+ * followed by one line per datum</li>
+ * <li>{@value #BINARY}: big-endian, the payload length (int) followed by the
+ * metric table, the number of metrics (short) and each metric name (modified
+ * UTF-8, as written by {@link DataOutputStream#writeUTF(String)}), and by the
+ * number of data (int) and each datum: the index of its metric in the table
+ * (short), the resource id (modified UTF-8), the value (double) and the
+ * timestamp (long)</li>
+ * </ul>
+ * The {@value #EVENT_STREAM} format is only used internally for streaming
+ * clients: one server-sent event per datum, whose data is the datum in the
+ * {@value #NDJSON} format.
+ */
+public class PayloadEncoder {
+
+	public static final String RDF_JSON = "rdf-json";
+	public static final String NDJSON = "ndjson";
+	public static final String CSV = "csv";
+	public static final String BINARY = "binary";
+	public static final String EVENT_STREAM = "event-stream";
+
+	private static final String UTF_8 = "UTF-8";
+
+	public static boolean isSupported(String format) {
+		return RDF_JSON.equals(format) || NDJSON.equals(format)
+				|| CSV.equals(format) || BINARY.equals(format);
+	}
+
+	public static String getContentType(String format) {
+		if (NDJSON.equals(format))
+			return "application/x-ndjson";
+		if (CSV.equals(format))
+			return "text/csv";
+		if (BINARY.equals(format))
+			return "application/octet-stream";
+		if (EVENT_STREAM.equals(format))
+			return "text/event-stream";
+		return "application/json";
+	}
+
+	public static byte[] encode(String format, List<MonitoringDatum> data)
+			throws IOException {
+		if (NDJSON.equals(format))
+			return toNdjson(data);
+		if (CSV.equals(format))
+			return toCsv(data);
+		if (BINARY.equals(format))
+			return toBinary(data);
+		if (RDF_JSON.equals(format))
+			return toRdfJson(data).getBytes(UTF_8);
+		if (EVENT_STREAM.equals(format))
+			return toEventStream(data);
+		throw new IllegalArgumentException("Unknown payload format " + format);
+	}
+
+	static String toRdfJson(List<MonitoringDatum> data) throws IOException {
+		StringWriter stringWriter = new StringWriter();
+		JsonWriter writer = new JsonWriter(stringWriter);
+		writer.beginObject();
+		int i = 0;
+		for (MonitoringDatum datum : data) {
+			writer.name("_:b" + i++).beginObject();
+			writeLiteral(writer, DDAOntology.metric.getURI(),
+					datum.getMetric(), null);
+			writeLiteral(writer, DDAOntology.resourceId.getURI(),
+					datum.getResourceId(), null);
+			writeLiteral(writer, DDAOntology.value.getURI(),
+					Double.toString(datum.getValue()), XSD.xdouble.getURI());
+			writeLiteral(writer, DDAOntology.timestamp.getURI(),
+					Long.toString(datum.getTimestamp()), XSD.xlong.getURI());
+			writer.endObject();
+		}
+		writer.endObject();
+		writer.close();
+		return stringWriter.toString();
+	}
+
+	private static void writeLiteral(JsonWriter writer, String property,
+			String value, String datatype) throws IOException {
+		writer.name(property).beginArray().beginObject();
+		writer.name("type").value("literal");
+		writer.name("value").value(value);
+		if (datatype != null)
+			writer.name("datatype").value(datatype);
+		writer.endObject().endArray();
+	}
+
+	static byte[] toNdjson(List<MonitoringDatum> data) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream(data.size() * 64);
+		Writer out = new OutputStreamWriter(os, UTF_8);
+		for (MonitoringDatum datum : data) {
+			JsonWriter writer = new JsonWriter(out);
+			writer.beginObject();
+			writer.name("r").value(datum.getResourceId());
+			writer.name("m").value(datum.getMetric());
+			writer.name("v");
+			if (Double.isNaN(datum.getValue())
+					|| Double.isInfinite(datum.getValue()))
+				writer.nullValue();
+			else
+				writer.value(datum.getValue());
+			writer.name("t").value(datum.getTimestamp());
+			writer.endObject();
+			writer.flush();
+			out.write('\n');
+		}
+		out.close();
+		return os.toByteArray();
+	}
+
+	static byte[] toEventStream(List<MonitoringDatum> data)
+			throws IOException {
+		String ndjson = new String(toNdjson(data), UTF_8);
+		StringBuilder sb = new StringBuilder(ndjson.length() + data.size()
+				* 8);
+		int start = 0;
+		int end;
+		while ((end = ndjson.indexOf('\n', start)) != -1) {
+			sb.append("data: ").append(ndjson, start, end).append("\n\n");
+			start = end + 1;
+		}
+		return sb.toString().getBytes(UTF_8);
+	}
+
+	static byte[] toCsv(List<MonitoringDatum> data) throws IOException {
+		StringBuilder sb = new StringBuilder(32 + data.size() * 48);
+		sb.append("resourceId,metric,value,timestamp\n");
+		for (MonitoringDatum datum : data) {
+			appendCsvField(sb, datum.getResourceId());
+			sb.append(',');
+			appendCsvField(sb, datum.getMetric());
+			sb.append(',');
+			if (!Double.isNaN(datum.getValue()))
+				sb.append(datum.getValue());
+			sb.append(',');
+			sb.append(datum.getTimestamp());
+			sb.append('\n');
+		}
+		return sb.toString().getBytes(UTF_8);
+	}
+
+	private static void appendCsvField(StringBuilder sb, String field) {
+		if (field == null)
+			return;
+		boolean quote = false;
+		for (int i = 0; i < field.length() && !quote; i++) {
+			char c = field.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			sb.append(field);
+			return;
+		}
+		sb.append('"').append(field.replace("\"", "\"\"")).append('"');
+	}
+
+	static byte[] toBinary(List<MonitoringDatum> data) throws IOException {
+		Map<String, Integer> metricIds = new HashMap<String, Integer>();
+		ByteArrayOutputStream metricsOs = new ByteArrayOutputStream();
+		DataOutputStream metricsOut = new DataOutputStream(metricsOs);
+		ByteArrayOutputStream dataOs = new ByteArrayOutputStream(
+				data.size() * 32);
+		DataOutputStream dataOut = new DataOutputStream(dataOs);
+		dataOut.writeInt(data.size());
+		for (MonitoringDatum datum : data) {
+			String metric = datum.getMetric() != null ? datum.getMetric() : "";
+			Integer metricId = metricIds.get(metric);
+			if (metricId == null) {
+				if (metricIds.size() > Short.MAX_VALUE)
+					throw new IOException("Too many metrics in one payload");
+				metricId = metricIds.size();
+				metricIds.put(metric, metricId);
+				metricsOut.writeUTF(metric);
+			}
+			dataOut.writeShort(metricId);
+			dataOut.writeUTF(datum.getResourceId() != null ? datum
+					.getResourceId() : "");
+			dataOut.writeDouble(datum.getValue());
+			dataOut.writeLong(datum.getTimestamp());
+		}
+		metricsOut.close();
+		dataOut.close();
+		ByteArrayOutputStream os = new ByteArrayOutputStream(4 + 2
+				+ metricsOs.size() + dataOs.size());
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(2 + metricsOs.size() + dataOs.size());
+		out.writeShort(metricIds.size());
+		metricsOs.writeTo(out);
+		dataOs.writeTo(out);
+		out.close();
+		return os.toByteArray();
+	}
+
+}
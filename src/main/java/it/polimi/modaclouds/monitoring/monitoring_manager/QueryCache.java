@@ -0,0 +1,174 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import it.polimi.modaclouds.qos_models.monitoring_rules.actions.OutputMetric;
+import it.polimi.modaclouds.qos_models.schema.Action;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTarget;
+import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
+import it.polimi.modaclouds.qos_models.schema.Parameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of compiled C-SPARQL queries, keyed by query id and by a canonical
+ * fingerprint of the rule fields the compilation depends on. Rule id and label
+ * are not part of the fingerprint unless they end up in the query itself.
+ */
+public class QueryCache {
+
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	private final int maxSize;
+	private final Map<String, String> queriesByKey;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public QueryCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	@SuppressWarnings("serial")
+	public QueryCache(int maxSize) {
+		this.maxSize = maxSize;
+		queriesByKey = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > QueryCache.this.maxSize;
+			}
+		};
+	}
+
+	public synchronized String get(String key) {
+		String query = queriesByKey.get(key);
+		if (query != null)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+		return query;
+	}
+
+	public synchronized void put(String key, String query) {
+		queriesByKey.put(key, query);
+	}
+
+	public synchronized void clear() {
+		queriesByKey.clear();
+	}
+
+	public synchronized int size() {
+		return queriesByKey.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public static String getKey(MonitoringRule rule, String queryId) {
+		StringBuilder key = new StringBuilder();
+		append(key, queryId);
+		key.append(fingerprint(rule));
+		return key.toString();
+	}
+
+	public static String fingerprint(MonitoringRule rule) {
+		StringBuilder fingerprint = new StringBuilder();
+
+		List<MonitoredTarget> monitoredTargets = Util.getMonitoredTargets(rule);
+		List<String> targets = new ArrayList<String>();
+		for (MonitoredTarget target : monitoredTargets) {
+			targets.add(target.getClazz() + "/" + target.getType());
+		}
+		Collections.sort(targets);
+		// the class of the first target decides the joins of the query
+		append(fingerprint, monitoredTargets.isEmpty() ? null
+				: monitoredTargets.get(0).getClazz());
+		append(fingerprint, String.valueOf(targets.size()));
+		for (String target : targets) {
+			append(fingerprint, target);
+		}
+
+		append(fingerprint, rule.getCollectedMetric().getMetricName()
+				.toLowerCase());
+
+		if (Util.isAggregatedMetric(rule)) {
+			append(fingerprint, rule.getMetricAggregation()
+					.getAggregateFunction());
+			append(fingerprint, rule.getMetricAggregation().getGroupingClass());
+			appendParameters(fingerprint, rule.getMetricAggregation()
+					.getParameters());
+		} else {
+			append(fingerprint, null);
+		}
+
+		append(fingerprint, rule.getCondition() != null ? rule.getCondition()
+				.getValue() : null);
+		append(fingerprint, rule.getTimeWindow());
+		append(fingerprint, rule.getTimeStep());
+
+		if (rule.getActions() != null) {
+			append(fingerprint, String.valueOf(rule.getActions().getActions()
+					.size()));
+			for (Action action : rule.getActions().getActions()) {
+				append(fingerprint, action.getName());
+				appendParameters(fingerprint, action.getParameters());
+				// actions other than OutputMetric output a metric named after
+				// the rule
+				if (!action.getName().equals(
+						OutputMetric.class.getSimpleName()))
+					append(fingerprint, rule.getId());
+			}
+		}
+		return fingerprint.toString();
+	}
+
+	private static void appendParameters(StringBuilder fingerprint,
+			List<Parameter> parameters) {
+		if (parameters == null) {
+			append(fingerprint, null);
+			return;
+		}
+		List<String> pars = new ArrayList<String>();
+		for (Parameter p : parameters) {
+			pars.add(p.getName() + "=" + p.getValue());
+		}
+		Collections.sort(pars);
+		append(fingerprint, String.valueOf(pars.size()));
+		for (String p : pars) {
+			append(fingerprint, p);
+		}
+	}
+
+	private static void append(StringBuilder fingerprint, String value) {
+		if (value == null) {
+			fingerprint.append("-;");
+		} else {
+			fingerprint.append(value.length()).append(':').append(value)
+					.append(';');
+		}
+	}
+
+}
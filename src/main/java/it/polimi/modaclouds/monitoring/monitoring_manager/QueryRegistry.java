@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the rules sharing the same DDA query. Rules are considered
+ * equivalent when they compile to the same C-SPARQL query once the query id is
+ * factored out.
+ * <p>
+ * As for {@link StreamRegistry}, callers registering or unregistering the
+ * query on the DDA should synchronize on the returned {@link SharedQuery}.
+ */
+public class QueryRegistry {
+
+	private final Map<String, SharedQuery> queriesByKey = new HashMap<String, SharedQuery>();
+	private final Map<String, SharedQuery> queriesByRuleId = new HashMap<String, SharedQuery>();
+
+	public synchronized SharedQuery acquire(String key, String ruleId) {
+		SharedQuery query = queriesByKey.get(key);
+		if (query == null) {
+			query = new SharedQuery(key);
+			queriesByKey.put(key, query);
+		}
+		query.ruleIds.add(ruleId);
+		queriesByRuleId.put(ruleId, query);
+		return query;
+	}
+
+	/**
+	 * @param ruleId
+	 * @return the query the rule was sharing, null if the rule did not
+	 *         acquire any query
+	 */
+	public synchronized SharedQuery release(String ruleId) {
+		SharedQuery query = queriesByRuleId.remove(ruleId);
+		if (query != null)
+			query.ruleIds.remove(ruleId);
+		return query;
+	}
+
+	public synchronized boolean isUnused(SharedQuery query) {
+		return query.ruleIds.isEmpty();
+	}
+
+	/**
+	 * Forgets the query if no rule is sharing it anymore.
+	 */
+	public synchronized void removeIfUnused(SharedQuery query) {
+		if (query.ruleIds.isEmpty() && queriesByKey.get(query.key) == query)
+			queriesByKey.remove(query.key);
+	}
+
+	public synchronized Set<String> getRuleIds(String ruleId) {
+		SharedQuery query = queriesByRuleId.get(ruleId);
+		if (query == null)
+			return new HashSet<String>();
+		return new HashSet<String>(query.ruleIds);
+	}
+
+	public synchronized int size() {
+		return queriesByKey.size();
+	}
+
+	public static class SharedQuery {
+
+		private final String key;
+		private final Set<String> ruleIds = new HashSet<String>();
+		private String queryId;
+
+		private SharedQuery(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * @return the id of the query registered on the DDA, null if the
+		 *         query is not registered
+		 */
+		public String getQueryId() {
+			return queryId;
+		}
+
+		public void setQueryId(String queryId) {
+			this.queryId = queryId;
+		}
+
+		public boolean isRegistered() {
+			return queryId != null;
+		}
+
+	}
+
+}
@@ -32,4 +32,7 @@ class QueryVars {
 	public static final String RESOURCE_ID = "?resourceId";
 	public static final String INTERNAL_COMPONENT = "?internalComponent";
 	public static final String COMPONENT_ID = "?componentId";
+	public static final String PANE_COUNT = "?paneCount";
+	public static final String PANE_MAX = "?paneMax";
+	public static final String PANE_MIN = "?paneMin";
 }
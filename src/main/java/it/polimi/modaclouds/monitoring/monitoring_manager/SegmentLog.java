@@ -0,0 +1,384 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of byte records stored in memory-mapped segment files.
+ * Records are read in the order they were appended, the position of the next
+ * record to read is kept in a memory-mapped cursor file, so the log can be
+ * reopened after a restart without replaying records already consumed.
+ * <p>
+ * Each record is stored as its length (int), the time it was appended (long)
+ * and its bytes. A zero length marks the end of the records of a segment,
+ * since new segments are zero-filled. Segments are deleted once all of their
+ * records have been read. Records older than the retention are skipped and
+ * the oldest segments are dropped when the log would grow beyond its maximum
+ * size.
+ * <p>
+ * Segments are unmapped before being deleted, so that their disk space is
+ * reclaimed right away rather than when their buffers are garbage collected.
+ * A deleted log cannot be used anymore.
+ * <p>
+ * A record returned by {@link #peek(long)} is only marked as read by
+ * {@link #advance(Record)} if it is still the head of the log, so a record
+ * being delivered while its segment is dropped never causes the next one to
+ * be skipped.
+ */
+public class SegmentLog {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(SegmentLog.class);
+
+	private static final int HEADER = 4 + 8;
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final String CURSOR_FILE = "cursor";
+
+	private final File directory;
+	private final int segmentSize;
+	private final long maxBytes;
+	private final long retentionMillis;
+
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+	private MappedByteBuffer cursor;
+	private int readPosition;
+	private long size;
+	private long droppedRecords;
+	private boolean deleted;
+
+	/**
+	 * Opens the log in the directory, recovering the records not read yet if
+	 * the directory contains a log already.
+	 * 
+	 * @param retentionMillis
+	 *            records older than this are skipped, 0 to keep records
+	 *            until they are read
+	 */
+	public SegmentLog(File directory, int segmentSize, long maxBytes,
+			long retentionMillis) throws IOException {
+		if (maxBytes < segmentSize)
+			throw new IllegalArgumentException(
+					"The log cannot be smaller than a segment");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxBytes = maxBytes;
+		this.retentionMillis = retentionMillis;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create directory " + directory);
+		cursor = map(new File(directory, CURSOR_FILE), 8 + 4);
+		recover();
+	}
+
+	private void recover() throws IOException {
+		File[] files = directory.listFiles();
+		List<Long> ids = new ArrayList<Long>();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.endsWith(SEGMENT_SUFFIX))
+					ids.add(Long.parseLong(name.substring(0, name.length()
+							- SEGMENT_SUFFIX.length())));
+			}
+		}
+		Long[] sortedIds = ids.toArray(new Long[ids.size()]);
+		Arrays.sort(sortedIds);
+		long cursorSegment = cursor.getLong(0);
+		for (long id : sortedIds) {
+			File file = getSegmentFile(id);
+			if (id < cursorSegment) {
+				file.delete();
+				continue;
+			}
+			Segment segment = new Segment(id, file, (int) file.length());
+			segment.writePosition = segment.findEnd();
+			segments.add(segment);
+			size += segment.capacity;
+		}
+		if (!segments.isEmpty() && segments.getFirst().id == cursorSegment)
+			readPosition = cursor.getInt(8);
+		saveCursor();
+	}
+
+	public synchronized void append(byte[] record, long now)
+			throws IOException {
+		if (deleted)
+			throw new IOException("The log in " + directory
+					+ " was deleted");
+		int needed = HEADER + record.length;
+		Segment tail = segments.isEmpty() ? null : segments.getLast();
+		if (tail == null || tail.capacity - tail.writePosition < needed) {
+			int capacity = Math.max(segmentSize, needed);
+			while (!segments.isEmpty() && size + capacity > maxBytes) {
+				dropOldestSegment();
+			}
+			tail = new Segment(tail == null ? cursor.getLong(0) : tail.id + 1,
+					null, capacity);
+			segments.add(tail);
+			size += capacity;
+			if (segments.size() == 1)
+				saveCursor();
+		}
+		tail.buffer.position(tail.writePosition);
+		tail.buffer.putInt(record.length);
+		tail.buffer.putLong(now);
+		tail.buffer.put(record);
+		tail.writePosition += needed;
+	}
+
+	private void dropOldestSegment() {
+		Segment oldest = segments.removeFirst();
+		droppedRecords += oldest.countRecords(readPosition);
+		size -= oldest.capacity;
+		oldest.delete();
+		readPosition = 0;
+		if (segments.isEmpty()) {
+			// never reuse the id of a dropped segment
+			cursor.putLong(0, oldest.id + 1);
+			cursor.putInt(8, 0);
+		} else {
+			saveCursor();
+		}
+	}
+
+	/**
+	 * @return the oldest record not read yet and not expired, null if there
+	 *         is none
+	 */
+	public synchronized Record peek(long now) {
+		while (!deleted && !segments.isEmpty()) {
+			Segment head = segments.getFirst();
+			if (readPosition >= head.writePosition) {
+				if (head == segments.getLast())
+					return null;
+				segments.removeFirst();
+				size -= head.capacity;
+				head.delete();
+				readPosition = 0;
+				saveCursor();
+				continue;
+			}
+			int length = head.buffer.getInt(readPosition);
+			long appended = head.buffer.getLong(readPosition + 4);
+			if (retentionMillis > 0 && appended < now - retentionMillis) {
+				droppedRecords++;
+				readPosition += HEADER + length;
+				saveCursor();
+				continue;
+			}
+			byte[] bytes = new byte[length];
+			ByteBuffer view = head.buffer.duplicate();
+			view.position(readPosition + HEADER);
+			view.get(bytes);
+			return new Record(head.id, readPosition, bytes);
+		}
+		return null;
+	}
+
+	/**
+	 * Marks the record returned by {@link #peek(long)} as read. Nothing is
+	 * done if the record is not the head of the log anymore. If its segment
+	 * was dropped meanwhile, the record is not counted as dropped, since it
+	 * was read after all.
+	 */
+	public synchronized void advance(Record record) {
+		if (deleted)
+			return;
+		long headId = cursor.getLong(0);
+		if (!segments.isEmpty()) {
+			Segment head = segments.getFirst();
+			headId = head.id;
+			if (head.id == record.segment && readPosition == record.position) {
+				readPosition += HEADER + record.bytes.length;
+				saveCursor();
+				return;
+			}
+		}
+		if (record.segment < headId)
+			droppedRecords--;
+	}
+
+	public synchronized boolean isEmpty() {
+		return segments.isEmpty()
+				|| (segments.size() == 1 && readPosition >= segments
+						.getFirst().writePosition);
+	}
+
+	/**
+	 * @return the disk space used by the segments, in bytes
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of records dropped because they expired or because
+	 *         the log was full
+	 */
+	public synchronized long getDroppedRecords() {
+		return droppedRecords;
+	}
+
+	/**
+	 * Deletes all segments and the directory of the log.
+	 */
+	public synchronized void delete() {
+		if (deleted)
+			return;
+		deleted = true;
+		for (Segment segment : segments) {
+			segment.delete();
+		}
+		segments.clear();
+		size = 0;
+		unmap(cursor);
+		new File(directory, CURSOR_FILE).delete();
+		directory.delete();
+	}
+
+	private void saveCursor() {
+		cursor.putLong(0, segments.isEmpty() ? cursor.getLong(0) : segments
+				.getFirst().id);
+		cursor.putInt(8, readPosition);
+	}
+
+	private File getSegmentFile(long id) {
+		return new File(directory, String.format("%020d", id) + SEGMENT_SUFFIX);
+	}
+
+	private static MappedByteBuffer map(File file, int capacity)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (raf.length() < capacity)
+				raf.setLength(capacity);
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					capacity);
+		} finally {
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Releases the mapping of the buffer, which must not be accessed
+	 * afterwards. If the mapping cannot be released, it is released when the
+	 * buffer is garbage collected.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			try {
+				// Java 9 and later
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+						ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			} catch (NoSuchMethodException e) {
+				// Java 7 and 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null)
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception e) {
+			logger.warn("Could not unmap a segment, its disk space is "
+					+ "released when it is garbage collected: {}", e.toString());
+		}
+	}
+
+	/**
+	 * A record and its position in the log.
+	 */
+	public static class Record {
+
+		private final long segment;
+		private final int position;
+		private final byte[] bytes;
+
+		private Record(long segment, int position, byte[] bytes) {
+			this.segment = segment;
+			this.position = position;
+			this.bytes = bytes;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+	}
+
+	private class Segment {
+
+		private final long id;
+		private final File file;
+		private final int capacity;
+		private final MappedByteBuffer buffer;
+		private int writePosition;
+
+		private Segment(long id, File file, int capacity) throws IOException {
+			this.id = id;
+			this.file = file != null ? file : getSegmentFile(id);
+			this.capacity = capacity;
+			this.buffer = map(this.file, capacity);
+		}
+
+		private int findEnd() {
+			int position = 0;
+			while (position + HEADER <= capacity) {
+				int length = buffer.getInt(position);
+				if (length <= 0 || position + HEADER + length > capacity)
+					break;
+				position += HEADER + length;
+			}
+			return position;
+		}
+
+		private int countRecords(int from) {
+			int count = 0;
+			int position = from;
+			while (position < writePosition) {
+				position += HEADER + buffer.getInt(position);
+				count++;
+			}
+			return count;
+		}
+
+		private void delete() {
+			unmap(buffer);
+			file.delete();
+		}
+
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the rules reading from each input stream. Every operation
+ * takes constant time regardless of the number of installed rules.
+ * <p>
+ * Callers registering or unregistering a stream on the DDA should synchronize
+ * on the returned {@link Stream}, so that the DDA registration state never
+ * races with acquisitions and releases of other rules.
+ */
+public class StreamRegistry {
+
+	private final Map<String, Stream> streamsByIri = new HashMap<String, Stream>();
+	private final Map<String, Stream> streamsByRuleId = new HashMap<String, Stream>();
+
+	public synchronized Stream acquire(String streamIri, String ruleId) {
+		Stream stream = streamsByIri.get(streamIri);
+		if (stream == null) {
+			stream = new Stream(streamIri);
+			streamsByIri.put(streamIri, stream);
+		}
+		stream.ruleIds.add(ruleId);
+		streamsByRuleId.put(ruleId, stream);
+		return stream;
+	}
+
+	/**
+	 * @param ruleId
+	 * @return the stream the rule was reading from, null if the rule did not
+	 *         acquire any stream
+	 */
+	public synchronized Stream release(String ruleId) {
+		Stream stream = streamsByRuleId.remove(ruleId);
+		if (stream != null)
+			stream.ruleIds.remove(ruleId);
+		return stream;
+	}
+
+	public synchronized boolean isUnused(Stream stream) {
+		return stream.ruleIds.isEmpty();
+	}
+
+	/**
+	 * Forgets the stream if no rule is reading from it anymore.
+	 */
+	public synchronized void removeIfUnused(Stream stream) {
+		if (stream.ruleIds.isEmpty() && streamsByIri.get(stream.iri) == stream)
+			streamsByIri.remove(stream.iri);
+	}
+
+	public synchronized String getStreamIri(String ruleId) {
+		Stream stream = streamsByRuleId.get(ruleId);
+		return stream != null ? stream.iri : null;
+	}
+
+	public synchronized Set<String> getRuleIds(String streamIri) {
+		Stream stream = streamsByIri.get(streamIri);
+		if (stream == null)
+			return Collections.emptySet();
+		return new HashSet<String>(stream.ruleIds);
+	}
+
+	public synchronized int getFanIn(String streamIri) {
+		Stream stream = streamsByIri.get(streamIri);
+		return stream != null ? stream.ruleIds.size() : 0;
+	}
+
+	public synchronized List<String> getStreamIris() {
+		return new ArrayList<String>(streamsByIri.keySet());
+	}
+
+	public static class Stream {
+
+		private final String iri;
+		private final Set<String> ruleIds = new HashSet<String>();
+		private boolean registered;
+
+		private Stream(String iri) {
+			this.iri = iri;
+		}
+
+		public String getIri() {
+			return iri;
+		}
+
+		public boolean isRegistered() {
+			return registered;
+		}
+
+		public void setRegistered(boolean registered) {
+			this.registered = registered;
+		}
+
+	}
+
+}
@@ -40,6 +40,9 @@ public class ManagerConfig {
 	
 	
 	private static final String actionsExecutorPath = "/ActionsExecutor";
+	private static final String paneResultsPath = "/PaneResults";
+	private static final String fastPathPath = "/FastPath";
+	private static final String observerProxyPath = "/ObserverProxy";
 
 	@Parameter(names = "-help", help = true, description = "Shows this message")
 	private boolean help;
@@ -71,17 +74,71 @@ public class ManagerConfig {
 
 	@Parameter(names = "-mmprivateip", description = "Monitoring Manager private endpoint IP address")
 	private String mmPrivateIP;
+
+	@Parameter(names = "-installthreads", description = "Number of rules installed in parallel")
+	private int installThreads;
+
+	@Parameter(names = "-panesize", description = "Size in seconds of the panes shared by aggregated rules on the same stream, 0 to disable pane sharing")
+	private int paneSize;
+
+	@Parameter(names = "-fastpath", description = "Compute simple aggregated rules inside the Monitoring Manager rather than on the DDA")
+	private boolean fastPath;
+
+	@Parameter(names = "-actionthreads", description = "Number of threads executing actions, actions of the same rule are always executed by the same thread")
+	private int actionThreads;
+
+	@Parameter(names = "-actionqueuesize", description = "Maximum number of actions waiting to be executed by each action thread")
+	private int actionQueueSize;
+
+	@Parameter(names = "-observerthreads", description = "Number of threads delivering monitoring data to observers in parallel")
+	private int observerThreads;
+
+	@Parameter(names = "-observermaxfailures", description = "Number of consecutive failed deliveries after which an observer is removed, 0 to never remove observers")
+	private int observerMaxFailures;
+
+	@Parameter(names = "-maxstreams", description = "Maximum number of clients streaming metrics at the same time")
+	private int maxStreams;
+
+	@Parameter(names = "-streambuffersize", description = "Maximum number of results buffered for a streaming client before it is disconnected")
+	private int streamBufferSize;
+
+	@Parameter(names = "-outboxdir", description = "Directory where data that cannot be delivered to observers are spooled until they recover, no spooling if not set")
+	private String outboxDir;
+
+	@Parameter(names = "-outboxsize", description = "Maximum disk space in MB used by the outbox of each observer")
+	private int outboxSize;
+
+	@Parameter(names = "-outboxretention", description = "Time in seconds after which spooled data are dropped, 0 to keep them until delivered")
+	private int outboxRetention;
+
+	@Parameter(names = "-modelchunksize", description = "Number of resources of an uploaded model written to the KB at once")
+	private int modelChunkSize;
 	
 
 	private Metrics monitoringMetrics;
 	private String ddaUrl;
 	private String kbUrl;
 	private String actionsExecutorUrl;
+	private String paneResultsUrl;
+	private String fastPathUrl;
+	private String observerProxyUrl;
 
 	public String getActionsExecutorUrl() {
 		return actionsExecutorUrl;
 	}
 
+	public String getPaneResultsUrl() {
+		return paneResultsUrl;
+	}
+
+	public String getFastPathUrl() {
+		return fastPathUrl;
+	}
+
+	public String getObserverProxyUrl() {
+		return observerProxyUrl;
+	}
+
 	private static ManagerConfig _instance = null;
 	public static String usage = null;
 
@@ -126,6 +183,71 @@ public class ManagerConfig {
 			throw new ConfigurationException(
 					"The chosen port is not a valid number");
 		}
+		try {
+			installThreads = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_INSTALL_THREADS, "8"));
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(
+					"The chosen number of install threads is not a valid number");
+		}
+		try {
+			paneSize = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_PANE_SIZE, "0"));
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(
+					"The chosen pane size is not a valid number");
+		}
+		try {
+			actionThreads = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_ACTION_THREADS, "4"));
+			actionQueueSize = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_ACTION_QUEUE_SIZE,
+					"1000"));
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(
+					"The chosen action threads or queue size is not a valid number");
+		}
+		try {
+			observerThreads = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_OBSERVER_THREADS, "8"));
+			observerMaxFailures = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_OBSERVER_MAX_FAILURES,
+					"20"));
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(
+					"The chosen number of observer threads or of observer failures is not a valid number");
+		}
+		try {
+			maxStreams = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_MAX_STREAMS, "8"));
+			streamBufferSize = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_STREAM_BUFFER_SIZE,
+					"100"));
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(
+					"The chosen maximum number of streams or stream buffer size is not a valid number");
+		}
+		try {
+			outboxSize = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_OUTBOX_SIZE, "64"));
+			outboxRetention = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_OUTBOX_RETENTION,
+					"86400"));
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(
+					"The chosen outbox size or retention is not a valid number");
+		}
+		outboxDir = getEnvVar(Env.MODACLOUDS_MONITORING_MANAGER_OUTBOX_DIR,
+				null);
+		try {
+			modelChunkSize = Integer.parseInt(getEnvVar(
+					Env.MODACLOUDS_MONITORING_MANAGER_MODEL_CHUNK_SIZE, "500"));
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(
+					"The chosen model chunk size is not a valid number");
+		}
+		fastPath = Boolean.parseBoolean(getEnvVar(
+				Env.MODACLOUDS_MONITORING_MANAGER_FAST_PATH, "false"));
 
 		monitoringMetricsFileName = getEnvVar(
 				Env.MODACLOUDS_MONITORING_MONITORING_METRICS_FILE, null);
@@ -141,6 +263,9 @@ public class ManagerConfig {
 		ddaUrl = "http://" + ddaIP + ":" + ddaPort;
 		kbUrl = "http://" + kbIP + ":" + kbPort + kbPath;
 		actionsExecutorUrl = "http://" + mmPrivateIP + ":" + mmPrivatePort + actionsExecutorPath;
+		paneResultsUrl = "http://" + mmPrivateIP + ":" + mmPrivatePort + paneResultsPath;
+		fastPathUrl = "http://" + mmPrivateIP + ":" + mmPrivatePort + fastPathPath;
+		observerProxyUrl = "http://" + mmPrivateIP + ":" + mmPrivatePort + observerProxyPath;
 
 		if (!validator.isValid(ddaUrl))
 			throw new ConfigurationException(ddaUrl + " is not a valid URL");
@@ -165,6 +290,39 @@ public class ManagerConfig {
 				+ "\n"
 				+ "\tMonitoring Manager IP Address: "
 				+ mmPrivateIP
+				+ "\n"
+				+ "\tRule installation threads: "
+				+ installThreads
+				+ "\n"
+				+ "\tPane size: "
+				+ paneSize
+				+ "\n"
+				+ "\tFast path: "
+				+ fastPath
+				+ "\n"
+				+ "\tAction threads: "
+				+ actionThreads
+				+ "\n"
+				+ "\tAction queue size: "
+				+ actionQueueSize
+				+ "\n"
+				+ "\tObserver threads: "
+				+ observerThreads
+				+ "\n"
+				+ "\tObserver max failures: "
+				+ observerMaxFailures
+				+ "\n"
+				+ "\tMax streams: "
+				+ maxStreams
+				+ "\n"
+				+ "\tStream buffer size: "
+				+ streamBufferSize
+				+ (outboxDir == null ? "" : "\n\tOutbox directory: "
+						+ outboxDir + "\n\tOutbox size: " + outboxSize
+						+ "\n\tOutbox retention: " + outboxRetention)
+				+ "\n"
+				+ "\tModel chunk size: "
+				+ modelChunkSize
 				+ (monitoringMetricsFileName == null ? ""
 						: "\n\tMonitoring metrics file: "
 								+ monitoringMetricsFileName);
@@ -252,6 +410,110 @@ public class ManagerConfig {
 		return mmPrivatePort;
 	}
 
+	public int getInstallThreads() {
+		return installThreads;
+	}
+
+	public void setInstallThreads(int installThreads) {
+		this.installThreads = installThreads;
+	}
+
+	public int getPaneSize() {
+		return paneSize;
+	}
+
+	public void setPaneSize(int paneSize) {
+		this.paneSize = paneSize;
+	}
+
+	public boolean isFastPath() {
+		return fastPath;
+	}
+
+	public void setFastPath(boolean fastPath) {
+		this.fastPath = fastPath;
+	}
+
+	public int getActionThreads() {
+		return actionThreads;
+	}
+
+	public void setActionThreads(int actionThreads) {
+		this.actionThreads = actionThreads;
+	}
+
+	public int getActionQueueSize() {
+		return actionQueueSize;
+	}
+
+	public void setActionQueueSize(int actionQueueSize) {
+		this.actionQueueSize = actionQueueSize;
+	}
+
+	public int getObserverThreads() {
+		return observerThreads;
+	}
+
+	public void setObserverThreads(int observerThreads) {
+		this.observerThreads = observerThreads;
+	}
+
+	public int getObserverMaxFailures() {
+		return observerMaxFailures;
+	}
+
+	public void setObserverMaxFailures(int observerMaxFailures) {
+		this.observerMaxFailures = observerMaxFailures;
+	}
+
+	public int getMaxStreams() {
+		return maxStreams;
+	}
+
+	public void setMaxStreams(int maxStreams) {
+		this.maxStreams = maxStreams;
+	}
+
+	public int getStreamBufferSize() {
+		return streamBufferSize;
+	}
+
+	public void setStreamBufferSize(int streamBufferSize) {
+		this.streamBufferSize = streamBufferSize;
+	}
+
+	public String getOutboxDir() {
+		return outboxDir;
+	}
+
+	public void setOutboxDir(String outboxDir) {
+		this.outboxDir = outboxDir;
+	}
+
+	public int getOutboxSize() {
+		return outboxSize;
+	}
+
+	public void setOutboxSize(int outboxSize) {
+		this.outboxSize = outboxSize;
+	}
+
+	public int getOutboxRetention() {
+		return outboxRetention;
+	}
+
+	public void setOutboxRetention(int outboxRetention) {
+		this.outboxRetention = outboxRetention;
+	}
+
+	public int getModelChunkSize() {
+		return modelChunkSize;
+	}
+
+	public void setModelChunkSize(int modelChunkSize) {
+		this.modelChunkSize = modelChunkSize;
+	}
+
 	private String getEnvVar(String varName, String defaultValue) {
 		String var = System.getProperty(varName);
 		if (var == null)
@@ -315,6 +577,18 @@ public class ManagerConfig {
 		return actionsExecutorPath;
 	}
 
+	public String getPaneResultsPath() {
+		return paneResultsPath;
+	}
+
+	public String getFastPathPath() {
+		return fastPathPath;
+	}
+
+	public String getObserverProxyPath() {
+		return observerProxyPath;
+	}
+
 	
 
 }
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+public class ActionsDataServer extends ServerResource {
+
+	private Logger logger = LoggerFactory.getLogger(ActionsDataServer.class
+			.getName());
+
+	@Get
+	public void getActionsStats() {
+		try {
+			MonitoringManager manager = (MonitoringManager) getContext()
+					.getAttributes().get("manager");
+			String json = new Gson().toJson(manager.getActionExecutor()
+					.getStats());
+			this.getResponse().setStatus(Status.SUCCESS_OK);
+			this.getResponse().setEntity(json, MediaType.APPLICATION_JSON);
+		} catch (Exception e) {
+			logger.error("Error while getting actions statistics", e);
+			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+					e.getMessage());
+			this.getResponse().setEntity(
+					"Error while getting actions statistics: " + e.toString(),
+					MediaType.TEXT_PLAIN);
+		} finally {
+			this.getResponse().commit();
+			this.commit();
+			this.release();
+		}
+	}
+}
@@ -16,17 +16,20 @@
  */
 package it.polimi.modaclouds.monitoring.monitoring_manager.server;
 
-import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ActionExecutor;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringDataParser;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringDatum;
 import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
 import it.polimi.modaclouds.qos_models.monitoring_rules.AbstractAction;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.restlet.data.MediaType;
 import org.restlet.data.Status;
@@ -37,42 +40,50 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.stream.JsonReader;
+import com.google.gson.JsonObject;
 
 public class ActionsExecutorServer extends ServerResource {
 
 	private static Logger logger = LoggerFactory
 			.getLogger(ActionsExecutorServer.class);
 
+	private static final ThreadLocal<MonitoringDataParser> parser = new ThreadLocal<MonitoringDataParser>() {
+		@Override
+		protected MonitoringDataParser initialValue() {
+			return new MonitoringDataParser();
+		}
+	};
+
 	@Post
 	public void performAction(Representation rep) {
 		try {
-			String json = rep.getText();
-			logger.debug("Received json object: {}", json);
 			MonitoringManager manager = (MonitoringManager) getContext()
 					.getAttributes().get("manager");
-			List<MonitoringDatum> monitoringData = jsonToMonitoringDatum(json);
+			List<MonitoringDatum> monitoringData = parser.get().parse(
+					rep.getReader());
+			logger.debug("Received {} monitoring data", monitoringData.size());
 			if (!monitoringData.isEmpty()) {
-				MonitoringDatum datum = monitoringData.get(0);
-				String metric = datum.metric;
-				String ruleId = metric.substring(metric.indexOf("_") + 1);
-				AbstractAction actionImpl = manager
-						.getActionImplByRuleId(ruleId);
-				if (actionImpl != null) {
-					logger.info("Action {} requested by rule {}",
-							actionImpl.getName(), ruleId);
-					actionImpl.execute(datum.resourceId, datum.value,
-							datum.timestamp);
-					this.getResponse().setStatus(Status.SUCCESS_NO_CONTENT);
-				} else {
-					logger.error(
-							"An action request was requested by (supposingly) rule {}. "
-									+ "However such rule is not installed in the platform.",
-							ruleId);
-					this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
-							"Rule " + ruleId + " doesn't exist");
+				List<ActionOutcome> outcomes = performActions(manager,
+						monitoringData);
+				boolean failed = false;
+				boolean rejected = false;
+				for (ActionOutcome outcome : outcomes) {
+					failed |= outcome.isFailed();
+					rejected |= outcome.isRejected();
 				}
+				JsonObject json = new JsonObject();
+				json.add("outcomes", new Gson().toJsonTree(outcomes));
+				if (rejected)
+					this.getResponse().setStatus(
+							Status.SERVER_ERROR_SERVICE_UNAVAILABLE,
+							"Some actions were rejected, the action queue is full");
+				else if (failed)
+					this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+							"Some actions could not be executed");
+				else
+					this.getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+				this.getResponse().setEntity(json.toString(),
+						MediaType.APPLICATION_JSON);
 			} else {
 				logger.warn("Empty monitoring data json object received");
 				this.getResponse().setStatus(Status.SUCCESS_NO_CONTENT);
@@ -91,94 +102,149 @@ public class ActionsExecutorServer extends ServerResource {
 		}
 	}
 
-	static List<MonitoringDatum> jsonToMonitoringDatum(String json)
-			throws IOException {
-		JsonReader reader = new JsonReader(new StringReader(json));
-		Type type = new TypeToken<Map<String, Map<String, List<Map<String, String>>>>>() {
-		}.getType();
-		Map<String, Map<String, List<Map<String, String>>>> jsonMonitoringData = new Gson()
-				.fromJson(reader, type);
-		List<MonitoringDatum> monitoringData = new ArrayList<MonitoringDatum>();
-		if (jsonMonitoringData.isEmpty()) {
-			return monitoringData;
+	/**
+	 * Groups the data by the rule that produced them, looking each rule up
+	 * once, then submits the action of each rule for all of its data to the
+	 * action executor, without waiting for them to be executed.
+	 * 
+	 * @return the outcome of each datum, in the order data were received
+	 */
+	static List<ActionOutcome> performActions(MonitoringManager manager,
+			List<MonitoringDatum> monitoringData) {
+		ActionExecutor executor = manager.getActionExecutor();
+		ActionOutcome[] outcomes = new ActionOutcome[monitoringData.size()];
+		Map<String, List<Integer>> dataIndexesByRuleId = new LinkedHashMap<String, List<Integer>>();
+		String previousMetric = null;
+		List<Integer> previousIndexes = null;
+		for (int i = 0; i < monitoringData.size(); i++) {
+			String metric = monitoringData.get(i).getMetric();
+			if (metric == null) {
+				outcomes[i] = new ActionOutcome(i, null, monitoringData.get(i)
+						.getResourceId(), ActionOutcome.FAILED,
+						"Missing metric");
+				continue;
+			}
+			// data of the same rule are usually contiguous
+			if (!metric.equals(previousMetric)) {
+				String ruleId = getRuleId(metric);
+				previousIndexes = dataIndexesByRuleId.get(ruleId);
+				if (previousIndexes == null) {
+					previousIndexes = new ArrayList<Integer>();
+					dataIndexesByRuleId.put(ruleId, previousIndexes);
+				}
+				previousMetric = metric;
+			}
+			previousIndexes.add(i);
 		}
-		for (Map<String, List<Map<String, String>>> jsonMonitoringDatum : jsonMonitoringData
-				.values()) {
-			MonitoringDatum datum = new MonitoringDatum();
-			datum.setMetric(nullable(
-					jsonMonitoringDatum.get(DDAOntology.metric.toString()))
-					.get(0).get("value"));
-			datum.setTimestamp(nullable(
-					jsonMonitoringDatum.get(DDAOntology.timestamp.toString()))
-					.get(0).get("value"));
-			datum.setValue(nullable(
-					jsonMonitoringDatum.get(DDAOntology.value.toString())).get(
-					0).get("value"));
-			datum.setResourceId(nullable(
-					jsonMonitoringDatum.get(DDAOntology.resourceId.toString()))
-					.get(0).get("value"));
-			monitoringData.add(datum);
+		for (Entry<String, List<Integer>> entry : dataIndexesByRuleId
+				.entrySet()) {
+			String ruleId = entry.getKey();
+			AbstractAction actionImpl = manager.getActionImplByRuleId(ruleId);
+			if (actionImpl == null) {
+				logger.error(
+						"An action request was requested by (supposingly) rule {}. "
+								+ "However such rule is not installed in the platform.",
+						ruleId);
+			} else {
+				logger.info("Action {} requested by rule {} for {} resource(s)",
+						actionImpl.getName(), ruleId, entry.getValue().size());
+			}
+			for (int i : entry.getValue()) {
+				MonitoringDatum datum = monitoringData.get(i);
+				if (actionImpl == null) {
+					outcomes[i] = new ActionOutcome(i, ruleId,
+							datum.getResourceId(), ActionOutcome.FAILED,
+							"Rule " + ruleId + " doesn't exist");
+					continue;
+				}
+				if (executor.submit(ruleId, actionImpl,
+						nullable(datum.getResourceId()),
+						formatValue(datum.getValue()),
+						formatTimestamp(datum.getTimestamp())))
+					outcomes[i] = new ActionOutcome(i, ruleId,
+							datum.getResourceId(), ActionOutcome.QUEUED, null);
+				else
+					outcomes[i] = new ActionOutcome(i, ruleId,
+							datum.getResourceId(), ActionOutcome.REJECTED,
+							"The action queue is full");
+			}
 		}
-		return monitoringData;
+		return Arrays.asList(outcomes);
 	}
 
-	private static List<Map<String, String>> nullable(
-			List<Map<String, String>> list) {
-		if (list != null)
-			return list;
-		else {
-			List<Map<String, String>> emptyValueList = new ArrayList<Map<String, String>>();
-			Map<String, String> emptyValueMap = new HashMap<String, String>();
-			emptyValueMap.put("value", "");
-			emptyValueList.add(emptyValueMap);
-			return emptyValueList;
-		}
+	private static String getRuleId(String metric) {
+		return metric.substring(metric.indexOf("_") + 1);
 	}
 
-	static class MonitoringDatum {
+	static List<MonitoringDatum> jsonToMonitoringDatum(String json)
+			throws IOException {
+		return new MonitoringDataParser().parse(new StringReader(json));
+	}
 
-		String resourceId;
-		String metric;
-		String timestamp;
-		String value;
+	private static String nullable(String value) {
+		return value != null ? value : "";
+	}
 
-		public String getResourceId() {
-			return resourceId;
-		}
+	/**
+	 * Actions get the value as it was sent by the DDA, integral values
+	 * without decimals.
+	 */
+	static String formatValue(double value) {
+		if (Double.isNaN(value))
+			return "";
+		if (value == Math.rint(value) && !Double.isInfinite(value)
+				&& Math.abs(value) < Long.MAX_VALUE)
+			return Long.toString((long) value);
+		return Double.toString(value);
+	}
 
-		public void setResourceId(String resourceId) {
-			this.resourceId = resourceId;
-		}
+	static String formatTimestamp(long timestamp) {
+		return timestamp != 0 ? Long.toString(timestamp) : "";
+	}
+
+	static class ActionOutcome {
+
+		static final String QUEUED = "queued";
+		static final String REJECTED = "rejected";
+		static final String FAILED = "failed";
 
-		public String getMetric() {
-			return metric;
+		private int index;
+		private String ruleId;
+		private String resourceId;
+		private String status;
+		private String error;
+
+		ActionOutcome(int index, String ruleId, String resourceId,
+				String status, String error) {
+			this.index = index;
+			this.ruleId = ruleId;
+			this.resourceId = resourceId;
+			this.status = status;
+			this.error = error;
 		}
 
-		public void setMetric(String metric) {
-			this.metric = metric;
+		boolean isFailed() {
+			return FAILED.equals(status);
 		}
 
-		public String getTimestamp() {
-			return timestamp;
+		boolean isRejected() {
+			return REJECTED.equals(status);
 		}
 
-		public void setTimestamp(String timestamp) {
-			this.timestamp = timestamp;
+		String getRuleId() {
+			return ruleId;
 		}
 
-		public String getValue() {
-			return value;
+		String getResourceId() {
+			return resourceId;
 		}
 
-		public void setValue(String value) {
-			this.value = value;
+		String getError() {
+			return error;
 		}
 
-		@Override
-		public String toString() {
-			return "MonitoringDatum [resourceId=" + resourceId + ", metric="
-					+ metric + ", timestamp=" + timestamp + ", value=" + value
-					+ "]";
+		int getIndex() {
+			return index;
 		}
 
 	}
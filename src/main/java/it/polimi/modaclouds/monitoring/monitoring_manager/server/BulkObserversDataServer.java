@@ -0,0 +1,225 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+import it.polimi.modaclouds.monitoring.monitoring_manager.Observer;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ObserverRegistration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Delete;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Registers and removes many observers, of any metric, in a single request.
+ * The outcome of each item is reported separately.
+ */
+public class BulkObserversDataServer extends ServerResource {
+
+	private static final String REMOVED = "removed";
+	private static final String NOT_FOUND = "not found";
+	private static final String FAILED = "failed";
+
+	private Logger logger = LoggerFactory
+			.getLogger(BulkObserversDataServer.class.getName());
+
+	@Post
+	public void addObservers(Representation rep) {
+		try {
+			MonitoringManager manager = (MonitoringManager) getContext()
+					.getAttributes().get("manager");
+			JsonArray jsonObservers;
+			try {
+				JsonObject jsonPayload = new JsonParser().parse(
+						rep.getText()).getAsJsonObject();
+				if (!jsonPayload.has("observers"))
+					throw new IllegalArgumentException(
+							"The list of observers is missing");
+				jsonObservers = jsonPayload.getAsJsonArray("observers");
+			} catch (JsonParseException | IllegalStateException
+					| ClassCastException e) {
+				throw new IllegalArgumentException("Invalid payload: "
+						+ e.getMessage(), e);
+			}
+			List<ObserverRegistration> registrations = new ArrayList<ObserverRegistration>();
+			for (JsonElement jsonObserver : jsonObservers) {
+				registrations.add(toRegistration(jsonObserver));
+			}
+			manager.addObservers(registrations);
+
+			Gson gson = new Gson();
+			JsonArray results = new JsonArray();
+			int created = 0;
+			for (int i = 0; i < registrations.size(); i++) {
+				ObserverRegistration registration = registrations.get(i);
+				JsonObject result = new JsonObject();
+				result.addProperty("index", i);
+				result.addProperty("metric", registration.getMetric());
+				result.addProperty("callbackUrl",
+						registration.getCallbackUrl());
+				result.addProperty("status", registration.getStatus());
+				if (registration.getObserver() != null) {
+					result.add("observer",
+							gson.toJsonTree(registration.getObserver()));
+					created++;
+				} else {
+					result.addProperty("error", registration.getError());
+				}
+				results.add(result);
+			}
+			logger.info("{} of {} observer(s) added", created,
+					registrations.size());
+			JsonObject json = new JsonObject();
+			json.add("results", results);
+			this.getResponse().setStatus(Status.SUCCESS_OK);
+			this.getResponse().setEntity(json.toString(),
+					MediaType.APPLICATION_JSON);
+		} catch (IllegalArgumentException e) {
+			logger.error("Invalid observers: {}", e.getMessage());
+			this.getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST,
+					e.getMessage());
+			this.getResponse().setEntity(e.getMessage(),
+					MediaType.TEXT_PLAIN);
+		} catch (Exception e) {
+			logger.error("Error while adding observers", e);
+			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+					e.getMessage());
+			this.getResponse().setEntity(
+					"Error while adding observers: " + e.getMessage(),
+					MediaType.TEXT_PLAIN);
+		} finally {
+			this.getResponse().commit();
+			this.commit();
+			this.release();
+		}
+	}
+
+	/**
+	 * Removes the observers with the given comma separated ids and all the
+	 * observers with the given callback url.
+	 */
+	@Delete
+	public void deleteObservers() {
+		try {
+			MonitoringManager manager = (MonitoringManager) getContext()
+					.getAttributes().get("manager");
+			String ids = getQueryValue("ids");
+			String callbackUrl = getQueryValue("callbackUrl");
+			if (ids == null && callbackUrl == null)
+				throw new IllegalArgumentException(
+						"Either ids or callbackUrl must be specified");
+			Set<String> observerIds = new LinkedHashSet<String>();
+			if (ids != null) {
+				for (String id : ids.split(",")) {
+					if (!id.trim().isEmpty())
+						observerIds.add(id.trim());
+				}
+			}
+			if (callbackUrl != null) {
+				for (Observer observer : manager
+						.getObserversByCallbackUrl(callbackUrl)) {
+					observerIds.add(observer.getId());
+				}
+			}
+
+			JsonArray results = new JsonArray();
+			for (String id : observerIds) {
+				JsonObject result = new JsonObject();
+				result.addProperty("id", id);
+				try {
+					String metric = manager.removeObserver(id);
+					if (metric != null) {
+						result.addProperty("metric", metric);
+						result.addProperty("status", REMOVED);
+					} else {
+						result.addProperty("status", NOT_FOUND);
+					}
+				} catch (Exception e) {
+					logger.error("Error while deleting observer {}", id, e);
+					result.addProperty("status", FAILED);
+					result.addProperty("error", e.getMessage());
+				}
+				results.add(result);
+			}
+			JsonObject json = new JsonObject();
+			json.add("results", results);
+			this.getResponse().setStatus(Status.SUCCESS_OK);
+			this.getResponse().setEntity(json.toString(),
+					MediaType.APPLICATION_JSON);
+		} catch (IllegalArgumentException e) {
+			logger.error(e.getMessage());
+			this.getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST,
+					e.getMessage());
+			this.getResponse().setEntity(e.getMessage(),
+					MediaType.TEXT_PLAIN);
+		} catch (Exception e) {
+			logger.error("Error while deleting observers", e);
+			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+					e.getMessage());
+			this.getResponse().setEntity(
+					"Error while deleting observers: " + e.getMessage(),
+					MediaType.TEXT_PLAIN);
+		} finally {
+			this.getResponse().commit();
+			this.commit();
+			this.release();
+		}
+	}
+
+	static ObserverRegistration toRegistration(JsonElement element) {
+		if (!element.isJsonObject())
+			return ObserverRegistration.invalid(null, null,
+					"An observer must be a json object");
+		JsonObject jsonObserver = element.getAsJsonObject();
+		String metric = getString(jsonObserver, "metric");
+		if (metric == null)
+			return ObserverRegistration.invalid(null,
+					getString(jsonObserver, "callbackUrl"),
+					"The metric is missing");
+		try {
+			return MultipleObserversDataServer.toRegistration(metric,
+					jsonObserver);
+		} catch (IllegalArgumentException e) {
+			return ObserverRegistration.invalid(metric,
+					getString(jsonObserver, "callbackUrl"), e.getMessage());
+		}
+	}
+
+	private static String getString(JsonObject json, String member) {
+		JsonElement element = json.get(member);
+		return element != null && element.isJsonPrimitive() ? element
+				.getAsString() : null;
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringDataParser;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringDatum;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives the raw data forwarded by the DDA to the fast path engine.
+ */
+public class FastPathServer extends ServerResource {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(FastPathServer.class);
+
+	private static final ThreadLocal<MonitoringDataParser> parser = new ThreadLocal<MonitoringDataParser>() {
+		@Override
+		protected MonitoringDataParser initialValue() {
+			return new MonitoringDataParser();
+		}
+	};
+
+	@Post
+	public void addData(Representation rep) {
+		try {
+			MonitoringManager manager = (MonitoringManager) getContext()
+					.getAttributes().get("manager");
+			// the engine keeps primitive copies of the data, so data objects
+			// can be reused by the next request
+			Map<String, List<MonitoringDatum>> dataByMetric = groupByMetric(parser
+					.get().parse(rep.getReader()));
+			for (Entry<String, List<MonitoringDatum>> entry : dataByMetric
+					.entrySet()) {
+				manager.addRawData(entry.getKey(), entry.getValue());
+			}
+			this.getResponse().setStatus(Status.SUCCESS_NO_CONTENT);
+		} catch (Exception e) {
+			logger.error("Error while adding data to the fast path engine", e);
+			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+					e.getMessage());
+			this.getResponse().setEntity(
+					"Error while adding data to the fast path engine: "
+							+ e.toString(), MediaType.TEXT_PLAIN);
+		} finally {
+			this.getResponse().commit();
+			this.commit();
+			this.release();
+		}
+	}
+
+	static Map<String, List<MonitoringDatum>> groupByMetric(
+			List<MonitoringDatum> data) {
+		Map<String, List<MonitoringDatum>> dataByMetric = new HashMap<String, List<MonitoringDatum>>();
+		for (MonitoringDatum datum : data) {
+			List<MonitoringDatum> metricData = dataByMetric.get(datum
+					.getMetric());
+			if (metricData == null) {
+				metricData = new ArrayList<MonitoringDatum>();
+				dataByMetric.put(datum.getMetric(), metricData);
+			}
+			metricData.add(datum);
+		}
+		return dataByMetric;
+	}
+
+}
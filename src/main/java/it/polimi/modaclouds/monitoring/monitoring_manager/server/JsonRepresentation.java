@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.zip.GZIPOutputStream;
+
+import org.restlet.data.Encoding;
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Json response written while it is produced rather than materialised, in
+ * buffer-sized chunks and optionally gzip compressed.
+ */
+public abstract class JsonRepresentation extends OutputRepresentation {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final boolean gzip;
+
+	public JsonRepresentation(boolean gzip) {
+		super(MediaType.APPLICATION_JSON);
+		this.gzip = gzip;
+		if (gzip)
+			getEncodings().add(Encoding.GZIP);
+	}
+
+	@Override
+	public void write(OutputStream os) throws IOException {
+		GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(os,
+				BUFFER_SIZE) : null;
+		// the buffer bounds the size of the chunks written to the response
+		JsonWriter writer = new JsonWriter(new BufferedWriter(
+				new OutputStreamWriter(gzipStream != null ? gzipStream : os,
+						"UTF-8"), BUFFER_SIZE));
+		write(writer);
+		writer.flush();
+		if (gzipStream != null)
+			gzipStream.finish();
+	}
+
+	protected abstract void write(JsonWriter writer) throws IOException;
+
+}
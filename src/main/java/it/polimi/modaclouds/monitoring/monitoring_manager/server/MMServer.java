@@ -27,6 +27,7 @@ import org.apache.jena.atlas.web.HttpException;
 import org.restlet.Application;
 import org.restlet.Component;
 import org.restlet.Restlet;
+import org.restlet.Server;
 import org.restlet.data.LocalReference;
 import org.restlet.data.Protocol;
 import org.restlet.resource.Directory;
@@ -41,6 +42,11 @@ public class MMServer extends Application {
 	private Component component;
 	private MonitoringManager manager = null;
 	private static final String apiVersion = "v1";
+	/**
+	 * Threads of the public server serving the REST API, besides the one
+	 * held by each open metric stream.
+	 */
+	private static final int API_THREADS = 10;
 
 	private static Logger logger = LoggerFactory.getLogger(MMServer.class);
 
@@ -73,8 +79,16 @@ public class MMServer extends Application {
 			System.setProperty("org.restlet.engine.loggerFacadeClass",
 					"org.restlet.ext.slf4j.Slf4jLoggerFacade");
 			Component component = new Component();
-			component.getServers().add(Protocol.HTTP,
+			Server server = component.getServers().add(Protocol.HTTP,
 					ManagerConfig.getInstance().getMmPort());
+			// streams hold their thread while they are open, they must not
+			// starve the rest of the API
+			server.getContext()
+					.getParameters()
+					.add("maxThreads",
+							Integer.toString(API_THREADS
+									+ ManagerConfig.getInstance()
+											.getMaxStreams()));
 			component.getClients().add(Protocol.CLAP);
 			component.getDefaultHost().attach("",
 					new MMServer(manager, component));
@@ -133,6 +147,16 @@ public class MMServer extends Application {
 		router.attach(
 				"/" + apiVersion + "/metrics/{metricname}/observers/{id}",
 				SingleObserverDataServer.class);
+		router.attach("/" + apiVersion + "/metrics/{metricname}/stream",
+				MetricStreamServer.class);
+		router.attach("/" + apiVersion + "/observers",
+				BulkObserversDataServer.class);
+
+		router.attach("/" + apiVersion + "/streams",
+				MultipleStreamsDataServer.class);
+
+		router.attach("/" + apiVersion + "/actions",
+				ActionsDataServer.class);
 
 		router.attach("/" + apiVersion + "/model/resources",
 				MultipleResourcesDataServer.class);
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.monitoring_manager.MetricDoesNotExistException;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MetricStream;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+import it.polimi.modaclouds.monitoring.monitoring_manager.Observer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the results of a metric to the client as server-sent events, over a
+ * connection kept open until the client disconnects, the metric is removed or
+ * the client falls behind and its buffer fills up.
+ */
+public class MetricStreamServer extends ServerResource {
+
+	private static final long KEEP_ALIVE_SECONDS = 15;
+
+	private Logger logger = LoggerFactory.getLogger(MetricStreamServer.class
+			.getName());
+
+	@Get
+	public void streamMetric() {
+		try {
+			MonitoringManager manager = (MonitoringManager) getContext()
+					.getAttributes().get("manager");
+			String metricname = (String) this.getRequest().getAttributes()
+					.get("metricname");
+			Observer observer = manager.openStream(metricname);
+			if (observer == null) {
+				this.getResponse().setStatus(
+						Status.SERVER_ERROR_SERVICE_UNAVAILABLE,
+						"Too many streams open");
+				this.getResponse().setEntity("Too many streams open",
+						MediaType.TEXT_PLAIN);
+				return;
+			}
+			this.getResponse().setStatus(Status.SUCCESS_OK);
+			this.getResponse().getCacheDirectives()
+					.add(CacheDirective.noCache());
+			this.getResponse().setEntity(
+					new EventStreamRepresentation(manager, metricname,
+							observer));
+		} catch (MetricDoesNotExistException e) {
+			logger.error("The metric does not exist", e);
+			this.getResponse().setStatus(Status.CLIENT_ERROR_NOT_FOUND,
+					"The metric does not exist");
+			this.getResponse().setEntity("The metric does not exist",
+					MediaType.TEXT_PLAIN);
+		} catch (Exception e) {
+			logger.error("Error while opening the stream", e);
+			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+					e.getMessage());
+			this.getResponse().setEntity(
+					"Error while opening the stream: " + e.getMessage(),
+					MediaType.TEXT_PLAIN);
+		} finally {
+			this.getResponse().commit();
+			this.commit();
+			this.release();
+		}
+	}
+
+	private static class EventStreamRepresentation extends
+			OutputRepresentation {
+
+		private final MonitoringManager manager;
+		private final String metricname;
+		private final Observer observer;
+
+		private EventStreamRepresentation(MonitoringManager manager,
+				String metricname, Observer observer) {
+			super(MediaType.valueOf("text/event-stream"));
+			this.manager = manager;
+			this.metricname = metricname;
+			this.observer = observer;
+		}
+
+		@Override
+		public void write(OutputStream os) throws IOException {
+			MetricStream stream = observer.getStream();
+			try {
+				os.write(comment("stream " + observer.getId()));
+				os.flush();
+				while (true) {
+					byte[] payload = stream.poll(KEEP_ALIVE_SECONDS,
+							TimeUnit.SECONDS);
+					if (stream.isClosed()) {
+						os.write(("event: close\ndata: "
+								+ stream.getCloseReason() + "\n\n")
+								.getBytes("UTF-8"));
+						os.flush();
+						break;
+					}
+					os.write(payload != null ? payload
+							: comment("keep-alive"));
+					os.flush();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				manager.closeStream(metricname, observer);
+			}
+		}
+
+		private static byte[] comment(String comment) throws IOException {
+			return (": " + comment + "\n\n").getBytes("UTF-8");
+		}
+
+	}
+}
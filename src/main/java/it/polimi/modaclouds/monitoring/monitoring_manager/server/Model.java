@@ -25,7 +25,10 @@ import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
 import it.polimi.modaclouds.qos_models.monitoring_ontology.VM;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -38,6 +41,22 @@ public class Model {
 	private Set<PaaSService> paaSServices;
 	private Set<InternalComponent> internalComponents;
 	private Set<Method> methods;
+
+	/**
+	 * The json fields of a model and the class of the resources they hold.
+	 */
+	static final Map<String, Class<? extends Resource>> FIELDS;
+
+	static {
+		Map<String, Class<? extends Resource>> fields = new LinkedHashMap<String, Class<? extends Resource>>();
+		fields.put("cloudProviders", CloudProvider.class);
+		fields.put("locations", Location.class);
+		fields.put("vMs", VM.class);
+		fields.put("paaSServices", PaaSService.class);
+		fields.put("internalComponents", InternalComponent.class);
+		fields.put("methods", Method.class);
+		FIELDS = Collections.unmodifiableMap(fields);
+	}
 	
 	public void add(CloudProvider cloudProvider) {
 		if (cloudProviders == null) cloudProviders = new HashSet<CloudProvider>();
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Parses a model in the json format of {@link Model} one resource at a time,
+ * while it is read, so that the model is never materialised. Resources are
+ * only read from the underlying reader when they are requested, hence a
+ * consumer that is slow at processing them slows down the reading as well.
+ * <p>
+ * Malformed json is reported by throwing {@link JsonSyntaxException}, errors
+ * while reading by throwing {@link JsonIOException}.
+ */
+public class ModelReader implements Iterator<Resource>, Closeable {
+
+	private final JsonReader reader;
+	private final Gson gson = new Gson();
+	private boolean started;
+	private boolean finished;
+	private Class<? extends Resource> currentClass;
+	private Resource next;
+
+	public ModelReader(Reader reader) {
+		this.reader = new JsonReader(reader);
+		// as lenient as Gson.fromJson(String), used to parse models before
+		this.reader.setLenient(true);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !finished) {
+			try {
+				next = advance();
+			} catch (MalformedJsonException e) {
+				throw new JsonSyntaxException(e);
+			} catch (IllegalStateException e) {
+				throw new JsonSyntaxException(e);
+			} catch (IOException e) {
+				throw new JsonIOException(e);
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public Resource next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Resource resource = next;
+		next = null;
+		return resource;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private Resource advance() throws IOException {
+		if (!started) {
+			started = true;
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				finished = true;
+				return null;
+			}
+			reader.beginObject();
+		}
+		while (true) {
+			if (currentClass != null) {
+				if (reader.hasNext()) {
+					Resource resource = gson.fromJson(reader, currentClass);
+					if (resource != null)
+						return resource;
+					continue;
+				}
+				reader.endArray();
+				currentClass = null;
+			}
+			if (!reader.hasNext()) {
+				reader.endObject();
+				finished = true;
+				return null;
+			}
+			Class<? extends Resource> fieldClass = Model.FIELDS.get(reader
+					.nextName());
+			if (fieldClass == null || reader.peek() == JsonToken.NULL) {
+				reader.skipValue();
+				continue;
+			}
+			reader.beginArray();
+			currentClass = fieldClass;
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes the current model to the response as it is read from the model
+ * mirror, one resource at a time, in the same json format as {@link Model}.
+ * Neither the model nor the response is ever materialised, so the memory used
+ * by a request does not depend on the size of the model.
+ */
+public class ModelRepresentation extends JsonRepresentation {
+
+	private final MonitoringManager manager;
+	private final Gson gson = new Gson();
+
+	public ModelRepresentation(MonitoringManager manager, boolean gzip) {
+		super(gzip);
+		this.manager = manager;
+	}
+
+	@Override
+	protected void write(JsonWriter writer) throws IOException {
+		writer.beginObject();
+		for (Entry<String, Class<? extends Resource>> field : Model.FIELDS
+				.entrySet()) {
+			Iterator<Resource> resources = manager.getResourcesByClass(
+					field.getValue().getSimpleName()).iterator();
+			// empty fields are omitted, as Gson does for null sets
+			if (!resources.hasNext())
+				continue;
+			writer.name(field.getKey());
+			writer.beginArray();
+			while (resources.hasNext()) {
+				Resource resource = resources.next();
+				gson.toJson(resource, resource.getClass(), writer);
+			}
+			writer.endArray();
+		}
+		writer.endObject();
+	}
+
+}
@@ -19,6 +19,9 @@ package it.polimi.modaclouds.monitoring.monitoring_manager.server;
 import it.polimi.modaclouds.monitoring.monitoring_manager.MetricDoesNotExistException;
 import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
 import it.polimi.modaclouds.monitoring.monitoring_manager.Observer;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ObserverBatching;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ObserverFilter;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ObserverRegistration;
 
 import java.net.MalformedURLException;
 import java.util.Set;
@@ -33,7 +36,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
 public class MultipleObserversDataServer extends ServerResource {
 	
@@ -46,8 +52,25 @@ public class MultipleObserversDataServer extends ServerResource {
 			MonitoringManager manager = (MonitoringManager) getContext()
 					.getAttributes().get("manager");
 			String metricname = (String) this.getRequest().getAttributes().get("metricname");
-			String callbackUrl = rep.getText();
-			Observer observer = manager.addObserver(metricname, callbackUrl);
+			String payload = rep.getText();
+			ObserverRegistration registration;
+			if (payload != null && payload.trim().startsWith("{")) {
+				JsonObject jsonPayload;
+				try {
+					jsonPayload = new JsonParser().parse(payload)
+							.getAsJsonObject();
+				} catch (JsonParseException e) {
+					throw new IllegalArgumentException(
+							"Invalid observer payload: " + e.getMessage(), e);
+				}
+				registration = toRegistration(metricname, jsonPayload);
+			} else {
+				registration = new ObserverRegistration(metricname, payload,
+						null, null, null);
+			}
+			Observer observer = manager.addObserver(metricname,
+					registration.getCallbackUrl(), registration.getFilter(),
+					registration.getBatching(), registration.getFormat());
 			String json = new Gson().toJson(observer);
 			this.getResponse().setStatus(Status.SUCCESS_CREATED);
 			this.getResponse().setEntity(json, MediaType.APPLICATION_JSON);
@@ -63,6 +86,12 @@ public class MultipleObserversDataServer extends ServerResource {
 					e.getMessage());
 			this.getResponse().setEntity(e.getMessage(),
 					MediaType.TEXT_PLAIN);
+		} catch (IllegalArgumentException e) {
+			logger.error("Invalid observer: {}", e.getMessage());
+			this.getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST,
+					e.getMessage());
+			this.getResponse().setEntity(e.getMessage(),
+					MediaType.TEXT_PLAIN);
 		} catch (Exception e) {
 			logger.error("Error while adding observer", e);
 			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
@@ -77,6 +106,40 @@ public class MultipleObserversDataServer extends ServerResource {
 		}
 	}
 	
+	/**
+	 * Reads the callback url, filter, batching options and format of an
+	 * observer from its json representation.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the representation is not valid
+	 */
+	static ObserverRegistration toRegistration(String metricname,
+			JsonObject jsonObserver) {
+		try {
+			if (!jsonObserver.has("callbackUrl"))
+				throw new IllegalArgumentException("The callbackUrl is missing");
+			String callbackUrl = jsonObserver.get("callbackUrl").getAsString();
+			ObserverFilter filter = new Gson().fromJson(jsonObserver,
+					ObserverFilter.class);
+			String format = null;
+			if (jsonObserver.has("format"))
+				format = jsonObserver.get("format").getAsString();
+			ObserverBatching batching = null;
+			if (jsonObserver.has("batch"))
+				batching = new Gson().fromJson(jsonObserver.get("batch"),
+						ObserverBatching.class);
+			filter.init();
+			if (batching != null)
+				batching.init();
+			return new ObserverRegistration(metricname, callbackUrl, filter,
+					batching, format);
+		} catch (JsonParseException | IllegalStateException
+				| UnsupportedOperationException e) {
+			throw new IllegalArgumentException("Invalid observer payload: "
+					+ e.getMessage(), e);
+		}
+	}
+
 	@Get
 	public void getObservers() {
 		try {
@@ -85,8 +148,18 @@ public class MultipleObserversDataServer extends ServerResource {
 			String metricname = (String) this.getRequest().getAttributes().get("metricname");
 			
 			Set<Observer> observers = manager.getObservers(metricname);
+			Gson gson = new Gson();
+			JsonArray jsonObservers = new JsonArray();
+			for (Observer observer : observers) {
+				JsonObject jsonObserver = gson.toJsonTree(observer)
+						.getAsJsonObject();
+				if (observer.getHealth() != null)
+					jsonObserver.add("health",
+							gson.toJsonTree(observer.getHealth().copy()));
+				jsonObservers.add(jsonObserver);
+			}
 			JsonObject json = new JsonObject();
-			json.add("observers", new Gson().toJsonTree(observers));
+			json.add("observers", jsonObservers);
 			this.getResponse().setStatus(Status.SUCCESS_CREATED);
 			this.getResponse().setEntity(json.toString(), MediaType.APPLICATION_JSON);
 		} catch (MetricDoesNotExistException e) {
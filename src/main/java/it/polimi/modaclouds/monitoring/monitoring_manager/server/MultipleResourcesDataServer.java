@@ -16,9 +16,20 @@
  */
 package it.polimi.modaclouds.monitoring.monitoring_manager.server;
 
+import it.polimi.modaclouds.monitoring.monitoring_manager.ModelMirror;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ModelUpload;
 import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.restlet.data.Encoding;
 import org.restlet.data.MediaType;
+import org.restlet.data.Preference;
 import org.restlet.data.Status;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
@@ -29,7 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Throwables;
-import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 
 public class MultipleResourcesDataServer extends ServerResource {
@@ -37,15 +48,76 @@ public class MultipleResourcesDataServer extends ServerResource {
 	private Logger logger = LoggerFactory
 			.getLogger(MultipleResourcesDataServer.class);
 
+	/**
+	 * Query parameters filtering resources, each on the indexed property of
+	 * the model with the same name.
+	 */
+	private static final String[] FILTERS = new String[] { ModelMirror.CLASS,
+			ModelMirror.TYPE, ModelMirror.CLOUD_PROVIDER,
+			ModelMirror.REQUIRED_COMPONENT };
+
+	/**
+	 * Returns the whole model, or a page of the resources matching the given
+	 * filters if any query parameter is specified.
+	 */
 	@Get
 	public void getResources() {
 		try {
 			MonitoringManager manager = (MonitoringManager) getContext()
 					.getAttributes().get("manager");
-			Model model = manager.getCurrentModel();
+			Map<String, String> filters = new HashMap<String, String>();
+			for (String filter : FILTERS) {
+				String value = getQueryValue(filter);
+				if (value != null)
+					filters.put(filter, value);
+			}
+			String limitParam = getQueryValue("limit");
+			String cursor = getQueryValue("cursor");
+			String fieldsParam = getQueryValue("fields");
 			this.getResponse().setStatus(Status.SUCCESS_OK);
-			this.getResponse().setEntity(new Gson().toJson(model),
-					MediaType.APPLICATION_JSON);
+			if (filters.isEmpty() && limitParam == null && cursor == null
+					&& fieldsParam == null) {
+				this.getResponse().setEntity(
+						new ModelRepresentation(manager, acceptsGzip()));
+				return;
+			}
+
+			int limit = Integer.MAX_VALUE;
+			if (limitParam != null) {
+				try {
+					limit = Integer.parseInt(limitParam);
+				} catch (NumberFormatException e) {
+					limit = 0;
+				}
+				if (limit <= 0)
+					throw new IllegalArgumentException(
+							"The limit must be a positive number");
+			}
+			Set<String> fields = null;
+			if (fieldsParam != null) {
+				fields = new HashSet<String>();
+				for (String field : fieldsParam.split(",")) {
+					if (!field.trim().isEmpty())
+						fields.add(field.trim());
+				}
+			}
+			// one more resource tells whether there is a next page
+			List<Resource> resources = manager.findResources(filters, cursor,
+					limit == Integer.MAX_VALUE ? limit : limit + 1);
+			String nextCursor = null;
+			if (resources.size() > limit) {
+				resources = resources.subList(0, limit);
+				nextCursor = resources.get(limit - 1).getId();
+			}
+			this.getResponse().setEntity(
+					new ResourcesRepresentation(resources, nextCursor, fields,
+							acceptsGzip()));
+		} catch (IllegalArgumentException e) {
+			logger.error(e.getMessage());
+			this.getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST,
+					e.getMessage());
+			this.getResponse().setEntity(e.getMessage(),
+					MediaType.TEXT_PLAIN);
 		} catch (Exception e) {
 			logger.error("Error while getting current model", e);
 			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
@@ -60,17 +132,27 @@ public class MultipleResourcesDataServer extends ServerResource {
 		}
 	}
 
+	private boolean acceptsGzip() {
+		for (Preference<Encoding> encoding : getRequest().getClientInfo()
+				.getAcceptedEncodings()) {
+			if (Encoding.GZIP.equals(encoding.getMetadata())
+					&& encoding.getQuality() > 0)
+				return true;
+		}
+		return false;
+	}
+
 	@Post
 	public void updateResources(Representation rep) {
 		try {
 			MonitoringManager manager = (MonitoringManager) getContext()
 					.getAttributes().get("manager");
-			String payload = rep.getText();
-
-			Gson gson = new Gson();
-			Model deserialised = gson.fromJson(payload, Model.class);
-
-			manager.updateModel(deserialised);
+			ModelReader resources = new ModelReader(rep.getReader());
+			try {
+				manager.updateModel(resources);
+			} finally {
+				resources.close();
+			}
 			this.getResponse().setStatus(Status.SUCCESS_NO_CONTENT);
 
 		} catch (JsonSyntaxException e) {
@@ -99,16 +181,24 @@ public class MultipleResourcesDataServer extends ServerResource {
 			// invoking manager and payload of the post request
 			MonitoringManager manager = (MonitoringManager) getContext()
 					.getAttributes().get("manager");
-			String payload = rep.getText();
-
-			// deserialisation from json to ModelUpdates.class
-			Gson gson = new Gson();
-			Model deserialised = gson.fromJson(payload, Model.class);
-
-			// upload the new model in the knowledge base and responde to the
-			// request
-			manager.uploadModel(deserialised);
-			this.getResponse().setStatus(Status.SUCCESS_NO_CONTENT);
+			// resources are parsed while they are uploaded in the
+			// knowledge base, only the changes brought by the new model are
+			// written
+			ModelReader resources = new ModelReader(rep.getReader());
+			ModelUpload upload;
+			try {
+				upload = manager.uploadModel(resources);
+			} finally {
+				resources.close();
+			}
+			JsonObject json = new JsonObject();
+			json.addProperty("added", upload.getAdded());
+			json.addProperty("updated", upload.getUpdated());
+			json.addProperty("deleted", upload.getDeleted());
+			json.addProperty("unchanged", upload.getUnchanged());
+			this.getResponse().setStatus(Status.SUCCESS_OK);
+			this.getResponse().setEntity(json.toString(),
+					MediaType.APPLICATION_JSON);
 
 		} catch (JsonSyntaxException e) {
 			logger.error("Error while uploading the model: {}", e.getMessage());
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+import it.polimi.modaclouds.monitoring.monitoring_manager.StreamRegistry;
+
+import java.util.Set;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+public class MultipleStreamsDataServer extends ServerResource {
+
+	private Logger logger = LoggerFactory
+			.getLogger(MultipleStreamsDataServer.class.getName());
+
+	@Get
+	public void getStreams() {
+		try {
+			MonitoringManager manager = (MonitoringManager) getContext()
+					.getAttributes().get("manager");
+			StreamRegistry registry = manager.getStreamRegistry();
+			Gson gson = new Gson();
+			JsonArray streams = new JsonArray();
+			for (String streamIri : registry.getStreamIris()) {
+				Set<String> ruleIds = registry.getRuleIds(streamIri);
+				JsonObject stream = new JsonObject();
+				stream.addProperty("iri", streamIri);
+				stream.addProperty("fanIn", ruleIds.size());
+				stream.add("rules", gson.toJsonTree(ruleIds));
+				streams.add(stream);
+			}
+			JsonObject json = new JsonObject();
+			json.add("streams", streams);
+			this.getResponse().setStatus(Status.SUCCESS_OK);
+			this.getResponse().setEntity(json.toString(),
+					MediaType.APPLICATION_JSON);
+		} catch (Exception e) {
+			logger.error("Error while getting streams", e);
+			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+					e.getMessage());
+			this.getResponse().setEntity(
+					"Error while getting streams: " + e.toString(),
+					MediaType.TEXT_PLAIN);
+		} finally {
+			this.getResponse().commit();
+			this.commit();
+			this.release();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives the results of a metric from the single observer the manager
+ * registers on the DDA for that metric, and forwards them as they are to all
+ * the observers of the metric.
+ */
+public class ObserverProxyServer extends ServerResource {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(ObserverProxyServer.class);
+
+	@Post
+	public void forwardToObservers(Representation rep) {
+		try {
+			String metricname = (String) this.getRequest().getAttributes()
+					.get("metricname");
+			String json = rep.getText();
+			logger.debug("Received results for metric {}: {}", metricname,
+					json);
+			MonitoringManager manager = (MonitoringManager) getContext()
+					.getAttributes().get("manager");
+			manager.forwardToObservers(metricname, json);
+			this.getResponse().setStatus(Status.SUCCESS_NO_CONTENT);
+		} catch (Exception e) {
+			logger.error("Error while forwarding results to observers", e);
+			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+					e.getMessage());
+			this.getResponse().setEntity(
+					"Error while forwarding results to observers: "
+							+ e.toString(), MediaType.TEXT_PLAIN);
+		} finally {
+			this.getResponse().commit();
+			this.commit();
+			this.release();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringDataParser;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringManager;
+import it.polimi.modaclouds.monitoring.monitoring_manager.PaneMerger;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Receives the partial aggregates computed by the pane queries registered on
+ * the DDA.
+ */
+public class PaneResultsServer extends ServerResource {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(PaneResultsServer.class);
+
+	private static final String METRIC = DDAOntology.metric.getURI();
+	private static final String RESOURCE_ID = DDAOntology.resourceId
+			.getURI();
+	private static final String VALUE = DDAOntology.value.getURI();
+	private static final String TIMESTAMP = DDAOntology.timestamp.getURI();
+	private static final String COUNT = PaneMerger.paneCount.getURI();
+	private static final String MAX = PaneMerger.paneMax.getURI();
+	private static final String MIN = PaneMerger.paneMin.getURI();
+
+	@Post
+	public void addPanes(Representation rep) {
+		try {
+			String json = rep.getText();
+			logger.debug("Received json object: {}", json);
+			MonitoringManager manager = (MonitoringManager) getContext()
+					.getAttributes().get("manager");
+			Map<String, List<PaneMerger.Pane>> panesByMetric = jsonToPanes(json);
+			for (Entry<String, List<PaneMerger.Pane>> entry : panesByMetric
+					.entrySet()) {
+				manager.addPanes(entry.getKey(), entry.getValue());
+			}
+			this.getResponse().setStatus(Status.SUCCESS_NO_CONTENT);
+		} catch (Exception e) {
+			logger.error("Error while merging panes", e);
+			this.getResponse().setStatus(Status.SERVER_ERROR_INTERNAL,
+					e.getMessage());
+			this.getResponse().setEntity(
+					"Error while merging panes: " + e.toString(),
+					MediaType.TEXT_PLAIN);
+		} finally {
+			this.getResponse().commit();
+			this.commit();
+			this.release();
+		}
+	}
+
+	static Map<String, List<PaneMerger.Pane>> jsonToPanes(String json)
+			throws IOException {
+		Map<String, List<PaneMerger.Pane>> panesByMetric = new HashMap<String, List<PaneMerger.Pane>>();
+		if (json == null || json.trim().isEmpty())
+			return panesByMetric;
+		JsonReader reader = new JsonReader(new StringReader(json));
+		reader.setLenient(true);
+		try {
+			if (reader.peek() == JsonToken.NULL)
+				return panesByMetric;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				reader.nextName();
+				String metric = null;
+				String resourceId = null;
+				String sum = null;
+				String count = null;
+				String max = null;
+				String min = null;
+				String timestamp = null;
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String property = reader.nextName();
+					String value = MonitoringDataParser.readFirstValue(reader);
+					if (property.equals(METRIC)) {
+						metric = value;
+					} else if (property.equals(RESOURCE_ID)) {
+						resourceId = value;
+					} else if (property.equals(VALUE)) {
+						sum = value;
+					} else if (property.equals(COUNT)) {
+						count = value;
+					} else if (property.equals(MAX)) {
+						max = value;
+					} else if (property.equals(MIN)) {
+						min = value;
+					} else if (property.equals(TIMESTAMP)) {
+						timestamp = value;
+					}
+				}
+				reader.endObject();
+				List<PaneMerger.Pane> panes = panesByMetric.get(require(
+						metric, METRIC));
+				if (panes == null) {
+					panes = new ArrayList<PaneMerger.Pane>();
+					panesByMetric.put(metric, panes);
+				}
+				panes.add(new PaneMerger.Pane(require(resourceId, RESOURCE_ID),
+						Double.parseDouble(require(sum, VALUE)),
+						(long) Double.parseDouble(require(count, COUNT)),
+						Double.parseDouble(require(max, MAX)), Double
+								.parseDouble(require(min, MIN)), Long
+								.parseLong(require(timestamp, TIMESTAMP))));
+			}
+			reader.endObject();
+		} catch (IllegalStateException e) {
+			throw new IOException("Malformed panes: " + e.getMessage(), e);
+		} finally {
+			reader.close();
+		}
+		return panesByMetric;
+	}
+
+	private static String require(String value, String property)
+			throws IOException {
+		if (value == null)
+			throw new IOException("Missing " + property + " in pane");
+		return value;
+	}
+
+}
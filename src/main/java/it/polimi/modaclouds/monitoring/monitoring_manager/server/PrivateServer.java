@@ -60,6 +60,12 @@ public class PrivateServer extends Application {
 		
 		router.attach(ManagerConfig.getInstance().getActionExecutorPath(),
 				ActionsExecutorServer.class);
+		router.attach(ManagerConfig.getInstance().getPaneResultsPath(),
+				PaneResultsServer.class);
+		router.attach(ManagerConfig.getInstance().getFastPathPath(),
+				FastPathServer.class);
+		router.attach(ManagerConfig.getInstance().getObserverProxyPath()
+				+ "/{metricname}", ObserverProxyServer.class);
 
 		return router;
 	}
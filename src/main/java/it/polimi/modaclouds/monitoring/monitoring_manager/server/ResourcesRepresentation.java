@@ -0,0 +1,87 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import it.polimi.modaclouds.monitoring.monitoring_manager.ModelMirror;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A page of resources matching a query, each with its class and optionally
+ * projected on a subset of its fields, followed by the cursor of the next
+ * page if there is one.
+ */
+public class ResourcesRepresentation extends JsonRepresentation {
+
+	private final List<Resource> resources;
+	private final String cursor;
+	private final Set<String> fields;
+	private final Gson gson = new Gson();
+
+	/**
+	 * @param cursor
+	 *            the cursor of the next page, null if this is the last one
+	 * @param fields
+	 *            the fields to return beside id and class, null to return all
+	 *            fields
+	 */
+	public ResourcesRepresentation(List<Resource> resources, String cursor,
+			Set<String> fields, boolean gzip) {
+		super(gzip);
+		this.resources = resources;
+		this.cursor = cursor;
+		this.fields = fields;
+	}
+
+	@Override
+	protected void write(JsonWriter writer) throws IOException {
+		writer.beginObject();
+		writer.name("resources");
+		writer.beginArray();
+		for (Resource resource : resources) {
+			JsonObject json = gson.toJsonTree(resource).getAsJsonObject();
+			if (fields != null) {
+				Iterator<Entry<String, JsonElement>> members = json.entrySet()
+						.iterator();
+				while (members.hasNext()) {
+					String name = members.next().getKey();
+					if (!name.equals("id") && !fields.contains(name))
+						members.remove();
+				}
+			}
+			json.add(ModelMirror.CLASS,
+					new JsonPrimitive(resource.getClass().getSimpleName()));
+			gson.toJson(json, writer);
+		}
+		writer.endArray();
+		if (cursor != null)
+			writer.name("cursor").value(cursor);
+		writer.endObject();
+	}
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ActionExecutorTest {
+
+	@Test
+	public void actionsOfTheSameRuleShouldBeExecutedInOrder()
+			throws Exception {
+		ActionExecutor executor = new ActionExecutor(4, 1000);
+		final List<Integer> executed = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(100);
+		for (int i = 0; i < 100; i++) {
+			final int n = i;
+			assertTrue(executor.submit("rule1", "action", "res" + i,
+					new Runnable() {
+						@Override
+						public void run() {
+							executed.add(n);
+							done.countDown();
+						}
+					}));
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, (int) executed.get(i));
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	public void shouldRejectActionsWhenTheLaneIsFull() throws Exception {
+		ActionExecutor executor = new ActionExecutor(1, 1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		Runnable blocking = new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		assertTrue(executor.submit("rule1", "action", null, blocking));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertTrue(executor.submit("rule1", "action", null, blocking));
+		assertFalse(executor.submit("rule2", "action", null, blocking));
+		assertEquals(1, executor.getQueueDepth());
+		assertEquals(1, executor.getStats().getRejected());
+		blocked.countDown();
+		executor.shutdown();
+	}
+
+}
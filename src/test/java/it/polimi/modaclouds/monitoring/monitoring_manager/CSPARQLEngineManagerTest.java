@@ -0,0 +1,283 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import it.polimi.deib.csparql_rest_api.RSP_services_csparql_API;
+import it.polimi.modaclouds.monitoring.monitoring_manager.configuration.ManagerConfig;
+import it.polimi.modaclouds.qos_models.schema.Action;
+import it.polimi.modaclouds.qos_models.schema.Actions;
+import it.polimi.modaclouds.qos_models.schema.CollectedMetric;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTarget;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTargets;
+import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
+import it.polimi.modaclouds.qos_models.schema.Parameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CSPARQLEngineManagerTest {
+
+	private FakeDda dda;
+	private CSPARQLEngineManager manager;
+
+	@Before
+	public void setUp() throws Exception {
+		ManagerConfig.init();
+		dda = new FakeDda();
+		manager = new CSPARQLEngineManager(ManagerConfig.getInstance(),
+				new ModelMirror(), dda);
+	}
+
+	@Test
+	public void rulesShouldBeReinstalledAfterADdaRestart() throws Exception {
+		MonitoringRule rule = createRule("rule1", "myMetric");
+		manager.installRule(rule);
+		manager.addObserver("myMetric", "http://localhost/observer");
+		assertEquals(1, dda.queries.size());
+		assertEquals(1, dda.streams.size());
+		assertEquals(1, dda.observers.size());
+
+		dda.restart();
+		try {
+			manager.uninstallRule(rule.getId());
+			fail("The DDA did not have the rule anymore");
+		} catch (FailedToUninstallRuleException e) {
+			// reported, but cleaned up locally
+		}
+		assertTrue(manager.getStreamRegistry().getStreamIris().isEmpty());
+
+		manager.installRule(rule);
+		assertEquals(1, dda.queries.size());
+		assertEquals(1, dda.streams.size());
+		// the observer kept by the manager is attached to the new query
+		assertEquals(1, dda.observers.size());
+		assertTrue(manager.getObservableMetrics().contains("mymetric"));
+	}
+
+	@Test
+	public void rulesShouldBeInstalledAndUninstalledInParallel()
+			throws Exception {
+		int rules = 16;
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Exception> errors = Collections
+				.synchronizedList(new ArrayList<Exception>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < rules; i++) {
+			final MonitoringRule rule = createRule("rule" + i, "metric" + i);
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						manager.installRule(rule);
+					} catch (Exception e) {
+						errors.add(e);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+		for (int i = 0; i < rules; i++) {
+			assertTrue(manager.getObservableMetrics().contains("metric" + i));
+		}
+		for (int i = 0; i < rules; i++) {
+			manager.uninstallRule("rule" + i);
+		}
+		assertTrue(dda.queries.isEmpty());
+		assertTrue(dda.streams.isEmpty());
+	}
+
+	@Test
+	public void queryIdsShouldBeReservedAtomically() throws Exception {
+		final MonitoringRule rule = createRule("rule1", "myMetric");
+		final Set<String> ids = Collections
+				.synchronizedSet(new HashSet<String>());
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					ids.add(manager.getNewQueryId(rule, null));
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(8, ids.size());
+		assertTrue(ids.contains("rule1"));
+		// reserved ids are not queries
+		assertNull(manager.getQuery("rule1"));
+	}
+
+	private static MonitoringRule createRule(String id, String outputMetric) {
+		MonitoringRule rule = new MonitoringRule();
+		rule.setId(id);
+		Action action = new Action();
+		action.setName("OutputMetric");
+		action.getParameters().add(parameter("metric", outputMetric));
+		action.getParameters().add(parameter("resourceId", "ID"));
+		action.getParameters().add(parameter("value", "METRIC"));
+		Actions actions = new Actions();
+		actions.getActions().add(action);
+		rule.setActions(actions);
+		rule.setTimeStep("60");
+		rule.setTimeWindow("60");
+		CollectedMetric collectedMetric = new CollectedMetric();
+		collectedMetric.setMetricName("ResponseTime");
+		rule.setCollectedMetric(collectedMetric);
+		MonitoredTarget target = new MonitoredTarget();
+		target.setClazz("Method");
+		target.setType("Login");
+		MonitoredTargets targets = new MonitoredTargets();
+		targets.getMonitoredTargets().add(target);
+		rule.setMonitoredTargets(targets);
+		return rule;
+	}
+
+	private static Parameter parameter(String name, String value) {
+		Parameter parameter = new Parameter();
+		parameter.setName(name);
+		parameter.setValue(value);
+		return parameter;
+	}
+
+	/**
+	 * Keeps the queries, streams and observers registered in memory, failing
+	 * like a restarted DDA on those it does not know.
+	 */
+	private static class FakeDda extends RSP_services_csparql_API {
+
+		private final Map<String, String> queries = new HashMap<String, String>();
+		private final Set<String> streams = new HashSet<String>();
+		private final Map<String, String> observers = new HashMap<String, String>();
+		private int observerIds;
+
+		private FakeDda() {
+			super("http://127.0.0.1:8175");
+		}
+
+		private synchronized void restart() {
+			queries.clear();
+			streams.clear();
+			observers.clear();
+		}
+
+		@Override
+		public synchronized String registerStream(String streamIri) {
+			if (!streams.add(streamIri))
+				throw new IllegalStateException("Stream " + streamIri
+						+ " already registered");
+			return streamIri;
+		}
+
+		@Override
+		public synchronized String unregisterStream(String streamIri) {
+			if (!streams.remove(streamIri))
+				throw new IllegalStateException("Unknown stream " + streamIri);
+			return streamIri;
+		}
+
+		@Override
+		public synchronized String registerQuery(String queryName,
+				String query) {
+			if (queries.containsKey(queryName))
+				throw new IllegalStateException("Query " + queryName
+						+ " already registered");
+			queries.put(queryName, query);
+			return queryName;
+		}
+
+		@Override
+		public synchronized String unregisterQuery(String queryUri) {
+			if (queries.remove(getId(queryUri)) == null)
+				throw new IllegalStateException("Unknown query " + queryUri);
+			return queryUri;
+		}
+
+		@Override
+		public synchronized String addObserver(String queryUri,
+				String callbackUrl) {
+			if (!queries.containsKey(getId(queryUri)))
+				throw new IllegalStateException("Unknown query " + queryUri);
+			String observerUri = queryUri + "/observers/" + observerIds++;
+			observers.put(observerUri, callbackUrl);
+			return observerUri;
+		}
+
+		@Override
+		public synchronized String deleteObserver(String observerUri) {
+			if (observers.remove(observerUri) == null)
+				throw new IllegalStateException("Unknown observer "
+						+ observerUri);
+			return observerUri;
+		}
+
+		@Override
+		public String getQueriesInfo() {
+			return "[]";
+		}
+
+		@Override
+		public String getStreamsInfo() {
+			return "[]";
+		}
+
+		@Override
+		public synchronized String getStreamInfo(String streamIri) {
+			if (!streams.contains(streamIri))
+				throw new IllegalStateException("Unknown stream " + streamIri);
+			return "{\"status\":\"RUNNING\"}";
+		}
+
+		private static String getId(String queryUri) {
+			return queryUri.substring(queryUri.lastIndexOf('/') + 1);
+		}
+
+	}
+
+}
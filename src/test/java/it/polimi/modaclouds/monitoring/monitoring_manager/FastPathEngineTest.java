@@ -0,0 +1,181 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Method;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+import it.polimi.modaclouds.qos_models.schema.Action;
+import it.polimi.modaclouds.qos_models.schema.Actions;
+import it.polimi.modaclouds.qos_models.schema.CollectedMetric;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTarget;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTargets;
+import it.polimi.modaclouds.qos_models.schema.MonitoringMetricAggregation;
+import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
+import it.polimi.modaclouds.qos_models.schema.Parameter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FastPathEngineTest {
+
+	private Map<String, Resource> resources;
+	private Map<String, List<MonitoringDatum>> results;
+	private FastPathEngine engine;
+	private MonitoringRule rule;
+
+	@Before
+	public void setUp() throws Exception {
+		resources = new HashMap<String, Resource>();
+		resources.put("register1", new Method("app1", "register"));
+		resources.put("register2", new Method("app2", "register"));
+		resources.put("login1", new Method("app1", "login"));
+		results = new HashMap<String, List<MonitoringDatum>>();
+		engine = new FastPathEngine(new MonitoringDataListener() {
+			@Override
+			public void onMonitoringData(String metric,
+					List<MonitoringDatum> data) {
+				results.put(metric, data);
+			}
+		}, new FastPathEngine.ResourceResolver() {
+			@Override
+			public Resource getResource(String resourceId) {
+				return resources.get(resourceId);
+			}
+		});
+		rule = createAvgResponseTimeRule();
+	}
+
+	@After
+	public void tearDown() {
+		engine.shutdown();
+	}
+
+	@Test
+	public void avgResponseTimeRuleShouldBeEligible() {
+		assertTrue(FastPathEngine.isEligible(rule));
+		rule.getMetricAggregation().setGroupingClass("CloudProvider");
+		assertFalse(FastPathEngine.isEligible(rule));
+	}
+
+	@Test
+	public void shouldAverageByResourceWithinWindow() throws Exception {
+		engine.install(rule);
+		List<MonitoringDatum> data = new ArrayList<MonitoringDatum>();
+		data.add(new MonitoringDatum("responsetime", "register1", 10, 1));
+		data.add(new MonitoringDatum("responsetime", "login1", 100, 2));
+		data.add(new MonitoringDatum("responsetime", "unknown", 100, 3));
+		engine.addData("ResponseTime", data, 0);
+		data = new ArrayList<MonitoringDatum>();
+		data.add(new MonitoringDatum("responsetime", "register1", 20, 4));
+		data.add(new MonitoringDatum("responsetime", "register2", 5, 5));
+		engine.addData("ResponseTime", data, 30000);
+
+		engine.emit(rule.getId(), 59000);
+		List<MonitoringDatum> output = results.get("AverageResponseTime");
+		assertEquals(2, output.size());
+		for (MonitoringDatum datum : output) {
+			if (datum.getResourceId().equals("register1")) {
+				assertEquals(15.0, datum.getValue(), 0);
+				assertEquals(4, datum.getTimestamp());
+			} else {
+				assertEquals("register2", datum.getResourceId());
+				assertEquals(5.0, datum.getValue(), 0);
+			}
+		}
+
+		results.clear();
+		// the first batch is out of the 60 seconds window
+		engine.emit(rule.getId(), 61000);
+		output = results.get("AverageResponseTime");
+		assertEquals(2, output.size());
+		for (MonitoringDatum datum : output) {
+			if (datum.getResourceId().equals("register1"))
+				assertEquals(20.0, datum.getValue(), 0);
+		}
+
+		engine.uninstall(rule.getId());
+		assertFalse(engine.isInstalled(rule.getId()));
+	}
+
+	@Test
+	public void ringBufferShouldGrowAndEvict() {
+		FastPathEngine.RingBuffer buffer = new FastPathEngine.RingBuffer();
+		for (int i = 0; i < 100; i++) {
+			buffer.add(i, i, i);
+		}
+		buffer.evictReceivedBefore(49);
+		assertEquals(50, buffer.size());
+		assertEquals(99.0, buffer.aggregate(PaneMerger.MAX), 0);
+		assertEquals(50.0, buffer.aggregate(PaneMerger.MIN), 0);
+		assertEquals(74.5, buffer.aggregate(PaneMerger.AVERAGE), 0);
+		assertEquals(99, buffer.maxTimestamp());
+	}
+
+	/**
+	 * Same as AvgResponseTimeRule.xml
+	 */
+	private MonitoringRule createAvgResponseTimeRule() {
+		MonitoringRule rule = new MonitoringRule();
+		rule.setId("AvgResponseTimeRule");
+		rule.setTimeStep("60");
+		rule.setTimeWindow("60");
+
+		MonitoredTarget target = new MonitoredTarget();
+		target.setClazz("Method");
+		target.setType("register");
+		MonitoredTargets targets = new MonitoredTargets();
+		targets.getMonitoredTargets().add(target);
+		rule.setMonitoredTargets(targets);
+
+		CollectedMetric collectedMetric = new CollectedMetric();
+		collectedMetric.setMetricName("ResponseTime");
+		rule.setCollectedMetric(collectedMetric);
+
+		MonitoringMetricAggregation aggregation = new MonitoringMetricAggregation();
+		aggregation.setAggregateFunction("Average");
+		aggregation.setGroupingClass("Method");
+		rule.setMetricAggregation(aggregation);
+
+		Actions actions = new Actions();
+		Action action = new Action();
+		action.setName("OutputMetric");
+		action.getParameters().add(createParameter("resourceId", "ID"));
+		action.getParameters().add(
+				createParameter("metric", "AverageResponseTime"));
+		action.getParameters().add(createParameter("value", "METRIC"));
+		actions.getActions().add(action);
+		rule.setActions(actions);
+		return rule;
+	}
+
+	private Parameter createParameter(String name, String value) {
+		Parameter parameter = new Parameter();
+		parameter.setName(name);
+		parameter.setValue(value);
+		return parameter;
+	}
+
+}
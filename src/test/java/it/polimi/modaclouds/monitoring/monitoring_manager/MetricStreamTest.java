@@ -0,0 +1,74 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MetricStreamTest {
+
+	@Test
+	public void slowConsumersShouldBeDisconnected() throws Exception {
+		MetricStream stream = new MetricStream(2);
+		assertTrue(stream.offer(new byte[] { 1 }));
+		assertTrue(stream.offer(new byte[] { 2 }));
+		assertFalse(stream.offer(new byte[] { 3 }));
+		assertTrue(stream.isClosed());
+		assertEquals(MetricStream.SLOW_CONSUMER, stream.getCloseReason());
+		assertNull(stream.poll(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void closingShouldWakeUpTheWriter() throws Exception {
+		final MetricStream stream = new MetricStream(10);
+		assertTrue(stream.offer(new byte[] { 1 }));
+		assertArrayEquals(new byte[] { 1 },
+				stream.poll(1, TimeUnit.SECONDS));
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				stream.close("observer removed");
+			}
+		}).start();
+		long start = System.currentTimeMillis();
+		assertNull(stream.poll(10, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertFalse(stream.offer(new byte[] { 2 }));
+	}
+
+	@Test
+	public void eachDatumShouldBeAnEvent() throws Exception {
+		String events = new String(PayloadEncoder.encode(
+				PayloadEncoder.EVENT_STREAM, Arrays.asList(
+						new MonitoringDatum("cpu", "vm1", 0.5, 1000L),
+						new MonitoringDatum("cpu", "vm2", 0.25, 1000L))),
+				"UTF-8");
+		assertEquals(
+				"data: {\"r\":\"vm1\",\"m\":\"cpu\",\"v\":0.5,\"t\":1000}\n\n"
+						+ "data: {\"r\":\"vm2\",\"m\":\"cpu\",\"v\":0.25,\"t\":1000}\n\n",
+				events);
+	}
+
+}
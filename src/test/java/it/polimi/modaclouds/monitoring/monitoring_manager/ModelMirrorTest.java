@@ -0,0 +1,160 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.InternalComponent;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.VM;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ModelMirrorTest {
+
+	@Test
+	public void diffShouldContainOnlyChangedResources() {
+		ModelMirror mirror = new ModelMirror();
+		mirror.putAll(model(createVM("vm1", "amazon"), createVM("vm2", "amazon"),
+				createVM("vm3", "amazon")));
+
+		ModelDiff diff = mirror.diff(model(createVM("vm1", "amazon"),
+				createVM("vm2", "flexiant"), createVM("vm4", "amazon")));
+		assertEquals(1, diff.getAdded().size());
+		assertEquals("vm4", diff.getAdded().get(0).getId());
+		assertEquals(1, diff.getUpdated().size());
+		assertEquals("vm2", diff.getUpdated().get(0).getId());
+		assertEquals(1, diff.getDeleted().size());
+		assertEquals("vm3", diff.getDeleted().get(0));
+		assertEquals(1, diff.getUnchanged());
+
+		mirror.apply(diff);
+		assertEquals(3, mirror.size());
+		assertTrue(mirror.diff(
+				model(createVM("vm1", "amazon"), createVM("vm2", "flexiant"),
+						createVM("vm4", "amazon"))).isEmpty());
+	}
+
+	@Test
+	public void fingerprintShouldIgnoreCollectionsOrder() {
+		ModelMirror mirror = new ModelMirror();
+		InternalComponent component1 = createComponent("app1", "vm1", "vm2",
+				"db1");
+		InternalComponent component2 = createComponent("app1", "db1", "vm2",
+				"vm1");
+		assertEquals(mirror.fingerprint(component1),
+				mirror.fingerprint(component2));
+
+		mirror.putAll(model(component1));
+		assertTrue(mirror.diff(model(component2)).isEmpty());
+		assertEquals(1,
+				mirror.diff(model(createComponent("app1", "vm1"))).getUpdated()
+						.size());
+	}
+
+	@Test
+	public void indexesShouldFollowUpdates() {
+		ModelMirror mirror = new ModelMirror();
+		mirror.putAll(model(createVM("vm1", "amazon"), createVM("vm2", "amazon"),
+				createComponent("app1", "vm1")));
+		assertEquals(2, mirror.getByClass("VM").size());
+		assertEquals(1, mirror.getByClass("InternalComponent").size());
+		assertEquals(2, mirror.getByType("FrontendVM").size());
+
+		VM vm2 = createVM("vm2", "amazon");
+		vm2.setType("BackendVM");
+		mirror.putAll(model(vm2));
+		assertEquals(1, mirror.getByType("FrontendVM").size());
+		assertEquals("vm2", mirror.getByType("BackendVM").get(0).getId());
+		assertSame(vm2, mirror.get("vm2"));
+
+		mirror.remove("vm1");
+		assertNull(mirror.get("vm1"));
+		assertTrue(mirror.getByType("FrontendVM").isEmpty());
+		assertEquals(1, mirror.getByClass("VM").size());
+		assertEquals(2, mirror.getAll().size());
+	}
+
+	@Test
+	public void findShouldFilterAndPageInIdOrder() {
+		ModelMirror mirror = new ModelMirror();
+		mirror.putAll(model(createVM("vm3", "amazon"), createVM("vm1", "amazon"),
+				createVM("vm2", "flexiant"), createVM("vm4", "amazon"),
+				createComponent("app1", "vm1"), createComponent("app2", "vm2")));
+
+		Map<String, String> filters = new HashMap<String, String>();
+		filters.put(ModelMirror.CLASS, "VM");
+		filters.put(ModelMirror.CLOUD_PROVIDER, "amazon");
+		List<Resource> page = mirror.find(filters, null, 2);
+		assertEquals(2, page.size());
+		assertEquals("vm1", page.get(0).getId());
+		assertEquals("vm3", page.get(1).getId());
+		page = mirror.find(filters, "vm3", 2);
+		assertEquals(1, page.size());
+		assertEquals("vm4", page.get(0).getId());
+
+		filters.clear();
+		filters.put(ModelMirror.REQUIRED_COMPONENT, "vm2");
+		page = mirror.find(filters, null, Integer.MAX_VALUE);
+		assertEquals(1, page.size());
+		assertEquals("app2", page.get(0).getId());
+
+		mirror.putAll(model(createVM("vm4", "flexiant")));
+		filters.clear();
+		filters.put(ModelMirror.CLOUD_PROVIDER, "flexiant");
+		assertEquals(2, mirror.find(filters, null, 10).size());
+		filters.put(ModelMirror.TYPE, "unknown");
+		assertTrue(mirror.find(filters, null, 10).isEmpty());
+		assertEquals(6,
+				mirror.find(new HashMap<String, String>(), null, 10).size());
+	}
+
+	private List<Resource> model(Resource... resources) {
+		List<Resource> model = new ArrayList<Resource>();
+		for (Resource resource : resources) {
+			model.add(resource);
+		}
+		return model;
+	}
+
+	private VM createVM(String id, String cloudProvider) {
+		VM vm = new VM();
+		vm.setId(id);
+		vm.setType("FrontendVM");
+		vm.setCloudProvider(cloudProvider);
+		return vm;
+	}
+
+	private InternalComponent createComponent(String id,
+			String... requiredComponents) {
+		InternalComponent component = new InternalComponent();
+		component.setId(id);
+		component.setType("JVM");
+		for (String requiredComponent : requiredComponents) {
+			component.addRequiredComponent(requiredComponent);
+		}
+		return component;
+	}
+
+}
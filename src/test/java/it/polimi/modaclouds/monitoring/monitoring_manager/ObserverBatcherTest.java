@@ -0,0 +1,129 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ObserverBatcherTest {
+
+	@Test
+	public void fullBatchesShouldBeDeliveredImmediately() {
+		CapturingNotifier notifier = new CapturingNotifier(1);
+		ObserverBatcher batcher = new ObserverBatcher(notifier);
+		Observer observer = createObserver(new ObserverBatching(3, 60000,
+				false));
+		batcher.add(observer, Arrays.asList(datum("vm1", 1, 1)));
+		batcher.add(observer,
+				Arrays.asList(datum("vm2", 2, 1), datum("vm3", 3, 1),
+						datum("vm4", 4, 1)));
+		assertEquals(1, notifier.payloads.size());
+		assertEquals(3, notifier.payloads.get(0).size());
+		assertEquals(1, batcher.getPendingData(observer.getId()));
+		batcher.shutdown();
+	}
+
+	@Test
+	public void batchesShouldBeDeliveredWithinTheInterval() throws Exception {
+		CapturingNotifier notifier = new CapturingNotifier(1);
+		ObserverBatcher batcher = new ObserverBatcher(notifier);
+		Observer observer = createObserver(new ObserverBatching(100, 50,
+				false));
+		batcher.add(observer, Arrays.asList(datum("vm1", 1, 1)));
+		batcher.add(observer, Arrays.asList(datum("vm2", 2, 1)));
+		assertTrue(notifier.delivered.await(5, TimeUnit.SECONDS));
+		assertEquals(1, notifier.payloads.size());
+		assertEquals(2, notifier.payloads.get(0).size());
+		batcher.shutdown();
+	}
+
+	@Test
+	public void coalescingShouldKeepTheLatestDatumOfEachResource() {
+		CapturingNotifier notifier = new CapturingNotifier(1);
+		ObserverBatcher batcher = new ObserverBatcher(notifier);
+		Observer observer = createObserver(new ObserverBatching(100, 60000,
+				true));
+		batcher.add(observer,
+				Arrays.asList(datum("vm1", 1, 1), datum("vm2", 2, 1)));
+		batcher.add(observer, Arrays.asList(datum("vm1", 3, 2)));
+		batcher.remove(observer);
+		assertEquals(1, notifier.payloads.size());
+		List<MonitoringDatum> payload = notifier.payloads.get(0);
+		assertEquals(2, payload.size());
+		assertEquals("vm1", payload.get(0).getResourceId());
+		assertEquals(3, payload.get(0).getValue(), 0);
+		batcher.shutdown();
+	}
+
+	@Test
+	public void removedObserversShouldNotGetNewBatches() throws Exception {
+		CapturingNotifier notifier = new CapturingNotifier(1);
+		ObserverBatcher batcher = new ObserverBatcher(notifier);
+		Observer observer = createObserver(new ObserverBatching(100, 50,
+				false));
+		batcher.add(observer, Arrays.asList(datum("vm1", 1, 1)));
+		observer.markRemoved();
+		batcher.remove(observer);
+		assertEquals(1, notifier.payloads.size());
+		// a delivery racing with the removal
+		batcher.add(observer, Arrays.asList(datum("vm2", 2, 1)));
+		assertEquals(0, batcher.getPendingData(observer.getId()));
+		Thread.sleep(150);
+		assertEquals(1, notifier.payloads.size());
+		batcher.shutdown();
+	}
+
+	private Observer createObserver(ObserverBatching batching) {
+		return new Observer("observer", "http://localhost/observer", null,
+				null, batching);
+	}
+
+	private MonitoringDatum datum(String resourceId, double value,
+			long timestamp) {
+		return new MonitoringDatum("metric", resourceId, value, timestamp);
+	}
+
+	private static class CapturingNotifier extends ObserverNotifier {
+
+		private final List<List<MonitoringDatum>> payloads = Collections
+				.synchronizedList(new ArrayList<List<MonitoringDatum>>());
+		private final CountDownLatch delivered;
+
+		private CapturingNotifier(int expectedPayloads) {
+			delivered = new CountDownLatch(expectedPayloads);
+		}
+
+		@Override
+		public void notify(Collection<Observer> observers,
+				List<MonitoringDatum> data) {
+			payloads.add(data);
+			delivered.countDown();
+		}
+
+	}
+
+}
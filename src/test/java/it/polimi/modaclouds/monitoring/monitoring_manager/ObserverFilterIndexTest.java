@@ -0,0 +1,178 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ObserverFilter.ValueCondition;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ObserverFilterIndex.FilterGroup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+public class ObserverFilterIndexTest {
+
+	@Test
+	public void conditionsShouldBeReducedToAnInterval() {
+		ObserverFilter filter = new ObserverFilter(null, Arrays.asList(
+				new ValueCondition(">", 10), new ValueCondition(">=", 5),
+				new ValueCondition("<=", 20)));
+		assertFalse(filter.acceptsValue(10));
+		assertTrue(filter.acceptsValue(10.5));
+		assertTrue(filter.acceptsValue(20));
+		assertFalse(filter.acceptsValue(20.5));
+		assertFalse(filter.acceptsValue(Double.NaN));
+		assertEquals(filter, new ObserverFilter(null, Arrays.asList(
+				new ValueCondition("<=", 20), new ValueCondition(">", 10))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownOperatorsShouldBeRejected() {
+		new ObserverFilter(null, Arrays.asList(new ValueCondition("~", 1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void conditionsWithoutValueShouldBeRejected() {
+		ValueCondition condition = new Gson().fromJson("{\"operator\":\">\"}",
+				ValueCondition.class);
+		new ObserverFilter(null, Arrays.asList(condition));
+	}
+
+	@Test
+	public void observersWithEqualFiltersShouldShareAGroup() {
+		List<Observer> observers = new ArrayList<Observer>();
+		observers.add(createObserver("all", null, null));
+		observers.add(createObserver("vm1a", resources("vm1"), null));
+		observers.add(createObserver("vm1b", resources("vm1"), null));
+		observers.add(createObserver("high", null, 50.0));
+		observers.add(createObserver("vm2high", resources("vm2"), 50.0));
+		ObserverFilterIndex index = new ObserverFilterIndex(observers);
+		assertTrue(index.hasFilters());
+		assertEquals(1, index.getUnfilteredObservers().size());
+
+		Map<FilterGroup, List<MonitoringDatum>> matches = index
+				.match(Arrays.asList(datum("vm1", 10), datum("vm2", 60),
+						datum("vm2", 40), datum("vm3", 70)));
+		assertEquals(3, matches.size());
+		for (Map.Entry<FilterGroup, List<MonitoringDatum>> entry : matches
+				.entrySet()) {
+			List<Observer> group = entry.getKey().getObservers();
+			List<MonitoringDatum> data = entry.getValue();
+			if (group.get(0).getId().startsWith("vm1")) {
+				assertEquals(2, group.size());
+				assertEquals(1, data.size());
+				assertEquals("vm1", data.get(0).getResourceId());
+			} else if (group.get(0).getId().equals("high")) {
+				assertEquals(2, data.size());
+				assertEquals("vm2", data.get(0).getResourceId());
+				assertEquals("vm3", data.get(1).getResourceId());
+			} else {
+				assertEquals("vm2high", group.get(0).getId());
+				assertEquals(1, data.size());
+				assertEquals(60, data.get(0).getValue(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void indexWithoutFiltersShouldNotMatchAnything() {
+		ObserverFilterIndex index = new ObserverFilterIndex(
+				Arrays.asList(createObserver("all", null, null)));
+		assertFalse(index.hasFilters());
+		assertTrue(index.match(Arrays.asList(datum("vm1", 10))).isEmpty());
+	}
+
+	@Test
+	public void valueFiltersShouldMatchLikeTheirIntervals() {
+		List<Observer> observers = new ArrayList<Observer>();
+		for (int i = 0; i < 30; i++) {
+			observers.add(createObserver("above" + i, null, (double) i));
+			observers.add(new Observer("below" + i, "http://localhost/below"
+					+ i, null, new ObserverFilter(null, Arrays
+					.asList(new ValueCondition("<=", i)))));
+			observers.add(new Observer("between" + i,
+					"http://localhost/between" + i, null, new ObserverFilter(
+							null, Arrays.asList(new ValueCondition(">=", i),
+									new ValueCondition("<", i + 5)))));
+		}
+		observers.add(new Observer("empty", "http://localhost/empty", null,
+				new ObserverFilter(null, Arrays.asList(new ValueCondition(">",
+						10), new ValueCondition("<", 5)))));
+		ObserverFilterIndex index = new ObserverFilterIndex(observers);
+		for (double value = -2; value <= 40; value += 0.5) {
+			int expected = 0;
+			for (Observer observer : observers) {
+				if (observer.getFilter().acceptsValue(value))
+					expected++;
+			}
+			Map<FilterGroup, List<MonitoringDatum>> matches = index
+					.match(Arrays.asList(datum("vm1", value)));
+			assertEquals("value " + value, expected, matches.size());
+			for (FilterGroup group : matches.keySet()) {
+				assertTrue(group.getFilter().acceptsValue(value));
+			}
+		}
+	}
+
+	@Test
+	public void groupsThatCannotAcceptTheValueShouldNotBeTested() {
+		final int[] tested = new int[1];
+		List<Observer> observers = new ArrayList<Observer>();
+		for (int i = 0; i < 100; i++) {
+			ObserverFilter filter = new ObserverFilter(null,
+					Arrays.asList(new ValueCondition("<", i))) {
+				@Override
+				public boolean acceptsValue(double value) {
+					tested[0]++;
+					return super.acceptsValue(value);
+				}
+			};
+			observers.add(new Observer("below" + i, "http://localhost/below"
+					+ i, null, filter));
+		}
+		ObserverFilterIndex index = new ObserverFilterIndex(observers);
+		assertTrue(index.match(Arrays.asList(datum("vm1", 150))).isEmpty());
+		assertTrue(tested[0] < 10);
+	}
+
+	private Observer createObserver(String id, HashSet<String> resourceIds,
+			Double greaterThan) {
+		ObserverFilter filter = null;
+		if (resourceIds != null || greaterThan != null)
+			filter = new ObserverFilter(resourceIds,
+					greaterThan == null ? null : Arrays.asList(
+							new ValueCondition(">", greaterThan)));
+		return new Observer(id, "http://localhost/" + id, null, filter);
+	}
+
+	private HashSet<String> resources(String... ids) {
+		return new HashSet<String>(Arrays.asList(ids));
+	}
+
+	private MonitoringDatum datum(String resourceId, double value) {
+		return new MonitoringDatum("metric", resourceId, value, 0);
+	}
+
+}
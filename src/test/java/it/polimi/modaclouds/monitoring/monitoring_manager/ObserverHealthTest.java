@@ -0,0 +1,67 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ObserverHealthTest {
+
+	@Test
+	public void backoffShouldDoubleUntilQuarantine() {
+		ObserverHealth health = new ObserverHealth();
+		assertTrue(health.shouldAttempt(0));
+		health.onFailure(10, 0, "refused");
+		assertEquals(ObserverHealth.BACKOFF, health.getState());
+		assertFalse(health.shouldAttempt(999));
+		assertTrue(health.shouldAttempt(1000));
+		// only one probe goes through
+		assertFalse(health.shouldAttempt(1000));
+		health.onFailure(10, 1000, "refused");
+		assertFalse(health.shouldAttempt(2999));
+		assertTrue(health.shouldAttempt(3000));
+		long now = 3000;
+		for (int i = 2; i < ObserverHealth.QUARANTINE_FAILURES; i++) {
+			health.onFailure(10, now, "refused");
+		}
+		assertEquals(ObserverHealth.QUARANTINED, health.getState());
+		assertFalse(health.shouldAttempt(now
+				+ ObserverHealth.MAX_BACKOFF_MILLIS - 1));
+		assertTrue(health.shouldAttempt(now
+				+ ObserverHealth.MAX_BACKOFF_MILLIS));
+	}
+
+	@Test
+	public void successShouldRestoreHealth() {
+		ObserverHealth health = new ObserverHealth();
+		health.onSuccess(100);
+		assertEquals(100, health.getLatencyMillis(), 0);
+		health.onFailure(600, 0, "timeout");
+		assertEquals(200, health.getLatencyMillis(), 0.001);
+		assertEquals(0.8, health.getSuccessRate(), 0.001);
+		health.onSuccess(200);
+		assertEquals(ObserverHealth.HEALTHY, health.getState());
+		assertEquals(0, health.getConsecutiveFailures());
+		assertTrue(health.shouldAttempt(0));
+		assertEquals(3, health.getDeliveries());
+		assertEquals(1, health.getFailures());
+	}
+
+}
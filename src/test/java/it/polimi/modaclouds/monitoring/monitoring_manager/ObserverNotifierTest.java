@@ -0,0 +1,163 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ObserverNotifierTest {
+
+	private HttpServer server;
+	private ObserverNotifier notifier;
+	private List<String> received;
+	private CountDownLatch latch;
+
+	@Before
+	public void setUp() throws IOException {
+		received = Collections.synchronizedList(new ArrayList<String>());
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				received.add(path + " " + read(exchange.getRequestBody()));
+				exchange.sendResponseHeaders(
+						path.startsWith("/failing") ? 500 : 204, -1);
+				exchange.close();
+				latch.countDown();
+			}
+		});
+		server.start();
+		notifier = new ObserverNotifier(2);
+	}
+
+	@After
+	public void tearDown() {
+		notifier.shutdown();
+		server.stop(0);
+	}
+
+	@Test
+	public void shouldDeliverTheSamePayloadToEveryObserver()
+			throws Exception {
+		latch = new CountDownLatch(6);
+		List<Observer> observers = new ArrayList<Observer>();
+		for (int i = 0; i < 3; i++) {
+			observers.add(new Observer("o" + i, "http://127.0.0.1:"
+					+ server.getAddress().getPort() + "/o" + i, null));
+		}
+		notifier.notify(observers, "{\"a\":1}");
+		notifier.notify(observers, "{\"a\":2}");
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(6, received.size());
+		for (int i = 0; i < 3; i++) {
+			assertTrue(received.contains("/o" + i + " {\"a\":1}"));
+			assertTrue(received.contains("/o" + i + " {\"a\":2}"));
+		}
+	}
+
+	@Test
+	public void failingObserverShouldBackOffAndBeEvicted() throws Exception {
+		latch = new CountDownLatch(1);
+		final List<Observer> evicted = Collections
+				.synchronizedList(new ArrayList<Observer>());
+		final CountDownLatch evictions = new CountDownLatch(1);
+		notifier.enableEviction(1, new ObserverNotifier.EvictionListener() {
+			@Override
+			public void evict(Observer observer) {
+				evicted.add(observer);
+				evictions.countDown();
+			}
+		});
+		Observer observer = new Observer("o1", "http://127.0.0.1:"
+				+ server.getAddress().getPort() + "/failing", null);
+		notifier.notify(Collections.singletonList(observer), "{\"a\":1}");
+		assertTrue(evictions.await(5, TimeUnit.SECONDS));
+		assertSame(observer, evicted.get(0));
+		assertEquals(ObserverHealth.EVICTED, observer.getHealth().getState());
+		assertEquals(1, observer.getHealth().getFailures());
+
+		latch = new CountDownLatch(1);
+		notifier.notify(Collections.singletonList(observer), "{\"a\":2}");
+		assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+		assertEquals(1, received.size());
+		assertEquals(1, observer.getHealth().getDropped());
+	}
+
+	@Test
+	public void evictedObserverShouldNotBeSpooled() throws Exception {
+		latch = new CountDownLatch(1);
+		File outbox = File.createTempFile("outbox", "");
+		outbox.delete();
+		notifier.enableOutbox(outbox, 1 << 20, 0);
+		final CountDownLatch evictions = new CountDownLatch(1);
+		notifier.enableEviction(1, new ObserverNotifier.EvictionListener() {
+			@Override
+			public void evict(Observer observer) {
+				notifier.remove(observer);
+				evictions.countDown();
+			}
+		});
+		Observer observer = new Observer("o1", "http://127.0.0.1:"
+				+ server.getAddress().getPort() + "/failing", null);
+		for (int i = 0; i < 10; i++) {
+			notifier.notify(Collections.singletonList(observer), "{\"a\":"
+					+ i + "}");
+		}
+		assertTrue(evictions.await(5, TimeUnit.SECONDS));
+		assertTrue(observer.isRemoved());
+		// let the deliveries already queued fail
+		Thread.sleep(200);
+		notifier.notify(Collections.singletonList(observer), "{\"a\":10}");
+		Thread.sleep(100);
+		assertEquals(0, notifier.getOutbox().getSpooledBytes("o1"));
+		assertEquals(0, outbox.list().length);
+		outbox.delete();
+	}
+
+	private static String read(InputStream is) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			os.write(buffer, 0, n);
+		}
+		return os.toString("UTF-8");
+	}
+
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import it.polimi.modaclouds.monitoring.monitoring_manager.ObserverRegistry.MetricObservers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ObserverRegistryTest {
+
+	@Test
+	public void observersShouldBeIndexedByIdAndCallbackUrl() {
+		ObserverRegistry registry = new ObserverRegistry();
+		MetricObservers metric = attach(registry, "responsetime");
+		Observer o1 = new Observer("o1", "http://host/a", null);
+		Observer o2 = new Observer("o2", "http://host/a", null,
+				new ObserverFilter(Collections.singleton("vm1"), null));
+		assertTrue(registry.add(metric, o1));
+		assertTrue(registry.add(metric, o2));
+		assertSame(o1, registry.get("o1"));
+		assertEquals(2, registry.getObserversByCallbackUrl("http://host/a")
+				.size());
+		assertEquals(1, registry.getFilterIndex("responsetime")
+				.getUnfilteredObservers().size());
+		assertTrue(registry.getFilterIndex("responsetime").requiresData());
+		assertNull(registry.remove("cpu", "o1"));
+		assertSame(o1, registry.remove("responsetime", "o1"));
+		assertNull(registry.get("o1"));
+		assertEquals(1, registry.getObserversByCallbackUrl("http://host/a")
+				.size());
+	}
+
+	@Test
+	public void duplicatesShouldHaveSameMetricUrlAndOptions() {
+		ObserverRegistry registry = new ObserverRegistry();
+		MetricObservers metric = attach(registry, "responsetime");
+		attach(registry, "cpu");
+		Observer o1 = new Observer("o1", "http://host/a", null,
+				new ObserverFilter());
+		registry.add(metric, o1);
+		assertSame(o1, registry.findDuplicate("responsetime", new Observer(
+				"o2", "http://host/a", null)));
+		assertNull(registry.findDuplicate("cpu", new Observer("o2",
+				"http://host/a", null)));
+		assertNull(registry.findDuplicate("responsetime", new Observer("o2",
+				"http://host/a", null, null, null, PayloadEncoder.CSV)));
+		assertNull(registry.findDuplicate("responsetime", new Observer("o2",
+				"http://host/a", null, null, new ObserverBatching(10, 0,
+						false))));
+	}
+
+	@Test
+	public void detachedMetricShouldKeepItsObservers() {
+		ObserverRegistry registry = new ObserverRegistry();
+		MetricObservers metric = attach(registry, "responsetime");
+		Observer o1 = new Observer("o1", "http://host/a", null);
+		registry.add(metric, o1);
+		registry.detach(metric);
+		assertFalse(registry.isObservable(metric));
+		assertFalse(registry.add(metric, new Observer("o2", "http://host/b",
+				null)));
+		assertSame(o1, registry.get("o1"));
+		assertSame(metric, registry.addMetric("responsetime"));
+		assertTrue(registry.attach(metric));
+		assertEquals(1, registry.getFilterIndex("responsetime")
+				.getUnfilteredObservers().size());
+	}
+
+	@Test
+	public void detachedMetricShouldBeForgottenWithItsLastObserver() {
+		ObserverRegistry registry = new ObserverRegistry();
+		MetricObservers metric = attach(registry, "responsetime");
+		registry.add(metric, new Observer("o1", "http://host/a", null));
+		registry.detach(metric);
+		registry.remove("responsetime", "o1");
+		assertNull(registry.getMetric("responsetime"));
+		assertFalse(registry.attach(metric));
+		registry.detach(attach(registry, "cpu"));
+		assertNull(registry.getMetric("cpu"));
+	}
+
+	@Test
+	public void concurrentChurnShouldNotLoseObservers() throws Exception {
+		final ObserverRegistry registry = new ObserverRegistry();
+		final MetricObservers metric = attach(registry, "responsetime");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<String> kept = Collections
+				.synchronizedList(new ArrayList<String>());
+		for (int t = 0; t < 8; t++) {
+			final int thread = t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 500; i++) {
+						String id = thread + "-" + i;
+						registry.add(metric, new Observer(id, "http://host/"
+								+ id, null));
+						if (i % 2 == 0)
+							registry.remove("responsetime", id);
+						else
+							kept.add(id);
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(kept.size(), registry.size());
+		assertEquals(kept.size(), registry.getObservers("responsetime")
+				.size());
+		assertEquals(kept.size(), registry.getFilterIndex("responsetime")
+				.getUnfilteredObservers().size());
+	}
+
+	private MetricObservers attach(ObserverRegistry registry, String metric) {
+		MetricObservers metricObservers = registry.addMetric(metric);
+		registry.attach(metricObservers);
+		return metricObservers;
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PaneMergerTest {
+
+	private static final long PANE_MILLIS = 60000;
+
+	private Map<String, List<MonitoringDatum>> results;
+	private PaneMerger merger;
+
+	@Before
+	public void setUp() {
+		results = new HashMap<String, List<MonitoringDatum>>();
+		merger = new PaneMerger(new MonitoringDataListener() {
+			@Override
+			public void onMonitoringData(String metric,
+					List<MonitoringDatum> data) {
+				results.put(metric, data);
+			}
+		});
+	}
+
+	@Test
+	public void shouldMergeSlidingWindowsSharingPanes() {
+		merger.subscribe("pane1", PANE_MILLIS, "avgRule", "AvgRT",
+				PaneMerger.AVERAGE, 3, 1);
+		merger.subscribe("pane1", PANE_MILLIS, "maxRule", "MaxRT",
+				PaneMerger.MAX, 2, 2);
+		addPane(0, new PaneMerger.Pane("vm1", 10, 2, 6, 4, 1));
+		assertEquals(5.0, getValue("AvgRT", "vm1"), 0);
+		assertTrue(!results.containsKey("MaxRT"));
+
+		results.clear();
+		addPane(1, new PaneMerger.Pane("vm1", 30, 1, 30, 30, 2));
+		assertEquals(40.0 / 3, getValue("AvgRT", "vm1"), 1e-9);
+		assertEquals(30.0, getValue("MaxRT", "vm1"), 0);
+
+		results.clear();
+		addPane(2, new PaneMerger.Pane("vm1", 2, 2, 1, 1, 3));
+		addPane(3, new PaneMerger.Pane("vm1", 3, 3, 1, 1, 4));
+		// the first pane is out of the window
+		assertEquals(35.0 / 6, getValue("AvgRT", "vm1"), 1e-9);
+		assertEquals(1.0, getValue("MaxRT", "vm1"), 0);
+	}
+
+	@Test
+	public void emptyPanesShouldMoveWindowsForward() {
+		merger.subscribe("pane1", PANE_MILLIS, "sumRule", "SumRT",
+				PaneMerger.SUM, 2, 1);
+		addPane(0, new PaneMerger.Pane("vm1", 10, 1, 10, 10, 1));
+		results.clear();
+		// no data from the DDA for two panes
+		addPane(3, new PaneMerger.Pane("vm2", 5, 1, 5, 5, 4));
+		List<MonitoringDatum> data = results.get("SumRT");
+		assertEquals(1, data.size());
+		assertEquals("vm2", data.get(0).getResourceId());
+		assertEquals(5.0, data.get(0).getValue(), 0);
+		assertEquals(4, data.get(0).getTimestamp());
+	}
+
+	@Test
+	public void shouldStopMergingAfterUnsubscribe() {
+		merger.subscribe("pane1", PANE_MILLIS, "countRule", "CountRT",
+				PaneMerger.COUNT, 2, 1);
+		merger.unsubscribe("countRule");
+		addPane(0, new PaneMerger.Pane("vm1", 10, 1, 10, 10, 1));
+		assertTrue(results.isEmpty());
+	}
+
+	private void addPane(int tick, PaneMerger.Pane... panes) {
+		merger.addPanes("pane1",
+				new ArrayList<PaneMerger.Pane>(Arrays.asList(panes)), tick
+						* PANE_MILLIS + 1000);
+	}
+
+	private double getValue(String metric, String resourceId) {
+		for (MonitoringDatum datum : results.get(metric)) {
+			if (datum.getResourceId().equals(resourceId))
+				return datum.getValue();
+		}
+		throw new AssertionError("No value for " + resourceId);
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PayloadEncoderTest {
+
+	private List<MonitoringDatum> data = Arrays.asList(new MonitoringDatum(
+			"ResponseTime", "frontend1", 120.5, 1000L), new MonitoringDatum(
+			"ResponseTime", "front,end\"2", 80, 2000L), new MonitoringDatum(
+			"CPUUtilization", "vm1", 0.5, 3000L));
+
+	@Test
+	public void ndjsonShouldHaveOneObjectPerLine() throws Exception {
+		String ndjson = new String(PayloadEncoder.encode(
+				PayloadEncoder.NDJSON, data), "UTF-8");
+		String[] lines = ndjson.split("\n");
+		assertEquals(3, lines.length);
+		assertEquals(
+				"{\"r\":\"frontend1\",\"m\":\"ResponseTime\",\"v\":120.5,\"t\":1000}",
+				lines[0]);
+	}
+
+	@Test
+	public void csvShouldQuoteFieldsWhenNeeded() throws Exception {
+		String csv = new String(PayloadEncoder.encode(PayloadEncoder.CSV,
+				data), "UTF-8");
+		assertEquals("resourceId,metric,value,timestamp\n"
+				+ "frontend1,ResponseTime,120.5,1000\n"
+				+ "\"front,end\"\"2\",ResponseTime,80.0,2000\n"
+				+ "vm1,CPUUtilization,0.5,3000\n", csv);
+	}
+
+	@Test
+	public void binaryShouldInternMetrics() throws Exception {
+		byte[] payload = PayloadEncoder.encode(PayloadEncoder.BINARY, data);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				payload));
+		assertEquals(payload.length - 4, in.readInt());
+		assertEquals(2, in.readShort());
+		String[] metrics = new String[] { in.readUTF(), in.readUTF() };
+		assertEquals(3, in.readInt());
+		for (MonitoringDatum datum : data) {
+			assertEquals(datum.getMetric(), metrics[in.readShort()]);
+			assertEquals(datum.getResourceId(), in.readUTF());
+			assertEquals(datum.getValue(), in.readDouble(), 0);
+			assertEquals(datum.getTimestamp(), in.readLong());
+		}
+		assertEquals(0, in.available());
+	}
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import it.polimi.modaclouds.qos_models.schema.Action;
+import it.polimi.modaclouds.qos_models.schema.Actions;
+import it.polimi.modaclouds.qos_models.schema.CollectedMetric;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTarget;
+import it.polimi.modaclouds.qos_models.schema.MonitoredTargets;
+import it.polimi.modaclouds.qos_models.schema.MonitoringMetricAggregation;
+import it.polimi.modaclouds.qos_models.schema.MonitoringRule;
+import it.polimi.modaclouds.qos_models.schema.Parameter;
+
+import org.junit.Test;
+
+public class QueryCacheTest {
+
+	@Test
+	public void fingerprintShouldIgnoreIdAndTargetsOrder() {
+		MonitoringRule rule1 = createRule("rule1", "60", "Login", "Logout");
+		MonitoringRule rule2 = createRule("rule2", "60", "Logout", "Login");
+		assertEquals(QueryCache.fingerprint(rule1),
+				QueryCache.fingerprint(rule2));
+	}
+
+	@Test
+	public void fingerprintShouldDependOnTheClassOfTheFirstTarget() {
+		MonitoringRule rule1 = createRule("rule1", "60", "Login");
+		MonitoringRule rule2 = createRule("rule2", "60", "Login");
+		rule1.getMonitoredTargets().getMonitoredTargets()
+				.add(0, createTarget("VM", "Frontend"));
+		rule2.getMonitoredTargets().getMonitoredTargets()
+				.add(createTarget("VM", "Frontend"));
+		assertFalse(QueryCache.fingerprint(rule1).equals(
+				QueryCache.fingerprint(rule2)));
+	}
+
+	@Test
+	public void fingerprintShouldDependOnWindow() {
+		MonitoringRule rule1 = createRule("rule1", "60", "Login");
+		MonitoringRule rule2 = createRule("rule1", "300", "Login");
+		assertFalse(QueryCache.fingerprint(rule1).equals(
+				QueryCache.fingerprint(rule2)));
+	}
+
+	@Test
+	public void shouldCountHitsAndMisses() {
+		QueryCache cache = new QueryCache();
+		MonitoringRule rule = createRule("rule1", "60", "Login");
+		String key = QueryCache.getKey(rule, "rule1");
+		assertNull(cache.get(key));
+		cache.put(key, "REGISTER QUERY rule1 AS ...");
+		assertEquals("REGISTER QUERY rule1 AS ...",
+				cache.get(QueryCache.getKey(rule, "rule1")));
+		assertNull(cache.get(QueryCache.getKey(rule, "rule2")));
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsed() {
+		QueryCache cache = new QueryCache(2);
+		cache.put("a", "A");
+		cache.put("b", "B");
+		cache.get("a");
+		cache.put("c", "C");
+		assertEquals(2, cache.size());
+		assertNull(cache.get("b"));
+		assertEquals("A", cache.get("a"));
+	}
+
+	private MonitoringRule createRule(String id, String window,
+			String... targetTypes) {
+		MonitoringRule rule = new MonitoringRule();
+		rule.setId(id);
+
+		Actions actions = new Actions();
+		Action action = new Action();
+		action.setName("OutputMetric");
+		action.getParameters().add(createParameter("metric", "myMetric"));
+		action.getParameters().add(createParameter("resourceId", "ID"));
+		action.getParameters().add(createParameter("value", "METRIC"));
+		actions.getActions().add(action);
+		rule.setActions(actions);
+
+		rule.setTimeStep("60");
+		rule.setTimeWindow(window);
+
+		CollectedMetric collectedMetric = new CollectedMetric();
+		collectedMetric.setMetricName("ResponseTime");
+		rule.setCollectedMetric(collectedMetric);
+
+		MonitoredTargets targets = new MonitoredTargets();
+		for (String type : targetTypes) {
+			targets.getMonitoredTargets().add(createTarget("Method", type));
+		}
+		rule.setMonitoredTargets(targets);
+
+		MonitoringMetricAggregation aggregation = new MonitoringMetricAggregation();
+		aggregation.setAggregateFunction("Average");
+		rule.setMetricAggregation(aggregation);
+		return rule;
+	}
+
+	private MonitoredTarget createTarget(String clazz, String type) {
+		MonitoredTarget target = new MonitoredTarget();
+		target.setClazz(clazz);
+		target.setType(type);
+		return target;
+	}
+
+	private Parameter createParameter(String name, String value) {
+		Parameter parameter = new Parameter();
+		parameter.setName(name);
+		parameter.setValue(value);
+		return parameter;
+	}
+
+}
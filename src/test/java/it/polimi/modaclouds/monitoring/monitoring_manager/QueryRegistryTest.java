@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class QueryRegistryTest {
+
+	private static final String KEY = "REGISTER QUERY sharedQueryKey AS ...";
+
+	@Test
+	public void shouldCountRulesSharingAQuery() {
+		QueryRegistry registry = new QueryRegistry();
+		QueryRegistry.SharedQuery query = registry.acquire(KEY, "rule1");
+		assertSame(query, registry.acquire(KEY, "rule2"));
+		assertNotSame(query, registry.acquire("other", "rule3"));
+		assertEquals(2, registry.size());
+		assertEquals(new HashSet<String>(Arrays.asList("rule1", "rule2")),
+				registry.getRuleIds("rule1"));
+
+		assertSame(query, registry.release("rule1"));
+		assertFalse(registry.isUnused(query));
+		assertEquals(new HashSet<String>(Arrays.asList("rule2")),
+				registry.getRuleIds("rule2"));
+		assertSame(query, registry.release("rule2"));
+		assertTrue(registry.isUnused(query));
+		assertTrue(registry.getRuleIds("rule1").isEmpty());
+	}
+
+	@Test
+	public void shouldForgetUnusedQueries() {
+		QueryRegistry registry = new QueryRegistry();
+		QueryRegistry.SharedQuery query = registry.acquire(KEY, "rule1");
+		registry.release("rule1");
+		registry.removeIfUnused(query);
+		assertEquals(0, registry.size());
+		assertNull(registry.release("rule1"));
+	}
+
+	@Test
+	public void shouldNotForgetQueriesInUse() {
+		QueryRegistry registry = new QueryRegistry();
+		QueryRegistry.SharedQuery query = registry.acquire(KEY, "rule1");
+		registry.acquire(KEY, "rule2");
+		registry.release("rule1");
+		registry.removeIfUnused(query);
+		assertEquals(1, registry.size());
+		assertSame(query, registry.acquire(KEY, "rule3"));
+	}
+
+	@Test
+	public void reacquiredQueriesShouldBeNew() {
+		QueryRegistry registry = new QueryRegistry();
+		QueryRegistry.SharedQuery query = registry.acquire(KEY, "rule1");
+		query.setQueryId("rule1");
+		registry.release("rule1");
+		registry.removeIfUnused(query);
+
+		QueryRegistry.SharedQuery reacquired = registry.acquire(KEY, "rule1");
+		assertNotSame(query, reacquired);
+		assertFalse(reacquired.isRegistered());
+		// removing the old query again must not drop the new one
+		registry.removeIfUnused(query);
+		assertEquals(1, registry.size());
+		assertSame(reacquired, registry.acquire(KEY, "rule2"));
+	}
+
+	@Test
+	public void releasedQueryReacquiredBeforeRemovalShouldBeKept() {
+		QueryRegistry registry = new QueryRegistry();
+		QueryRegistry.SharedQuery query = registry.acquire(KEY, "rule1");
+		query.setQueryId("rule1");
+		registry.release("rule1");
+		assertSame(query, registry.acquire(KEY, "rule2"));
+		registry.removeIfUnused(query);
+		assertEquals(1, registry.size());
+		assertTrue(query.isRegistered());
+	}
+
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentLogTest {
+
+	private static final int SEGMENT_SIZE = 64;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("segmentlog", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+
+	@Test
+	public void recordsShouldBeReadInOrderAcrossSegments() throws Exception {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 0);
+		for (int i = 0; i < 10; i++) {
+			log.append(record(i), 0);
+		}
+		assertTrue(log.size() > SEGMENT_SIZE);
+		for (int i = 0; i < 10; i++) {
+			assertArrayEquals(record(i), read(log));
+		}
+		assertNull(log.peek(0));
+		assertTrue(log.isEmpty());
+		assertEquals(SEGMENT_SIZE, log.size());
+	}
+
+	@Test
+	public void reopenedLogShouldResumeFromTheCursor() throws Exception {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 0);
+		for (int i = 0; i < 10; i++) {
+			log.append(record(i), 0);
+		}
+		for (int i = 0; i < 4; i++) {
+			read(log);
+		}
+		log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 0);
+		for (int i = 4; i < 10; i++) {
+			assertArrayEquals(record(i), read(log));
+		}
+		assertTrue(log.isEmpty());
+	}
+
+	@Test
+	public void expiredRecordsShouldBeSkipped() throws Exception {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, 1024, 1000);
+		log.append(record(1), 0);
+		log.append(record(2), 5000);
+		assertArrayEquals(record(2), log.peek(5500).getBytes());
+		assertEquals(1, log.getDroppedRecords());
+	}
+
+	@Test
+	public void oldestSegmentsShouldBeDroppedWhenFull() throws Exception {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE,
+				SEGMENT_SIZE * 2, 0);
+		for (int i = 0; i < 20; i++) {
+			log.append(record(i), 0);
+		}
+		assertTrue(log.size() <= SEGMENT_SIZE * 2);
+		assertTrue(log.getDroppedRecords() > 0);
+		List<byte[]> remaining = new ArrayList<byte[]>();
+		SegmentLog.Record record;
+		while ((record = log.peek(0)) != null) {
+			remaining.add(record.getBytes());
+			log.advance(record);
+		}
+		assertArrayEquals(record(19), remaining.get(remaining.size() - 1));
+		assertEquals(20, remaining.size() + log.getDroppedRecords());
+	}
+
+	@Test
+	public void droppingTheSegmentBeingReadShouldNotSkipRecords()
+			throws Exception {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE,
+				SEGMENT_SIZE * 2, 0);
+		int appended = 0;
+		log.append(record(appended++), 0);
+		SegmentLog.Record inFlight = log.peek(0);
+		assertArrayEquals(record(0), inFlight.getBytes());
+		// fill the log until the segment being read is dropped
+		while (log.getDroppedRecords() == 0) {
+			log.append(record(appended++), 0);
+		}
+		SegmentLog.Record head = log.peek(0);
+		log.advance(inFlight);
+		assertArrayEquals(head.getBytes(), log.peek(0).getBytes());
+		List<byte[]> remaining = new ArrayList<byte[]>();
+		SegmentLog.Record record;
+		while ((record = log.peek(0)) != null) {
+			remaining.add(record.getBytes());
+			log.advance(record);
+		}
+		assertArrayEquals(head.getBytes(), remaining.get(0));
+		assertArrayEquals(record(appended - 1),
+				remaining.get(remaining.size() - 1));
+		// the record in flight was delivered, only the others were dropped
+		assertEquals(appended, 1 + remaining.size() + log.getDroppedRecords());
+	}
+
+	@Test
+	public void outboxShouldReplayInOrderOnRecovery() throws Exception {
+		final List<String> delivered = Collections
+				.synchronizedList(new ArrayList<String>());
+		final boolean[] reachable = new boolean[] { false };
+		ObserverOutbox outbox = new ObserverOutbox(directory, 1 << 20, 0,
+				new ObserverOutbox.Sender() {
+					@Override
+					public void send(Observer observer, byte[] payload)
+							throws IOException {
+						if (!reachable[0])
+							throw new IOException("unreachable");
+						delivered.add(new String(payload, "UTF-8"));
+					}
+				}, 50);
+		Observer observer = new Observer("o1", "http://localhost/o1", null);
+		assertFalse(outbox.spoolIfPending(observer, "a".getBytes("UTF-8")));
+		outbox.spool(observer, "a".getBytes("UTF-8"));
+		assertTrue(outbox.spoolIfPending(observer, "b".getBytes("UTF-8")));
+		Thread.sleep(200);
+		assertTrue(delivered.isEmpty());
+		reachable[0] = true;
+		long deadline = System.currentTimeMillis() + 5000;
+		while (delivered.size() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(2, delivered.size());
+		assertEquals("a", delivered.get(0));
+		assertEquals("b", delivered.get(1));
+		assertFalse(outbox.spoolIfPending(observer, "c".getBytes("UTF-8")));
+		outbox.remove(observer);
+		outbox.shutdown();
+	}
+
+	@Test
+	public void droppedSegmentsShouldFreeDiskSpace() throws Exception {
+		SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE,
+				SEGMENT_SIZE * 2, 0);
+		for (int i = 0; i < 100; i++) {
+			log.append(record(i), 0);
+			if (i % 3 == 0) {
+				read(log);
+			}
+		}
+		long segmentBytes = 0;
+		for (File file : directory.listFiles()) {
+			if (file.getName().endsWith(".seg"))
+				segmentBytes += file.length();
+		}
+		assertTrue(segmentBytes <= SEGMENT_SIZE * 2);
+		// deleted files still mapped keep using disk space
+		assertEquals(0, countDeletedMappings(directory));
+		log.delete();
+		assertFalse(directory.exists());
+		assertEquals(0, countDeletedMappings(directory));
+	}
+
+	@Test
+	public void concurrentFirstFailuresShouldShareTheSpool() throws Exception {
+		final Set<String> delivered = Collections
+				.synchronizedSet(new HashSet<String>());
+		final boolean[] reachable = new boolean[] { false };
+		final ObserverOutbox outbox = new ObserverOutbox(directory, 1 << 20,
+				0, new ObserverOutbox.Sender() {
+					@Override
+					public void send(Observer observer, byte[] payload)
+							throws IOException {
+						if (!reachable[0])
+							throw new IOException("unreachable");
+						delivered.add(new String(payload, "UTF-8"));
+					}
+				}, 50);
+		int observers = 20;
+		int threads = 8;
+		final List<Exception> errors = Collections
+				.synchronizedList(new ArrayList<Exception>());
+		for (int o = 0; o < observers; o++) {
+			final Observer observer = new Observer("o" + o,
+					"http://localhost/o" + o, null);
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Thread> failing = new ArrayList<Thread>();
+			for (int i = 0; i < threads; i++) {
+				final String payload = observer.getId() + "-" + i;
+				Thread thread = new Thread() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+							outbox.spool(observer, payload.getBytes("UTF-8"));
+						} catch (Exception e) {
+							errors.add(e);
+						}
+					}
+				};
+				thread.start();
+				failing.add(thread);
+			}
+			start.countDown();
+			for (Thread thread : failing) {
+				thread.join();
+			}
+			assertTrue(outbox.spoolIfPending(observer,
+					(observer.getId() + "-last").getBytes("UTF-8")));
+		}
+		assertTrue(errors.isEmpty());
+		assertEquals(observers, directory.listFiles().length);
+
+		reachable[0] = true;
+		int expected = observers * (threads + 1);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (delivered.size() < expected
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(expected, delivered.size());
+		outbox.shutdown();
+	}
+
+	/**
+	 * @return the number of deleted files of the directory still mapped by
+	 *         this process, 0 if mappings cannot be listed
+	 */
+	private int countDeletedMappings(File directory) throws IOException {
+		File maps = new File("/proc/self/maps");
+		if (!maps.exists())
+			return 0;
+		int count = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(maps));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.contains(directory.getAbsolutePath())
+						&& line.endsWith("(deleted)"))
+					count++;
+			}
+		} finally {
+			reader.close();
+		}
+		return count;
+	}
+
+	private static byte[] read(SegmentLog log) {
+		SegmentLog.Record record = log.peek(0);
+		log.advance(record);
+		return record.getBytes();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private byte[] record(int i) {
+		return ("record-" + i).getBytes();
+	}
+
+}
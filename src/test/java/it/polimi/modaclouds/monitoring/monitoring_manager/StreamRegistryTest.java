@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StreamRegistryTest {
+
+	private static final String STREAM = "http://www.modaclouds.eu/streams/responsetime";
+
+	@Test
+	public void shouldCountRulesReadingFromStream() {
+		StreamRegistry registry = new StreamRegistry();
+		StreamRegistry.Stream stream = registry.acquire(STREAM, "rule1");
+		assertSame(stream, registry.acquire(STREAM, "rule2"));
+		assertEquals(2, registry.getFanIn(STREAM));
+		assertEquals(STREAM, registry.getStreamIri("rule1"));
+
+		assertSame(stream, registry.release("rule1"));
+		assertFalse(registry.isUnused(stream));
+		assertSame(stream, registry.release("rule2"));
+		assertTrue(registry.isUnused(stream));
+	}
+
+	@Test
+	public void shouldForgetUnusedStreams() {
+		StreamRegistry registry = new StreamRegistry();
+		StreamRegistry.Stream stream = registry.acquire(STREAM, "rule1");
+		registry.release("rule1");
+		registry.removeIfUnused(stream);
+		assertTrue(registry.getStreamIris().isEmpty());
+		assertEquals(0, registry.getFanIn(STREAM));
+		assertNull(registry.release("rule1"));
+	}
+
+	@Test
+	public void shouldNotForgetStreamsInUse() {
+		StreamRegistry registry = new StreamRegistry();
+		StreamRegistry.Stream stream = registry.acquire(STREAM, "rule1");
+		registry.removeIfUnused(stream);
+		assertEquals(1, registry.getFanIn(STREAM));
+	}
+
+}
@@ -16,12 +16,16 @@
  */
 package it.polimi.modaclouds.monitoring.monitoring_manager.server;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
-import it.polimi.modaclouds.monitoring.monitoring_manager.server.ActionsExecutorServer.MonitoringDatum;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringDataParser;
+import it.polimi.modaclouds.monitoring.monitoring_manager.MonitoringDatum;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
@@ -36,6 +40,24 @@ public class ActionsExecutorTest {
 		List<MonitoringDatum> data = ActionsExecutorServer.jsonToMonitoringDatum(json);
 		assertNotNull(data);
 		assertTrue(data.size()==1);
+		MonitoringDatum datum = data.get(0);
+		assertEquals("outputMetric4_RestCallRule", datum.getMetric());
+		assertEquals("register1", datum.getResourceId());
+		assertEquals(2000.0, datum.getValue(), 0);
+		assertEquals(1409223851698L, datum.getTimestamp());
+	}
+
+	@Test
+	public void parserShouldReuseDataObjects() throws IOException {
+		String json = IOUtils.toString(getResourceAsStream("MonitoringDatumRT.json"));
+		MonitoringDataParser parser = new MonitoringDataParser();
+		MonitoringDatum datum = parser.parse(new StringReader(json)).get(0);
+		assertEquals("responsetime", datum.getMetric());
+		assertEquals(0, datum.getTimestamp());
+		assertSame(datum, parser.parse(new StringReader(json)).get(0));
+		assertEquals("", ActionsExecutorServer.formatTimestamp(datum.getTimestamp()));
+		assertEquals("2000", ActionsExecutorServer.formatValue(datum.getValue()));
+		assertEquals("0.5", ActionsExecutorServer.formatValue(0.5));
 	}
 
 	private InputStream getResourceAsStream(String filenName) {
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.Resource;
+import it.polimi.modaclouds.qos_models.monitoring_ontology.VM;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.JsonSyntaxException;
+
+public class ModelReaderTest {
+
+	@Test
+	public void shouldReadResourcesOfEveryField() {
+		List<Resource> resources = readAll("{\"cloudProviders\":[{\"id\":\"amazon\"}],"
+				+ "\"unknown\":{\"a\":[1,2]},\"locations\":null,"
+				+ "\"vMs\":[{\"id\":\"vm1\",\"type\":\"Frontend\",\"cloudProvider\":\"amazon\"},"
+				+ "{\"id\":\"vm2\",\"type\":\"Backend\"}],\"methods\":[]}");
+		assertEquals(3, resources.size());
+		assertEquals("amazon", resources.get(0).getId());
+		assertTrue(resources.get(1) instanceof VM);
+		assertEquals("amazon", ((VM) resources.get(1)).getCloudProvider());
+		assertEquals("vm2", resources.get(2).getId());
+	}
+
+	@Test
+	public void shouldReadEmptyModels() {
+		assertTrue(readAll("{}").isEmpty());
+		assertTrue(readAll("null").isEmpty());
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void shouldRejectMalformedModels() {
+		ModelReader reader = new ModelReader(new StringReader(
+				"{\"vMs\":[{\"id\":\"vm1\"},{\"id\":"));
+		assertEquals("vm1", reader.next().getId());
+		assertFalse(reader.hasNext());
+	}
+
+	private List<Resource> readAll(String json) {
+		List<Resource> resources = new ArrayList<Resource>();
+		ModelReader reader = new ModelReader(new StringReader(json));
+		while (reader.hasNext()) {
+			resources.add(reader.next());
+		}
+		return resources;
+	}
+
+}
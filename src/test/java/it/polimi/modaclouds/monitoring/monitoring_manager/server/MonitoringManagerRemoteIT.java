@@ -201,6 +201,55 @@ public class MonitoringManagerRemoteIT {
 				.body(equalToIgnoringWhiteSpace("{\"observers\":[]}"));
 	}
 
+	@Test
+	public void observersShouldBeAddedAndDeletedInBulk() throws Exception {
+		given().port(MM_PORT)
+				.body(IOUtils
+						.toString(getResourceAsStream("AvgResponseTimeRule.xml")))
+				.post("/v1/monitoring-rules").then().assertThat()
+				.statusCode(204);
+		String callbackurl = "http://127.0.0.1/null";
+		String payload = "{\"observers\": ["
+				+ "{\"metric\": \"AverageResponseTime\", \"callbackUrl\": \""
+				+ callbackurl
+				+ "\"},"
+				+ "{\"metric\": \"AverageResponseTime\", \"callbackUrl\": \""
+				+ callbackurl
+				+ "\", \"format\": \"ndjson\"},"
+				+ "{\"metric\": \"NotExistingMetric\", \"callbackUrl\": \""
+				+ callbackurl + "\"}," + "{\"callbackUrl\": \""
+				+ callbackurl + "\"}]}";
+		String jsonResults = given().port(MM_PORT).body(payload)
+				.post("/v1/observers").then().assertThat().statusCode(200)
+				.extract().asString();
+		JsonArray results = new JsonParser().parse(jsonResults)
+				.getAsJsonObject().getAsJsonArray("results");
+		assertEquals(4, results.size());
+		assertEquals("created", results.get(0).getAsJsonObject()
+				.get("status").getAsString());
+		assertEquals("created", results.get(1).getAsJsonObject()
+				.get("status").getAsString());
+		assertEquals("not found", results.get(2).getAsJsonObject()
+				.get("status").getAsString());
+		assertEquals("invalid", results.get(3).getAsJsonObject()
+				.get("status").getAsString());
+		String jsonObservers = given().port(MM_PORT)
+				.get("/v1/metrics/AverageResponseTime/observers").asString();
+		assertEquals(2, getListFromJsonField(jsonObservers, Observer.class,
+				"observers").size());
+
+		jsonResults = given().port(MM_PORT)
+				.delete("/v1/observers?callbackUrl="
+						+ URLEncoder.encode(callbackurl, "UTF-8")).then()
+				.assertThat().statusCode(200).extract().asString();
+		results = new JsonParser().parse(jsonResults).getAsJsonObject()
+				.getAsJsonArray("results");
+		assertEquals(2, results.size());
+		given().port(MM_PORT).get("/v1/metrics/AverageResponseTime/observers")
+				.then().assertThat()
+				.body(equalToIgnoringWhiteSpace("{\"observers\":[]}"));
+	}
+
 	@Test
 	public void rulesWithSameIdShouldNotBeInstalled() throws Exception {
 		given().port(MM_PORT)
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2014 deib-polimi
+ * Contact: deib-polimi <marco.miglierina@polimi.it>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package it.polimi.modaclouds.monitoring.monitoring_manager.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import it.polimi.modaclouds.monitoring.dcfactory.wrappers.DDAOntology;
+import it.polimi.modaclouds.monitoring.monitoring_manager.PaneMerger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PaneResultsServerTest {
+
+	@Test
+	public void shouldParsePanesByMetric() throws IOException {
+		Map<String, List<PaneMerger.Pane>> panes = PaneResultsServer
+				.jsonToPanes("{\"_:b1\":{" + pane("CpuPane", "vm1", "1")
+						+ ",\"http://x/extra\":[{\"value\":\"ignored\"}]},"
+						+ "\"_:b2\":{" + pane("CpuPane", "vm2", "2") + "},"
+						+ "\"_:b3\":{" + pane("RamPane", "vm1", "3") + "}}");
+		assertEquals(2, panes.size());
+		assertEquals(2, panes.get("CpuPane").size());
+		assertEquals(1, panes.get("RamPane").size());
+		assertEquals("Pane [resourceId=vm2, sum=2.0, count=4, max=5.0, "
+				+ "min=1.0, timestamp=2]", panes.get("CpuPane").get(1)
+				.toString());
+	}
+
+	@Test
+	public void shouldParseEmptyResults() throws IOException {
+		assertTrue(PaneResultsServer.jsonToPanes("").isEmpty());
+		assertTrue(PaneResultsServer.jsonToPanes("null").isEmpty());
+		assertTrue(PaneResultsServer.jsonToPanes("{}").isEmpty());
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRejectIncompletePanes() throws IOException {
+		PaneResultsServer.jsonToPanes("{\"_:b1\":{" + property(
+				DDAOntology.metric.getURI(), "CpuPane") + "}}");
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRejectMalformedPanes() throws IOException {
+		PaneResultsServer.jsonToPanes("{\"_:b1\":[]}");
+	}
+
+	private static String pane(String metric, String resourceId,
+			String timestamp) {
+		return property(DDAOntology.metric.getURI(), metric) + ","
+				+ property(DDAOntology.resourceId.getURI(), resourceId) + ","
+				+ property(DDAOntology.value.getURI(), timestamp) + ","
+				+ property(PaneMerger.paneCount.getURI(), "4.0") + ","
+				+ property(PaneMerger.paneMax.getURI(), "5") + ","
+				+ property(PaneMerger.paneMin.getURI(), "1") + ","
+				+ property(DDAOntology.timestamp.getURI(), timestamp);
+	}
+
+	private static String property(String uri, String value) {
+		return "\"" + uri + "\":[{\"type\":\"literal\",\"value\":\"" + value
+				+ "\"}]";
+	}
+
+}